@@ -0,0 +1,45 @@
+#!/bin/sh
+# Замер времени старта образа: время до "Started BankApplication" по логу
+# и до готовности /actuator/health/readiness.
+#
+#   scripts/startup-benchmark.sh [образ] [число запусков]
+#
+# Для сравнения с обычным запуском (без CDS и AOT):
+#   JAVA_OPTS="-Xshare:off -Dspring.aot.enabled=false" scripts/startup-benchmark.sh
+#
+# БД берется из .env, поднимите ее заранее: docker-compose up -d db
+
+set -e
+
+IMAGE=${1:-bankapp}
+RUNS=${2:-5}
+NETWORK=${NETWORK:-$(basename "$(pwd)")_dev-network}
+PORT=${BENCH_PORT:-18080}
+
+[ -f .env ] && . ./.env
+
+i=1
+while [ "$i" -le "$RUNS" ]; do
+    start=$(date +%s%N)
+    container=$(docker run -d --rm --network "$NETWORK" -p "$PORT:8080" \
+        -e SPRING_DATASOURCE_URL="jdbc:postgresql://db:5432/${DB_NAME}" \
+        -e SPRING_DATASOURCE_USERNAME="${DB_USER}" \
+        -e SPRING_DATASOURCE_PASSWORD="${DB_PASSWORD}" \
+        -e JAVA_OPTS="${JAVA_OPTS}" \
+        "$IMAGE")
+
+    until curl -sf "http://localhost:$PORT/actuator/health/readiness" > /dev/null; do
+        if ! docker ps -q --no-trunc | grep -q "$container"; then
+            echo "Контейнер завершился до готовности" >&2
+            exit 1
+        fi
+        sleep 0.1
+    done
+    ready=$(( ($(date +%s%N) - start) / 1000000 ))
+
+    started=$(docker logs "$container" 2>&1 | grep -o "Started BankApplication in [0-9.]* seconds" || true)
+    echo "запуск $i: готовность через ${ready} мс; ${started}"
+
+    docker stop "$container" > /dev/null
+    i=$((i + 1))
+done
@@ -0,0 +1,38 @@
+package com.example.bankcards.config;
+
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * В AOT-сборке (-Dspring.aot.enabled=true) условия @ConditionalOnProperty вычислены при сборке jar,
+ * и переменные окружения вроде BANK_DATASOURCE_SHARDS_ENABLED их уже не меняют. Чтобы такая настройка
+ * не игнорировалась молча, при старте сравниваются свойства и фактически созданные конфигурации.
+ */
+@Component
+public class AotConditionsGuard {
+
+    public AotConditionsGuard(Environment environment,
+                              ObjectProvider<ShardDataSourceConfig> shardConfig,
+                              ObjectProvider<ReplicaDataSourceConfig> replicaConfig) {
+        List<String> mismatches = new ArrayList<>();
+        check(environment, "bank.datasource.shards.enabled", shardConfig.getIfAvailable() != null, mismatches);
+        check(environment, "bank.datasource.replicas.enabled", replicaConfig.getIfAvailable() != null, mismatches);
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException("Свойства " + mismatches + " отличаются от значений, с которыми " +
+                    "собрана AOT-сборка. Пересоберите jar (mvn -Pprod package) с этими значениями " +
+                    "или запустите с -Dspring.aot.enabled=false");
+        }
+    }
+
+    private static void check(Environment environment, String property, boolean applied, List<String> mismatches) {
+        boolean requested = environment.getProperty(property, Boolean.class, false);
+        if (requested != applied && AotDetector.useGeneratedArtifacts()) {
+            mismatches.add(property + "=" + requested);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.exception.ServiceOverloadedException;
+import com.example.bankcards.util.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Пропускает запросы на изменение карт (POST, PUT, DELETE в /bank/cards) через AdaptiveConcurrencyLimiter.
+ * Запрос сверх предела получает 503 до вызова контроллера.
+ */
+@Component
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private static final String STARTED_AT = ConcurrencyLimitInterceptor.class.getName() + ".startedAt";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!limiter.isEnabled() || !isWrite(request)) {
+            return true;
+        }
+        if (!limiter.tryAcquire()) {
+            throw new ServiceOverloadedException("Сервис перегружен, повторите запрос позже");
+        }
+        request.setAttribute(STARTED_AT, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object startedAt = request.getAttribute(STARTED_AT);
+        if (startedAt != null) {
+            request.removeAttribute(STARTED_AT);
+            limiter.release(System.nanoTime() - (Long) startedAt);
+        }
+    }
+
+    private boolean isWrite(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethod.POST.matches(method) || HttpMethod.PUT.matches(method) || HttpMethod.DELETE.matches(method);
+    }
+}
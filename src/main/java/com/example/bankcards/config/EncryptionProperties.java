@@ -0,0 +1,35 @@
+package com.example.bankcards.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "encryption")
+public class EncryptionProperties {
+
+    /** Исходный ключ, версия 0: шифротексты этой версии хранятся без префикса. */
+    private String aesKey;
+
+    /** Ключи по версиям начиная с 1. Шифротекст версии n хранится как "vn:" + base64. */
+    private Map<Integer, String> keys = new HashMap<>();
+
+    /** Версия ключа для нового шифрования; остальные ключи используются только для расшифровки. */
+    private int currentVersion = 0;
+
+    private Rotation rotation = new Rotation();
+
+    @Getter
+    @Setter
+    public static class Rotation {
+
+        private int chunkSize = 200;
+
+        /** Ограничение скорости перешифрования, чтобы не мешать основной нагрузке. */
+        private int rowsPerSecond = 500;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bankcards.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+import java.util.Set;
+
+/**
+ * Параметр ?fields=maskedNumber,balance оставляет в карточках и пользователях только перечисленные поля.
+ */
+@RestControllerAdvice
+public class FieldsFilterAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request,
+                                           ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return;
+        }
+        String fields = servletRequest.getServletRequest().getParameter("fields");
+        if (!StringUtils.hasText(fields)) {
+            return;
+        }
+
+        Set<String> allowed = StringUtils.commaDelimitedListToSet(fields.replace(" ", ""));
+        bodyContainer.setFilters(new SimpleFilterProvider()
+                .addFilter(JacksonConfig.FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(allowed))
+                .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll())
+                .setFailOnUnknownId(false));
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.bankcards.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class InterceptorsConfig implements WebMvcConfigurer {
+
+    private final ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
+    private final ShardRoutingInterceptor shardRoutingInterceptor;
+
+    public InterceptorsConfig(ConcurrencyLimitInterceptor concurrencyLimitInterceptor,
+                              ShardRoutingInterceptor shardRoutingInterceptor) {
+        this.concurrencyLimitInterceptor = concurrencyLimitInterceptor;
+        this.shardRoutingInterceptor = shardRoutingInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(concurrencyLimitInterceptor).addPathPatterns("/bank/cards/**");
+        registry.addInterceptor(shardRoutingInterceptor).addPathPatterns("/bank/**");
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserSummaryDTO;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Из-за @EnableWebMvc в CorsConfig конвертеры MVC создают собственный ObjectMapper
+ * и не видят настроек Spring Boot, поэтому сюда подставляется общий, заранее настроенный маппер.
+ */
+@Configuration
+public class JacksonConfig implements WebMvcConfigurer {
+
+    public static final String FIELDS_FILTER = "fields";
+
+    private final ObjectProvider<ObjectMapper> objectMapper;
+
+    public JacksonConfig(ObjectProvider<ObjectMapper> objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Bean
+    public static Jackson2ObjectMapperBuilderCustomizer bankJsonCustomizer() {
+        return builder -> builder
+                .featuresToDisable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .featuresToEnable(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN)
+                .mixIn(CardDTO.class, FieldsFilterMixIn.class)
+                .mixIn(UserDTO.class, FieldsFilterMixIn.class)
+                .mixIn(UserSummaryDTO.class, FieldsFilterMixIn.class)
+                .filters(new SimpleFilterProvider()
+                        .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll())
+                        .setFailOnUnknownId(false))
+                .postConfigurer(mapper -> mapper.configOverride(BigDecimal.class)
+                        .setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.STRING)));
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2HttpMessageConverter jacksonConverter) {
+                jacksonConverter.setObjectMapper(objectMapper.getObject());
+            }
+        }
+    }
+
+    @JsonFilter(FIELDS_FILTER)
+    interface FieldsFilterMixIn {
+    }
+}
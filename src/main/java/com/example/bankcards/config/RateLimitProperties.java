@@ -0,0 +1,40 @@
+package com.example.bankcards.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "bank.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    /** Корзина, не использованная дольше этого времени, удаляется (к этому моменту она уже полна). */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    /** Бюджеты по эндпоинтам; запрос учитывается в первом подходящем. Остальные запросы не ограничиваются. */
+    private Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Endpoint {
+
+        /** Шаблон пути в формате AntPathMatcher, например /bank/cards/transfer/**. */
+        private String pattern;
+
+        /** HTTP-метод; если не задан - любой. */
+        private String method;
+
+        /** Размер корзины: сколько запросов можно сделать подряд. */
+        private int capacity = 20;
+
+        /** Скорость пополнения корзины, запросов в секунду. */
+        private double refillPerSecond = 5;
+    }
+}
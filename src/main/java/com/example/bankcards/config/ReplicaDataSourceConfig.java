@@ -0,0 +1,63 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.util.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+@ConditionalOnProperty(prefix = "bank.datasource.replicas", name = "enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(DataSourceProperties primaryProperties, ReplicaProperties replicaProperties) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaProperties.getNodes().size(); i++) {
+            ReplicaProperties.Node node = replicaProperties.getNodes().get(i);
+            HikariDataSource replica = primaryProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(node.getUrl())
+                    .username(node.getUsername() != null ? node.getUsername() : primaryProperties.determineUsername())
+                    .password(node.getPassword() != null ? node.getPassword() : primaryProperties.determinePassword())
+                    .build();
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            replicas.put("replica-" + i, replica);
+        }
+
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replicas, replicaProperties.getMaxLag());
+        monitor.refresh();
+        return monitor;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties primaryProperties, ReplicaLagMonitor lagMonitor,
+                                 ReadYourWritesTracker readYourWritesTracker) {
+        HikariDataSource primary = primaryProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("primary");
+
+        Map<Object, Object> targets = new HashMap<>(lagMonitor.getReplicas());
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primary);
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(lagMonitor, readYourWritesTracker);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.bankcards.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Периодически измеряет отставание реплик и отдает для чтения только те, что укладываются в max-lag.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final String LAG_QUERY =
+            "select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private final Map<String, DataSource> replicas;
+
+    private final double maxLagSeconds;
+
+    private final AtomicReference<List<String>> healthy = new AtomicReference<>(List.of());
+
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    public ReplicaLagMonitor(Map<String, DataSource> replicas, Duration maxLag) {
+        this.replicas = replicas;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+    }
+
+    public Map<String, DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * @return ключ реплики для следующего чтения или null, если ни одна реплика не годится
+     */
+    public String nextHealthyReplica() {
+        List<String> current = healthy.get();
+        if (current.isEmpty()) {
+            return null;
+        }
+        return current.get(Math.floorMod(cursor.getAndIncrement(), current.size()));
+    }
+
+    @Scheduled(fixedDelayString = "${bank.datasource.replicas.lag-check-interval:PT2S}")
+    public void refresh() {
+        List<String> result = replicas.entrySet().stream()
+                .filter(entry -> isWithinLag(entry.getKey(), entry.getValue()))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+        healthy.set(result);
+    }
+
+    private boolean isWithinLag(String name, DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+            double lag = rs.next() ? rs.getDouble(1) : Double.MAX_VALUE;
+            if (lag > maxLagSeconds) {
+                log.warn("Реплика {} отстает на {} с, чтение переключено на основную БД", name, lag);
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Реплика {} недоступна: {}", name, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bankcards.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "bank.datasource.replicas")
+public class ReplicaProperties {
+
+    private boolean enabled = false;
+
+    private List<Node> nodes = new ArrayList<>();
+
+    /** Реплика с отставанием больше этого значения исключается из чтения до следующей проверки. */
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    @Getter
+    @Setter
+    public static class Node {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
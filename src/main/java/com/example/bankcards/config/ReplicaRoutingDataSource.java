@@ -0,0 +1,42 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.util.ReadYourWritesTracker;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Отправляет read-only транзакции на реплики, все остальное - на основную БД.
+ * Должен оборачиваться в LazyConnectionDataSourceProxy: флаг readOnly выставляется
+ * после начала транзакции, поэтому соединение нужно брать только при первом запросе.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    public ReplicaRoutingDataSource(ReplicaLagMonitor lagMonitor, ReadYourWritesTracker readYourWritesTracker) {
+        this.lagMonitor = lagMonitor;
+        this.readYourWritesTracker = readYourWritesTracker;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && readYourWritesTracker.isPinnedToPrimary(authentication.getName())) {
+            return PRIMARY;
+        }
+
+        String replica = lagMonitor.nextHealthyReplica();
+        return replica != null ? replica : PRIMARY;
+    }
+}
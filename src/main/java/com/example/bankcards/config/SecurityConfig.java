@@ -1,6 +1,7 @@
 package com.example.bankcards.config;
 
 import com.example.bankcards.security.JWTFilter;
+import com.example.bankcards.security.RateLimitFilter;
 import com.example.bankcards.security.UserDetailsServiceImplemented;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -27,15 +28,19 @@ public class SecurityConfig {
 
     private final JWTFilter jwtFilter;
 
+    private final RateLimitFilter rateLimitFilter;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder(10);
     }
 
     @Autowired
-    public SecurityConfig(UserDetailsServiceImplemented userDetailsService, JWTFilter jwtFilter) {
+    public SecurityConfig(UserDetailsServiceImplemented userDetailsService, JWTFilter jwtFilter,
+                          RateLimitFilter rateLimitFilter) {
         this.userDetailsService = userDetailsService;
         this.jwtFilter = jwtFilter;
+        this.rateLimitFilter = rateLimitFilter;
     }
 
     @Bean
@@ -49,14 +54,19 @@ public class SecurityConfig {
         http.csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(rateLimitFilter, JWTFilter.class)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(
                                 "/bank/auth/**",
                                 "/v3/api-docs/**",
                                 "/docs/**",
                                 "/swagger-ui/**",
-                                "/swagger-ui.html"
+                                "/swagger-ui.html",
+                                "/actuator/health",
+                                "/actuator/health/liveness",
+                                "/actuator/health/readiness"
                         ).permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/bank/users/**", "/bank/cards/**").authenticated()
                         .anyRequest().authenticated()
                 );
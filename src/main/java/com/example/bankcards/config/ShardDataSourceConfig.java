@@ -0,0 +1,100 @@
+package com.example.bankcards.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Шардирование по владельцу: пользователь и все его карты живут на одном шарде (см. ShardRouter).
+ * Шард 0 - spring.datasource, остальные - bank.datasource.shards.nodes. Liquibase Spring Boot
+ * мигрирует шард 0, остальные шарды мигрируются здесь тем же changelog.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardProperties.class)
+@ConditionalOnProperty(prefix = "bank.datasource.shards", name = "enabled", havingValue = "true")
+public class ShardDataSourceConfig {
+
+    public ShardDataSourceConfig(@Value("${bank.datasource.replicas.enabled:false}") boolean replicas,
+                                 @Value("${bank.transfer.async.enabled:false}") boolean asyncTransfers,
+                                 @Value("${bank.transfer.sharded.enabled:false}") boolean shardedTransfers) {
+        // пакетные переводы и чтение с реплик рассчитаны на одну БД
+        if (replicas || asyncTransfers || shardedTransfers) {
+            throw new IllegalStateException("bank.datasource.shards несовместим с bank.datasource.replicas, " +
+                    "bank.transfer.async и bank.transfer.sharded - отключите их");
+        }
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties primaryProperties, ShardProperties shardProperties) {
+        Map<Object, Object> targets = new HashMap<>();
+        HikariDataSource primary = primaryProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("shard-0");
+        targets.put(0, primary);
+
+        for (int i = 0; i < shardProperties.getNodes().size(); i++) {
+            ShardProperties.Node node = shardProperties.getNodes().get(i);
+            HikariDataSource shard = primaryProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(node.getUrl())
+                    .username(node.getUsername() != null ? node.getUsername() : primaryProperties.determineUsername())
+                    .password(node.getPassword() != null ? node.getPassword() : primaryProperties.determinePassword())
+                    .build();
+            shard.setPoolName("shard-" + (i + 1));
+            targets.put(i + 1, shard);
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public ShardMigrations shardMigrations(DataSource dataSource, ShardProperties shardProperties,
+                                           @Value("${spring.liquibase.enabled:true}") boolean enabled,
+                                           @Value("${spring.liquibase.change-log}") String changeLog,
+                                           ResourceLoader resourceLoader) {
+        ShardMigrations migrations = new ShardMigrations();
+        if (enabled) {
+            migrations.migrate(dataSource, shardProperties.getNodes().size() + 1, changeLog, resourceLoader);
+        }
+        return migrations;
+    }
+
+    /** Прогоняет миграции на шардах 1..N при старте. */
+    public static class ShardMigrations {
+
+        void migrate(DataSource dataSource, int shardCount, String changeLog, ResourceLoader resourceLoader) {
+            for (int shard = 1; shard < shardCount; shard++) {
+                SpringLiquibase liquibase = new SpringLiquibase();
+                liquibase.setDataSource(dataSource);
+                liquibase.setChangeLog(changeLog);
+                liquibase.setResourceLoader(resourceLoader);
+                ShardContext.runOn(shard, () -> {
+                    try {
+                        liquibase.afterPropertiesSet();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Ошибка миграции шарда", e);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.bankcards.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "bank.datasource.shards")
+public class ShardProperties {
+
+    private boolean enabled = false;
+
+    /** Дополнительные шарды 1..N; шард 0 - spring.datasource, на нем же хранится справочник карт. */
+    private List<Node> nodes = new ArrayList<>();
+
+    /** Секрет HMAC для ключей справочника card_directory: номер карты в нем не хранится. */
+    private String directorySecret;
+
+    /** Межшардовый перевод, списанный раньше этого срока и не зачисленный, дозавершается по расписанию. */
+    private Duration recoveryAfter = Duration.ofSeconds(30);
+
+    @Getter
+    @Setter
+    public static class Node {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
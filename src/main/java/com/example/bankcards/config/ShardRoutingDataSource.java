@@ -0,0 +1,15 @@
+package com.example.bankcards.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Направляет соединение на шард из ShardContext. Как и ReplicaRoutingDataSource, оборачивается
+ * в LazyConnectionDataSourceProxy, чтобы шард можно было выбрать уже после начала транзакции.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.service.ShardRouter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Запросы к конкретному пользователю или карте ({username}, {number}, ?owner=, ?number=) направляет
+ * на шард этого пользователя или карты, а не на шард того, кто делает запрос (важно для админа).
+ * Сбрасывается вместе с шардом запроса в JWTFilter.
+ */
+@Component
+public class ShardRoutingInterceptor implements HandlerInterceptor {
+
+    private final ShardRouter shardRouter;
+
+    public ShardRoutingInterceptor(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!shardRouter.isEnabled()) {
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String username = variables != null && variables.containsKey("username")
+                ? variables.get("username") : request.getParameter("owner");
+        String number = variables != null && variables.containsKey("number")
+                ? variables.get("number") : request.getParameter("number");
+
+        if (username != null) {
+            ShardContext.set(shardRouter.shardOfUser(username));
+        } else if (number != null) {
+            shardRouter.shardOfCard(number).ifPresent(ShardContext::set);
+        }
+        return true;
+    }
+}
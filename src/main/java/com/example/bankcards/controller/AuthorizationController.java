@@ -10,8 +10,10 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -46,11 +48,29 @@ public class AuthorizationController {
                     content = @Content(mediaType = "application/json",
                             schema = @Schema(example = "{\"jwt\": \"eyJhbGciOiJIUzI1NiIsInR5cCI...\"}"))),
             @ApiResponse(responseCode = "400", description = "Неверный логин или пароль"),
-            @ApiResponse(responseCode = "403", description = "Неавторизованный доступ")
+            @ApiResponse(responseCode = "403", description = "Неавторизованный доступ"),
+            @ApiResponse(responseCode = "429", description = "Вход временно заблокирован после неудачных попыток")
     })
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody AuthDTO authDTO) {
-            String token = userService.login(authDTO);;
+    public ResponseEntity<?> login(@RequestBody AuthDTO authDTO, HttpServletRequest request) {
+            // за доверенным прокси Tomcat подставляет адрес клиента из X-Forwarded-For (server.forward-headers-strategy)
+            String token = userService.login(authDTO, request.getRemoteAddr());
             return ResponseEntity.ok(Map.of("jwt", token));
     }
+
+
+    @Operation(summary = "Выход", description = "Отзывает переданный JWT до истечения его срока действия")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Токен отозван"),
+            @ApiResponse(responseCode = "400", description = "Токен отсутствует или недействителен"),
+            @ApiResponse(responseCode = "401", description = "Токен уже отозван")
+    })
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization) {
+        if (!authorization.startsWith("Bearer ")) {
+            throw new IllegalArgumentException("Ожидается заголовок Authorization: Bearer <token>");
+        }
+        userService.logout(authorization.substring(7));
+        return ResponseEntity.ok(Map.of("message", "Выход выполнен"));
+    }
 }
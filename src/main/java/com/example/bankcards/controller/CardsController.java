@@ -1,7 +1,20 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardStatsDTO;
+import com.example.bankcards.dto.PageDTO;
+import com.example.bankcards.dto.PortfolioDTO;
+import com.example.bankcards.dto.ScheduledTransferDTO;
+import com.example.bankcards.dto.TransferHistoryDTO;
+import com.example.bankcards.dto.TransferStatusDTO;
+import com.example.bankcards.dto.UserCardCountDTO;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.CardReadCoalescer;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.CardStatsService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.ScheduledTransferService;
+import com.example.bankcards.service.TransferDispatcher;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -16,8 +29,12 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -25,37 +42,64 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class CardsController {
 
+    private static final String TRANSFER_COMPLETED = "Перевод выполнен успешно";
+
     private final CardService cardService;
 
+    private final CardReadCoalescer cardReadCoalescer;
+
+    private final AsyncTransferService asyncTransferService;
+
+    private final CardStatsService cardStatsService;
+
+    private final TransferDispatcher transferDispatcher;
+
+    private final ScheduledTransferService scheduledTransferService;
+
+    private final IdempotencyService idempotencyService;
+
     @Operation(summary = "Получить все карты (админ)")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Список карт"),
+            @ApiResponse(responseCode = "304", description = "Список не изменился (If-None-Match)"),
             @ApiResponse(responseCode = "401", description = "Нет авторизации"),
             @ApiResponse(responseCode = "403", description = "Нет прав доступа")
     })
     @GetMapping("/all")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Page<CardDTO>> getAllCards(
+    public ResponseEntity<PageDTO<CardDTO>> getAllCards(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "6") int size
+            @RequestParam(defaultValue = "6") int size,
+            WebRequest webRequest
     ) {
-        return ResponseEntity.ok(cardService.getAllCards(page, size));
+        String eTag = cardService.getAllCardsETag(page, size);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(PageDTO.of(cardService.getAllCards(page, size)));
     }
 
 
     @Operation(summary = "Получить карты текущего пользователя (пользователь)")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Список карт пользователя"),
+            @ApiResponse(responseCode = "304", description = "Список не изменился (If-None-Match)"),
             @ApiResponse(responseCode = "403", description = "Не авторизован")
     })
     @GetMapping
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<Page<CardDTO>> getUserCards(
+    public ResponseEntity<PageDTO<CardDTO>> getUserCards(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "6") int size
+            @RequestParam(defaultValue = "6") int size,
+            WebRequest webRequest
     ) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        return ResponseEntity.ok(cardService.getUserCards(authentication.getName(), page, size));
+        // ETag берется из того же общего чтения, что и страница: отдельно прочитанный ETag может быть новее ее
+        CardReadCoalescer.UserCards cards = cardReadCoalescer.getUserCards(authentication.getName(), page, size);
+        if (webRequest.checkNotModified(cards.eTag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cards.eTag()).build();
+        }
+        return ResponseEntity.ok().eTag(cards.eTag()).body(PageDTO.of(cards.cards()));
     }
 
 
@@ -72,7 +116,40 @@ public class CardsController {
             @RequestParam() String number
     ) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        return ResponseEntity.ok(cardService.checkCardBalance(authentication.getName(), number));
+        return ResponseEntity.ok(cardReadCoalescer.checkCardBalance(authentication.getName(), number));
+    }
+
+
+    @Operation(summary = "Все карты, балансы и итоговые суммы текущего пользователя (пользователь)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Карты и балансы пользователя"),
+            @ApiResponse(responseCode = "403", description = "Нет доступа")
+    })
+    @GetMapping("/portfolio")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<PortfolioDTO> getPortfolio() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ResponseEntity.ok(cardService.getPortfolio(authentication.getName()));
+    }
+
+
+    @Operation(summary = "История переводов по карте (пользователь)",
+            description = "Операции от новых к старым; для следующей страницы передайте nextCursor из ответа")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Страница истории"),
+            @ApiResponse(responseCode = "400", description = "Карта не найдена или некорректный курсор"),
+            @ApiResponse(responseCode = "403", description = "Попытка доступа к чужой карте")
+    })
+    @GetMapping("/{number}/history")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<TransferHistoryDTO> getTransferHistory(
+            @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
+            @PathVariable String number,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ResponseEntity.ok(cardService.getTransferHistory(authentication.getName(), number, cursor, size));
     }
 
 
@@ -113,24 +190,107 @@ public class CardsController {
     @Operation(summary = "Проверить запросы на блокировку (админ)")
     @GetMapping("/requests/block")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<?> checkBlockingRequests(
+    public ResponseEntity<PageDTO<CardDTO>> checkBlockingRequests(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "6") int size
+            @RequestParam(defaultValue = "6") int size,
+            WebRequest webRequest
     ) {
+        String eTag = cardService.getBlockingRequestsETag(page, size);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         Page<CardDTO> result = cardService.checkBlockingRequests(page, size);
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok().eTag(eTag).body(PageDTO.of(result));
+    }
+
+    @Operation(summary = "Поиск карт по последним 4 цифрам, владельцу и статусу (админ)",
+            description = "Возвращает не больше 50 карт, новые первыми")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Найденные карты"),
+            @ApiResponse(responseCode = "400", description = "Неверные цифры, статус или пользователь не найден"),
+            @ApiResponse(responseCode = "403", description = "Нет доступа")
+    })
+    @GetMapping("/search")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<CardDTO>> searchCards(
+            @Parameter(description = "Последние 4 цифры номера", example = "4444")
+            @RequestParam String last4,
+            @Parameter(description = "Имя владельца", example = "testuser")
+            @RequestParam(required = false) String owner,
+            @Parameter(description = "Статус карты", example = "ACTIVE")
+            @RequestParam(required = false) String status
+    ) {
+        return ResponseEntity.ok(cardService.searchCards(last4, owner, status));
+    }
+
+    @Operation(summary = "Статистика по картам: количество и баланс по статусам (админ)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Статистика"),
+            @ApiResponse(responseCode = "403", description = "Нет доступа")
+    })
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CardStatsDTO> getStats() {
+        return ResponseEntity.ok(cardStatsService.getStats());
+    }
+
+    @Operation(summary = "Количество карт пользователя (админ)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Количество карт"),
+            @ApiResponse(responseCode = "400", description = "Пользователь не найден"),
+            @ApiResponse(responseCode = "403", description = "Нет доступа")
+    })
+    @GetMapping("/stats/users/{username}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserCardCountDTO> getUserCardCount(@PathVariable String username) {
+        return ResponseEntity.ok(cardStatsService.getUserCardCount(username));
     }
 
-    @Operation(summary = "Перевод между счетами (пользователь)")
+    @Operation(summary = "Перевод между счетами (пользователь)",
+            description = "С заголовком Idempotency-Key перевод выполняется один раз: повтор с тем же ключом " +
+                    "возвращает первый ответ с заголовком Idempotent-Replayed: true")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Деньги переведены"),
             @ApiResponse(responseCode = "403", description = "Попытка доступа к чужой карте"),
             @ApiResponse(responseCode = "403", description = "Карта или карты заблокированы или ожидают блокировки"),
-            @ApiResponse(responseCode = "400", description = "Карта не найдена")
+            @ApiResponse(responseCode = "400", description = "Карта не найдена"),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key уже использован для другого перевода")
     })
     @PostMapping("/transfer")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> transferBetweenCards(
+            @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
+            @RequestParam String fromCard,
+            @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
+            @RequestParam String toCard,
+            @RequestParam BigDecimal amount,
+            @Parameter(description = "Уникальный ключ запроса для безопасного повтора", example = "7f9c2a4e-1b1d-4c4b-9c55-0e8f1d2a3b4c")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication.getName();
+        if (idempotencyKey == null || !idempotencyService.isEnabled()) {
+            transferDispatcher.transfer(username, fromCard, toCard, amount);
+            return ResponseEntity.ok(Map.of("message", TRANSFER_COMPLETED));
+        }
+
+        String request = fromCard + '|' + toCard + '|' + amount.stripTrailingZeros().toPlainString();
+        IdempotencyService.Result result = idempotencyService.execute(username, idempotencyKey, request,
+                TRANSFER_COMPLETED, claim -> transferDispatcher.transfer(username, fromCard, toCard, amount, claim));
+        return ResponseEntity.ok()
+                .header("Idempotent-Replayed", String.valueOf(result.replayed()))
+                .body(Map.of("message", result.response()));
+    }
+
+    @Operation(summary = "Асинхронный перевод между счетами (пользователь)",
+            description = "Перевод ставится в очередь и проводится в фоне, статус доступен по /bank/cards/transfer/{id}")
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Перевод принят в обработку"),
+            @ApiResponse(responseCode = "400", description = "Некорректная сумма или асинхронные переводы отключены")
+    })
+    @PostMapping("/transfer/async")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<TransferStatusDTO> submitTransfer(
             @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
             @RequestParam String fromCard,
             @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
@@ -138,8 +298,73 @@ public class CardsController {
             @RequestParam BigDecimal amount
     ) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        cardService.transfer(authentication.getName(), fromCard, toCard, amount);
-        return ResponseEntity.ok(Map.of("message", "Перевод выполнен успешно"));
+        TransferStatusDTO accepted = asyncTransferService.submit(authentication.getName(), fromCard, toCard, amount);
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/bank/cards/transfer/" + accepted.getId()))
+                .body(accepted);
+    }
+
+    @Operation(summary = "Создать регулярный перевод (пользователь)",
+            description = "Перевод выполняется с startAt (по умолчанию сразу) с периодичностью ONCE, DAILY, WEEKLY " +
+                    "или MONTHLY до endAt; результат последнего выполнения виден в списке регулярных переводов")
+    @ApiResponses({
+            @ApiResponse(responseCode = "201", description = "Регулярный перевод создан"),
+            @ApiResponse(responseCode = "400", description = "Некорректная сумма, периодичность или даты")
+    })
+    @PostMapping("/transfer/scheduled")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ScheduledTransferDTO> createScheduledTransfer(
+            @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
+            @RequestParam String fromCard,
+            @Parameter(description = "Номер карты без пробелов", example = "1111222233334444")
+            @RequestParam String toCard,
+            @RequestParam BigDecimal amount,
+            @Parameter(description = "Периодичность", example = "MONTHLY")
+            @RequestParam String frequency,
+            @Parameter(description = "Первое выполнение (ISO-8601, UTC)", example = "2026-11-01T09:00:00Z")
+            @RequestParam(required = false) Instant startAt,
+            @Parameter(description = "Дата окончания (ISO-8601, UTC)", example = "2027-11-01T00:00:00Z")
+            @RequestParam(required = false) Instant endAt
+    ) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        ScheduledTransferDTO created = scheduledTransferService.create(authentication.getName(), fromCard, toCard,
+                amount, frequency, startAt, endAt);
+        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    }
+
+    @Operation(summary = "Регулярные переводы текущего пользователя (пользователь)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Список регулярных переводов")
+    })
+    @GetMapping("/transfer/scheduled")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<List<ScheduledTransferDTO>> getScheduledTransfers() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ResponseEntity.ok(scheduledTransferService.list(authentication.getName()));
+    }
+
+    @Operation(summary = "Отменить регулярный перевод (пользователь)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Перевод отменен"),
+            @ApiResponse(responseCode = "400", description = "Перевод не найден")
+    })
+    @DeleteMapping("/transfer/scheduled/{id}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<ScheduledTransferDTO> cancelScheduledTransfer(@PathVariable Long id) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ResponseEntity.ok(scheduledTransferService.cancel(authentication.getName(), id));
+    }
+
+    @Operation(summary = "Статус асинхронного перевода (пользователь)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Статус перевода"),
+            @ApiResponse(responseCode = "400", description = "Перевод не найден")
+    })
+    @GetMapping("/transfer/{id}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<TransferStatusDTO> getTransferStatus(@PathVariable Long id) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ResponseEntity.ok(asyncTransferService.getStatus(authentication.getName(), id));
     }
 
 
@@ -1,15 +1,21 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.PageDTO;
 import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserDeletionDTO;
+import com.example.bankcards.dto.UserSearchDTO;
+import com.example.bankcards.dto.UserSummaryDTO;
+import com.example.bankcards.entity.enums.DeletionStatus;
 import com.example.bankcards.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.data.domain.Page;
+import org.springframework.web.context.request.WebRequest;
 
 
 @RestController
@@ -22,15 +28,38 @@ public class UsersController {
     @Operation(summary = "Получить всех пользователей (admin)")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Список пользователей получен"),
+            @ApiResponse(responseCode = "304", description = "Список не изменился (If-None-Match)"),
             @ApiResponse(responseCode = "403", description = "Нет доступа")
     })
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<Page<UserDTO>> getAllUsers(
+    public ResponseEntity<PageDTO<UserSummaryDTO>> getAllUsers(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "6") int size)
+            @RequestParam(defaultValue = "6") int size,
+            WebRequest webRequest)
     {
-        return ResponseEntity.ok(userService.getAllUsers(page, size));
+        String eTag = userService.getAllUsersETag(page, size);
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(PageDTO.of(userService.getAllUsers(page, size)));
+    }
+
+    @Operation(summary = "Поиск пользователей по части имени (admin)",
+            description = "Сначала точное совпадение, затем по началу имени, затем по вхождению; " +
+                    "запросы короче 3 символов ищут только по началу имени")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Страница результатов"),
+            @ApiResponse(responseCode = "400", description = "Пустой запрос, неверный размер страницы или курсор"),
+            @ApiResponse(responseCode = "403", description = "Нет доступа")
+    })
+    @GetMapping("/search")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserSearchDTO> searchUsers(
+            @RequestParam String query,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(userService.searchUsers(query, cursor, size));
     }
 
     @Operation(summary = "Получить пользователя по имени (admin)")
@@ -70,15 +99,36 @@ public class UsersController {
         return ResponseEntity.ok().build();
     }
 
-    @Operation(summary = "Удалить пользователя (admin)", description = "Удаляет пользователя и данные пользователя по логину")
+    @Operation(summary = "Удалить пользователя (admin)", description = "Удаляет пользователя и данные пользователя по логину. " +
+            "Пользователь сразу перестает быть виден, карты удаляются пакетами, при фоновом удалении - 202 и ход удаления")
     @ApiResponses({
-            @ApiResponse(responseCode = "200", description = "Пользователь успешно удален"),
+            @ApiResponse(responseCode = "202", description = "Пользователь помечен удаленным, карты удаляются в фоне"),
+            @ApiResponse(responseCode = "204", description = "Пользователь успешно удален"),
             @ApiResponse(responseCode = "403", description = "Нет доступа"),
             @ApiResponse(responseCode = "404", description = "Пользователь не найден") })
     @DeleteMapping("/{username}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> deleteUser(@PathVariable String username) {
         userService.deleteUser(username);
+        UserDeletionDTO deletion = userService.getDeletionStatus(username);
+        if (deletion != null && deletion.getStatus() != DeletionStatus.COMPLETED) {
+            return ResponseEntity.accepted().body(deletion);
+        }
         return ResponseEntity.noContent().build();
     }
+
+    @Operation(summary = "Ход удаления пользователя (admin)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Состояние удаления"),
+            @ApiResponse(responseCode = "403", description = "Нет доступа"),
+            @ApiResponse(responseCode = "404", description = "Удаление не запускалось на этом узле") })
+    @GetMapping("/{username}/deletion")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<UserDeletionDTO> getDeletionStatus(@PathVariable String username) {
+        UserDeletionDTO deletion = userService.getDeletionStatus(username);
+        if (deletion == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(deletion);
+    }
 }
@@ -0,0 +1,36 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.CardStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO со сводной статистикой по картам")
+public class CardStatsDTO {
+    @Schema(description = "Всего карт", example = "120")
+    private long totalCards;
+
+    @Schema(description = "Суммарный баланс по всем картам", example = "154000.00")
+    private BigDecimal totalBalance;
+
+    @Schema(description = "Количество карт и суммарный баланс по статусам")
+    private Map<CardStatus, StatusStats> byStatus;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class StatusStats {
+        @Schema(description = "Количество карт", example = "100")
+        private long cardCount;
+
+        @Schema(description = "Суммарный баланс", example = "150000.00")
+        private BigDecimal totalBalance;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Страница списка без служебных полей pageable/sort")
+public class PageDTO<T> {
+    @Schema(description = "Элементы текущей страницы")
+    private List<T> content;
+
+    @Schema(description = "Номер страницы, начиная с 0", example = "0")
+    private int page;
+
+    @Schema(description = "Размер страницы", example = "6")
+    private int size;
+
+    @Schema(description = "Всего элементов", example = "42")
+    private long totalElements;
+
+    @Schema(description = "Всего страниц", example = "7")
+    private int totalPages;
+
+    public static <T> PageDTO<T> of(Page<T> page) {
+        return new PageDTO<>(page.getContent(), page.getNumber(), page.getSize(),
+                page.getTotalElements(), page.getTotalPages());
+    }
+}
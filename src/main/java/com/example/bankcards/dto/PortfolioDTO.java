@@ -0,0 +1,33 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO со всеми картами пользователя и итоговыми суммами")
+public class PortfolioDTO {
+    @Schema(description = "Имя владельца карт", example = "testuser")
+    private String ownerUsername;
+
+    @Schema(description = "Карты пользователя (номера замаскированы)")
+    private List<CardDTO> cards;
+
+    @Schema(description = "Количество карт", example = "3")
+    private int cardCount;
+
+    @Schema(description = "Количество активных карт", example = "2")
+    private int activeCardCount;
+
+    @Schema(description = "Суммарный баланс по всем картам", example = "4500.00")
+    private BigDecimal totalBalance;
+
+    @Schema(description = "Суммарный баланс по активным картам", example = "3000.00")
+    private BigDecimal availableBalance;
+}
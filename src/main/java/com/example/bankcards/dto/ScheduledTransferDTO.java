@@ -0,0 +1,47 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.ScheduleFrequency;
+import com.example.bankcards.entity.enums.ScheduledTransferStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO регулярного перевода")
+public class ScheduledTransferDTO {
+    @Schema(description = "Идентификатор регулярного перевода", example = "7")
+    private Long id;
+
+    @Schema(description = "Карта списания (замаскирована)", example = "**** **** **** 4444")
+    private String fromMaskedNumber;
+
+    @Schema(description = "Карта зачисления (замаскирована)", example = "**** **** **** 1234")
+    private String toMaskedNumber;
+
+    @Schema(description = "Сумма перевода", example = "500.00")
+    private BigDecimal amount;
+
+    @Schema(description = "Периодичность", example = "MONTHLY")
+    private ScheduleFrequency frequency;
+
+    @Schema(description = "Статус", example = "ACTIVE")
+    private ScheduledTransferStatus status;
+
+    @Schema(description = "Время следующего выполнения")
+    private Instant nextRunAt;
+
+    @Schema(description = "Дата окончания, после которой переводы не выполняются")
+    private Instant endAt;
+
+    @Schema(description = "Время последнего выполнения")
+    private Instant lastRunAt;
+
+    @Schema(description = "Причина отказа последнего выполнения", example = "Недостаточно средств на карте")
+    private String lastError;
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO страницы истории переводов по карте")
+public class TransferHistoryDTO {
+    @Schema(description = "Операции, от новых к старым")
+    private List<TransferHistoryItemDTO> items;
+
+    @Schema(description = "Курсор следующей страницы, null если страниц больше нет", example = "MTcyOTMzMDAwMC4wOjEwMjQ")
+    private String nextCursor;
+}
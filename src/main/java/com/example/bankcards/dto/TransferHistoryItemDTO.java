@@ -0,0 +1,30 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO одной операции в истории карты")
+public class TransferHistoryItemDTO {
+    @Schema(description = "Идентификатор операции", example = "1024")
+    private Long id;
+
+    @Schema(description = "Направление: OUT - списание, IN - зачисление", example = "OUT")
+    private String direction;
+
+    @Schema(description = "Карта контрагента (замаскирована)", example = "**** **** **** 1234")
+    private String counterpartMaskedNumber;
+
+    @Schema(description = "Сумма перевода", example = "500.00")
+    private BigDecimal amount;
+
+    @Schema(description = "Время перевода")
+    private Instant createdAt;
+}
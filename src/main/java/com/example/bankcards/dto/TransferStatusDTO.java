@@ -0,0 +1,34 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.TransferStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO состояния асинхронного перевода")
+public class TransferStatusDTO {
+    @Schema(description = "Идентификатор перевода", example = "42")
+    private Long id;
+
+    @Schema(description = "Сумма перевода", example = "500.00")
+    private BigDecimal amount;
+
+    @Schema(description = "Статус перевода", example = "PENDING")
+    private TransferStatus status;
+
+    @Schema(description = "Причина отказа, если перевод не выполнен", example = "Недостаточно средств на карте")
+    private String error;
+
+    @Schema(description = "Время приема перевода")
+    private Instant createdAt;
+
+    @Schema(description = "Время обработки перевода")
+    private Instant processedAt;
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO с количеством карт пользователя")
+public class UserCardCountDTO {
+    @Schema(description = "Имя пользователя", example = "testuser")
+    private String username;
+
+    @Schema(description = "Количество карт", example = "3")
+    private long cardCount;
+}
@@ -0,0 +1,25 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.DeletionStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO хода удаления пользователя")
+public class UserDeletionDTO {
+    @Schema(description = "Имя пользователя", example = "corporate1")
+    private String username;
+
+    @Schema(description = "Статус удаления", example = "IN_PROGRESS")
+    private DeletionStatus status;
+
+    @Schema(description = "Сколько карт уже удалено", example = "12000")
+    private long deletedCards;
+
+    @Schema(description = "Причина ошибки, если удаление не завершено", example = "null")
+    private String error;
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO страницы результатов поиска пользователей")
+public class UserSearchDTO {
+    @Schema(description = "Найденные пользователи: сначала точное совпадение, затем по началу имени, затем по вхождению")
+    private List<UserSearchItemDTO> items;
+
+    @Schema(description = "Курсор следующей страницы, null если страниц больше нет или достигнут лимит результатов",
+            example = "MTo1OjIwOnRlc3R1c2Vy")
+    private String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO найденного пользователя")
+public class UserSearchItemDTO {
+    @Schema(description = "Имя пользователя", example = "testuser")
+    private String username;
+
+    @Schema(description = "Роль пользователя", example = "ROLE_USER")
+    private String role;
+
+    @Schema(description = "Тип совпадения: EXACT, PREFIX или CONTAINS", example = "PREFIX")
+    private String match;
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Data
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO пользователя в списке (без пароля)")
+public class UserSummaryDTO {
+    @Schema(description = "Имя пользователя", example = "testuser")
+    private String username;
+
+    @Schema(description = "Роль пользователя", example = "ROLE_USER")
+    private String role;
+
+    @Schema(description = "Количество карт", example = "3")
+    private long cardCount;
+}
@@ -6,12 +6,16 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
 
 
 import java.math.BigDecimal;
+import java.time.Instant;
 
+// UPDATE только измененных колонок: перевод не перезапишет номер, перешифрованный CardKeyRotation
 @Entity
 @Table(name = "cards")
+@DynamicUpdate
 @Getter
 @Setter
 @NoArgsConstructor
@@ -24,6 +28,10 @@ public class Card {
     @Column(name = "card_number_encrypted", nullable = false)
     private String encryptedNumber;
 
+    /** Последние 4 цифры в открытом виде - только для индексного поиска, номер целиком остается зашифрованным. */
+    @Column(name = "last_four", length = 4)
+    private String lastFour;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
@@ -40,4 +48,17 @@ public class Card {
 
     @Column(nullable = false, precision = 15, scale = 2)
     private BigDecimal balance = BigDecimal.ZERO;
+
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = Instant.now();
+    }
 }
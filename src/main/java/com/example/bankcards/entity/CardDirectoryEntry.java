@@ -0,0 +1,23 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/** Шард, на котором хранится карта. Ключ - HMAC номера карты, сам номер в справочнике не хранится. */
+@Entity
+@Table(name = "card_directory")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardDirectoryEntry {
+    @Id
+    @Column(name = "card_key", length = 64)
+    private String cardKey;
+
+    @Column(nullable = false)
+    private int shard;
+}
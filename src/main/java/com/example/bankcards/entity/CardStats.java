@@ -0,0 +1,33 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.entity.enums.CardStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Итоги по картам одного статуса. Строки меняются только дельтами в транзакциях,
+ * изменяющих карты (см. CardStatsService), поэтому статистика читается без сканирования cards.
+ */
+@Entity
+@Table(name = "card_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardStats {
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 50)
+    private CardStatus status;
+
+    @Column(name = "card_count", nullable = false)
+    private long cardCount;
+
+    @Column(name = "total_balance", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalBalance;
+}
@@ -0,0 +1,32 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/** Зачисление межшардового перевода на шарде целевой карты; по transferId повтор не зачисляется дважды. */
+@Entity
+@Table(name = "cross_shard_credits")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CrossShardCredit {
+    @Id
+    @Column(name = "transfer_id", length = 36)
+    private String transferId;
+
+    @Column(name = "to_card_id", nullable = false)
+    private long toCardId;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,60 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.entity.enums.CrossShardTransferStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Списание межшардового перевода на шарде исходной карты. DEBITED - деньги списаны, зачисление
+ * еще не подтверждено; такие записи дозавершаются или компенсируются CrossShardTransferService.
+ */
+@Entity
+@Table(name = "cross_shard_transfers")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CrossShardTransfer {
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(name = "from_card_id", nullable = false)
+    private long fromCardId;
+
+    @Column(name = "to_card_encrypted", nullable = false)
+    private String toCardEncrypted;
+
+    @Column(name = "to_shard", nullable = false)
+    private int toShard;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private CrossShardTransferStatus status;
+
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = Instant.now();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Контрольная точка перешифрования карт ключом версии keyVersion: после перезапуска
+ * проход продолжается с карты, следующей за lastCardId.
+ */
+@Entity
+@Table(name = "key_rotation_progress")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeyRotationProgress {
+    @Id
+    @Column(name = "key_version")
+    private int keyVersion;
+
+    @Column(name = "last_card_id", nullable = false)
+    private long lastCardId;
+
+    @Column(name = "rotated_cards", nullable = false)
+    private long rotatedCards;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
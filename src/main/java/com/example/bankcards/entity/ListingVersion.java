@@ -0,0 +1,26 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Счетчик изменений списка (cards, users). Увеличивается в транзакциях, изменяющих список
+ * (см. ListingVersionService), поэтому ETag списка читается одной строкой без агрегата по таблице.
+ */
+@Entity
+@Table(name = "listing_versions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ListingVersion {
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    @Column(nullable = false)
+    private long version;
+}
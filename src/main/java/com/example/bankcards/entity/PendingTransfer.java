@@ -0,0 +1,48 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.entity.enums.TransferStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Entity
+@Table(name = "pending_transfers")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingTransfer {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(name = "from_card_encrypted", nullable = false)
+    private String fromCardEncrypted;
+
+    @Column(name = "to_card_encrypted", nullable = false)
+    private String toCardEncrypted;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TransferStatus status = TransferStatus.PENDING;
+
+    @Column(length = 500)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "processed_at")
+    private Instant processedAt;
+}
@@ -0,0 +1,72 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.entity.enums.ScheduleFrequency;
+import com.example.bankcards.entity.enums.ScheduledTransferStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Регулярный перевод. Сроки считаются от start_at по номеру выполнения occurrence,
+ * поэтому ежемесячный перевод с 31-го числа в коротких месяцах идет последним днем и не сдвигается.
+ */
+@Entity
+@Table(name = "scheduled_transfers")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduledTransfer {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String username;
+
+    @Column(name = "from_card_encrypted", nullable = false)
+    private String fromCardEncrypted;
+
+    @Column(name = "to_card_encrypted", nullable = false)
+    private String toCardEncrypted;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ScheduleFrequency frequency;
+
+    @Column(name = "start_at", nullable = false)
+    private Instant startAt;
+
+    @Column(name = "end_at")
+    private Instant endAt;
+
+    @Column(nullable = false)
+    private int occurrence;
+
+    @Column(name = "next_run_at", nullable = false)
+    private Instant nextRunAt;
+
+    @Column(name = "claimed_until")
+    private Instant claimedUntil;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ScheduledTransferStatus status = ScheduledTransferStatus.ACTIVE;
+
+    @Column(name = "last_run_at")
+    private Instant lastRunAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
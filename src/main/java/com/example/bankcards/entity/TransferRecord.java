@@ -0,0 +1,38 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Строка истории переводов. Таблица transfers секционирована по месяцам (created_at),
+ * поэтому ссылки на карты хранятся как id без внешних ключей.
+ */
+@Entity
+@Table(name = "transfers")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "from_card_id", nullable = false)
+    private long fromCardId;
+
+    @Column(name = "to_card_id", nullable = false)
+    private long toCardId;
+
+    @Column(nullable = false, precision = 15, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -6,6 +6,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.time.Instant;
 import java.util.List;
 
 @Entity
@@ -20,7 +21,8 @@ public class User {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
+    /** Уникально среди неудаленных пользователей: частичный индекс uq_users_username_active. */
+    @Column(nullable = false)
     private String username;
 
     @Column(nullable = false)
@@ -32,4 +34,21 @@ public class User {
 
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Card> cards;
+
+    /** Пользователь помечен на удаление: больше не виден, карты удаляются порциями (UserDeletionService). */
+    @Column(nullable = false)
+    private boolean deleted;
+
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = Instant.now();
+    }
 }
\ No newline at end of file
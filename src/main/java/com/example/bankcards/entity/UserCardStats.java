@@ -0,0 +1,22 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "user_card_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCardStats {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "card_count", nullable = false)
+    private long cardCount;
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.entity.enums;
+
+public enum DeletionStatus {
+    QUEUED,
+    IN_PROGRESS,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package com.example.bankcards.entity.enums;
+
+public enum TransferStatus {
+    PENDING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package com.example.bankcards.exception;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+    public IdempotencyKeyMismatchException(String key) {
+        super("Ключ Idempotency-Key уже использован для другого запроса: " + key);
+    }
+}
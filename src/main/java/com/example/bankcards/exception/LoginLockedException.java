@@ -0,0 +1,14 @@
+package com.example.bankcards.exception;
+
+import lombok.Getter;
+
+@Getter
+public class LoginLockedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LoginLockedException(long retryAfterSeconds) {
+        super("Слишком много неудачных попыток входа, повторите через " + retryAfterSeconds + " с");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.bankcards.exception;
+
+public class TransferLimitExceededException extends RuntimeException {
+    public TransferLimitExceededException(String s) {
+        super("Превышен лимит переводов: " + s);
+    }
+}
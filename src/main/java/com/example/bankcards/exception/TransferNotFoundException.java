@@ -0,0 +1,11 @@
+package com.example.bankcards.exception;
+
+public class TransferNotFoundException extends RuntimeException {
+    public TransferNotFoundException(Long id) {
+        super("Перевод не найден: " + id);
+    }
+
+    public TransferNotFoundException(String id) {
+        super("Перевод не найден: " + id);
+    }
+}
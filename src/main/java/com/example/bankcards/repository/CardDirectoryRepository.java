@@ -0,0 +1,17 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardDirectoryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CardDirectoryRepository extends JpaRepository<CardDirectoryEntry, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO card_directory (card_key, shard) VALUES (:cardKey, :shard) " +
+            "ON CONFLICT (card_key) DO UPDATE SET shard = EXCLUDED.shard", nativeQuery = true)
+    void upsert(@Param("cardKey") String cardKey, @Param("shard") int shard);
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardStats;
+import com.example.bankcards.entity.enums.CardStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+
+@Repository
+public interface CardStatsRepository extends JpaRepository<CardStats, CardStatus> {
+
+    @Modifying
+    @Query(value = "INSERT INTO card_stats (status, card_count, total_balance) VALUES (:status, :count, :balance) " +
+            "ON CONFLICT (status) DO UPDATE SET card_count = card_stats.card_count + EXCLUDED.card_count, " +
+            "total_balance = card_stats.total_balance + EXCLUDED.total_balance", nativeQuery = true)
+    void addDelta(@Param("status") String status, @Param("count") long count, @Param("balance") BigDecimal balance);
+}
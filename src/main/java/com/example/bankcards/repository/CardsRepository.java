@@ -3,11 +3,19 @@ package com.example.bankcards.repository;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.repository.projection.CardBalanceView;
+import com.example.bankcards.repository.projection.EncryptedNumberView;
+import com.example.bankcards.repository.projection.ListingVersionView;
+import com.example.bankcards.repository.projection.StatusTotalsView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 @Repository
 public interface CardsRepository extends JpaRepository<Card, Long> {
@@ -16,4 +24,83 @@ public interface CardsRepository extends JpaRepository<Card, Long> {
     Page<Card> findCardsByStatus(CardStatus status, Pageable pageable);
 
     Optional<Card> findByEncryptedNumber(String number);
+
+    /** Проверка владельца входит в поиск: сравнивается owner_id карты, пользователь не загружается. */
+    @Query("select c from Card c where c.encryptedNumber = :number and c.owner.id = :ownerId")
+    Optional<Card> findByEncryptedNumberAndOwnerId(@Param("number") String number, @Param("ownerId") Long ownerId);
+
+    /** Идет по индексу (last_four, owner_id); фильтр по статусу применяется к уже найденным строкам. */
+    @Query("select c from Card c join fetch c.owner o where c.lastFour = :lastFour " +
+            "and (:ownerId is null or o.id = :ownerId) and (:status is null or c.status = :status) order by c.id desc")
+    List<Card> searchByLastFour(@Param("lastFour") String lastFour, @Param("ownerId") Long ownerId,
+                                @Param("status") CardStatus status, Pageable pageable);
+
+    @Query("select c.id as id, c.encryptedNumber as encryptedNumber from Card c " +
+            "where c.lastFour is null and c.id > :afterId order by c.id")
+    List<EncryptedNumberView> findWithoutLastFour(@Param("afterId") long afterId, Pageable pageable);
+
+    @Modifying
+    @Query(value = "UPDATE cards SET last_four = :lastFour WHERE id = :id AND last_four IS NULL", nativeQuery = true)
+    int fillLastFour(@Param("id") long id, @Param("lastFour") String lastFour);
+
+    /** Карты, зашифрованные не текущим ключом; prefixPattern - префикс текущей версии с '%'. */
+    @Query("select c.id as id, c.encryptedNumber as encryptedNumber from Card c " +
+            "where c.id > :afterId and c.encryptedNumber not like :prefixPattern order by c.id")
+    List<EncryptedNumberView> findEncryptedWithOtherKeys(@Param("afterId") long afterId,
+                                                         @Param("prefixPattern") String prefixPattern, Pageable pageable);
+
+    /** Номер не меняется, поэтому version не увеличивается; условие по старому значению защищает от гонки с updateCard. */
+    @Modifying
+    @Query(value = "UPDATE cards SET card_number_encrypted = :reencrypted " +
+            "WHERE id = :id AND card_number_encrypted = :encrypted", nativeQuery = true)
+    int replaceEncryptedNumber(@Param("id") long id, @Param("encrypted") String encrypted,
+                               @Param("reencrypted") String reencrypted);
+
+    @Query("select c.id from Card c where c.encryptedNumber = :number")
+    Optional<Long> findIdByEncryptedNumber(@Param("number") String number);
+
+    @Query("select c.encryptedNumber as encryptedNumber, c.expirationMonth as expirationMonth, " +
+            "c.expirationYear as expirationYear, c.status as status, c.balance as balance " +
+            "from Card c where c.owner.username = :username order by c.id desc")
+    List<CardBalanceView> findBalancesByOwnerUsername(@Param("username") String username);
+
+    String LISTING_VERSION = "select count(c) as rowCount, coalesce(max(c.id), 0) as maxId, " +
+            "coalesce(sum(c.version), 0) as versionSum, max(c.updatedAt) as lastUpdated from Card c";
+
+    @Query(LISTING_VERSION + " where c.owner.username = :username")
+    ListingVersionView findListingVersionByOwnerUsername(@Param("username") String username);
+
+    String EXPIRABLE = "status IN ('ACTIVE', 'BLOCK_REQUESTED') ";
+
+    /**
+     * Истекают только действующие карты (ACTIVE и BLOCK_REQUESTED): BLOCKED остается заблокированной.
+     * Строки с невалидным сроком (месяц или год 0, оставшиеся до проверки при создании) не трогаются.
+     */
+    @Query(value = "SELECT id FROM cards WHERE " + EXPIRABLE +
+            "AND expiration_month BETWEEN 1 AND 12 AND expiration_year >= 1000 " +
+            "AND (expiration_year, expiration_month) < (:year, :month) " +
+            "ORDER BY expiration_year, expiration_month LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockDueForExpiry(@Param("year") int year, @Param("month") int month, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE cards SET status = 'EXPIRED', version = version + 1, updated_at = now() " +
+            "WHERE id IN (:ids) AND " + EXPIRABLE, nativeQuery = true)
+    int markExpired(@Param("ids") List<Long> ids);
+
+    String STATUS_TOTALS = "SELECT status AS \"status\", count(*) AS \"cardCount\", " +
+            "coalesce(sum(balance), 0) AS \"totalBalance\" FROM cards ";
+
+    @Query(value = STATUS_TOTALS + "WHERE id IN (:ids) AND " + EXPIRABLE + "GROUP BY status", nativeQuery = true)
+    List<StatusTotalsView> summarizeDueForExpiry(@Param("ids") List<Long> ids);
+
+    @Query(value = STATUS_TOTALS + "WHERE id IN (:ids) GROUP BY status", nativeQuery = true)
+    List<StatusTotalsView> summarizeByIds(@Param("ids") List<Long> ids);
+
+    @Query(value = "SELECT id FROM cards WHERE owner_id = :ownerId ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Long> lockIdsByOwnerId(@Param("ownerId") Long ownerId, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM cards WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") List<Long> ids);
 }
@@ -0,0 +1,21 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CrossShardCredit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+
+@Repository
+public interface CrossShardCreditsRepository extends JpaRepository<CrossShardCredit, String> {
+
+    /** 0, если перевод уже зачислен. */
+    @Modifying
+    @Query(value = "INSERT INTO cross_shard_credits (transfer_id, to_card_id, amount, created_at) " +
+            "VALUES (:transferId, :toCardId, :amount, now()) ON CONFLICT (transfer_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("transferId") String transferId, @Param("toCardId") long toCardId,
+                       @Param("amount") BigDecimal amount);
+}
@@ -0,0 +1,26 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CrossShardTransfer;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CrossShardTransfersRepository extends JpaRepository<CrossShardTransfer, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from CrossShardTransfer t where t.id = :id")
+    Optional<CrossShardTransfer> lockById(@Param("id") String id);
+
+    @Query("select t.id from CrossShardTransfer t where t.status = com.example.bankcards.entity.enums.CrossShardTransferStatus.DEBITED " +
+            "and t.createdAt < :before order by t.createdAt")
+    List<String> findDebitedBefore(@Param("before") Instant before, Pageable pageable);
+}
@@ -0,0 +1,37 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyKeysRepository extends JpaRepository<IdempotencyKey, Long> {
+
+    /**
+     * 0, если ключ уже есть. Пока транзакция с тем же ключом не завершена, вставка ждет ее
+     * на уникальном индексе - так параллельный дубль на другом узле не проводит перевод второй раз.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (username, idem_key, request_hash, response, created_at, expires_at) " +
+            "VALUES (:username, :key, :requestHash, :response, :now, :expiresAt) " +
+            "ON CONFLICT (username, idem_key) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("username") String username, @Param("key") String key,
+                       @Param("requestHash") String requestHash, @Param("response") String response,
+                       @Param("now") Instant now, @Param("expiresAt") Instant expiresAt);
+
+    Optional<IdempotencyKey> findByUsernameAndKey(String username, String key);
+
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.username = :username and k.key = :key")
+    int deleteByUsernameAndKey(@Param("username") String username, @Param("key") String key);
+
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
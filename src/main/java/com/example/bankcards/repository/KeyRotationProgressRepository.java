@@ -0,0 +1,27 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.KeyRotationProgress;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface KeyRotationProgressRepository extends JpaRepository<KeyRotationProgress, Integer> {
+
+    /** Контрольная точка только продвигается вперед, даже если проход одновременно идет на нескольких узлах. */
+    @Modifying
+    @Query(value = "INSERT INTO key_rotation_progress (key_version, last_card_id, rotated_cards, updated_at) " +
+            "VALUES (:version, :lastCardId, :rotated, now()) " +
+            "ON CONFLICT (key_version) DO UPDATE SET " +
+            "last_card_id = GREATEST(key_rotation_progress.last_card_id, EXCLUDED.last_card_id), " +
+            "rotated_cards = key_rotation_progress.rotated_cards + EXCLUDED.rotated_cards, updated_at = now()",
+            nativeQuery = true)
+    void saveCheckpoint(@Param("version") int version, @Param("lastCardId") long lastCardId, @Param("rotated") long rotated);
+
+    @Modifying
+    @Query(value = "UPDATE key_rotation_progress SET completed_at = now(), updated_at = now() " +
+            "WHERE key_version = :version AND completed_at IS NULL", nativeQuery = true)
+    int markCompleted(@Param("version") int version);
+}
@@ -0,0 +1,22 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ListingVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ListingVersionsRepository extends JpaRepository<ListingVersion, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO listing_versions (name, version) VALUES (:name, 1) " +
+            "ON CONFLICT (name) DO UPDATE SET version = listing_versions.version + 1", nativeQuery = true)
+    void increment(@Param("name") String name);
+
+    @Query("select v.version from ListingVersion v where v.name = :name")
+    Optional<Long> findVersion(@Param("name") String name);
+}
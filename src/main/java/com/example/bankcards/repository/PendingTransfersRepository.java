@@ -0,0 +1,33 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.PendingTransfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PendingTransfersRepository extends JpaRepository<PendingTransfer, Long> {
+
+    Optional<PendingTransfer> findByIdAndUsername(Long id, String username);
+
+    @Query(value = "SELECT * FROM pending_transfers WHERE status = 'PENDING' " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PendingTransfer> claimPending(@Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM pending_transfers WHERE id = :id AND status = 'PENDING' " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<PendingTransfer> claimById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from PendingTransfer p where p.status <> com.example.bankcards.entity.enums.TransferStatus.PENDING " +
+            "and p.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Instant before);
+}
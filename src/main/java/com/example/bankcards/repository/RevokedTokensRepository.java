@@ -0,0 +1,33 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.RevokedToken;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface RevokedTokensRepository extends JpaRepository<RevokedToken, Long> {
+
+    /** Повторный выход с тем же токеном ничего не меняет. */
+    @Modifying
+    @Query(value = "INSERT INTO revoked_tokens (jti, expires_at, revoked_at) VALUES (:jti, :expiresAt, now()) " +
+            "ON CONFLICT (jti) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("jti") String jti, @Param("expiresAt") Instant expiresAt);
+
+    /** Постранично по (revoked_at, id): строки после позиции (afterRevokedAt, afterId). */
+    @Query("select t from RevokedToken t where t.expiresAt > :now and (t.revokedAt > :afterRevokedAt " +
+            "or (t.revokedAt = :afterRevokedAt and t.id > :afterId)) order by t.revokedAt, t.id")
+    List<RevokedToken> findActiveRevokedAfter(@Param("afterRevokedAt") Instant afterRevokedAt,
+                                              @Param("afterId") long afterId, @Param("now") Instant now,
+                                              Pageable pageable);
+
+    @Modifying
+    @Query("delete from RevokedToken t where t.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
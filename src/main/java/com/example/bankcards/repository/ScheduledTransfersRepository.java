@@ -0,0 +1,42 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ScheduledTransfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ScheduledTransfersRepository extends JpaRepository<ScheduledTransfer, Long> {
+
+    Optional<ScheduledTransfer> findByIdAndUsername(Long id, String username);
+
+    List<ScheduledTransfer> findByUsernameOrderByIdDesc(String username);
+
+    /** Точечный UPDATE, чтобы не перезаписать поля, которые одновременно меняет выполнение перевода. */
+    @Modifying
+    @Query("update ScheduledTransfer t set t.status = com.example.bankcards.entity.enums.ScheduledTransferStatus.CANCELLED, " +
+            "t.claimedUntil = null where t.id = :id and t.username = :username " +
+            "and t.status = com.example.bankcards.entity.enums.ScheduledTransferStatus.ACTIVE")
+    int cancel(@Param("id") Long id, @Param("username") String username);
+
+    /**
+     * Активные переводы со сроком до horizon, не арендованные другим узлом. Идет по частичному
+     * индексу idx_scheduled_transfers_due; SKIP LOCKED позволяет узлам разбирать пик параллельно.
+     */
+    @Query(value = "SELECT * FROM scheduled_transfers WHERE status = 'ACTIVE' AND next_run_at <= :horizon " +
+            "AND (claimed_until IS NULL OR claimed_until < :now) " +
+            "ORDER BY next_run_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<ScheduledTransfer> claimDue(@Param("horizon") Instant horizon, @Param("now") Instant now,
+                                     @Param("limit") int limit);
+
+    /** Блокирует перевод для выполнения, только если срок не сдвинулся и перевод не отменен. */
+    @Query(value = "SELECT * FROM scheduled_transfers WHERE id = :id AND status = 'ACTIVE' " +
+            "AND next_run_at = :runAt FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<ScheduledTransfer> claimForRun(@Param("id") Long id, @Param("runAt") Instant runAt);
+}
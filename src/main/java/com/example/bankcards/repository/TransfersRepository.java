@@ -0,0 +1,48 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.TransferRecord;
+import com.example.bankcards.repository.projection.OutgoingTotalsView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface TransfersRepository extends JpaRepository<TransferRecord, Long> {
+
+    /**
+     * Keyset-страница истории карты: строки строго раньше курсора (createdAt, id), не старше since.
+     * Обе ветки идут по своим индексам (from_card_id/to_card_id, created_at, id) в порядке убывания,
+     * а ограничения по created_at отсекают лишние месячные секции.
+     */
+    @Query(value = "SELECT h.* FROM (" +
+            "(SELECT t.* FROM transfers t WHERE t.from_card_id = :cardId " +
+            "AND t.created_at >= :since AND (t.created_at, t.id) < (:beforeTime, :beforeId) " +
+            "ORDER BY t.created_at DESC, t.id DESC LIMIT :limit) " +
+            "UNION ALL " +
+            "(SELECT t.* FROM transfers t WHERE t.to_card_id = :cardId AND t.from_card_id <> :cardId " +
+            "AND t.created_at >= :since AND (t.created_at, t.id) < (:beforeTime, :beforeId) " +
+            "ORDER BY t.created_at DESC, t.id DESC LIMIT :limit)" +
+            ") h ORDER BY h.created_at DESC, h.id DESC LIMIT :limit", nativeQuery = true)
+    List<TransferRecord> findHistoryPage(@Param("cardId") long cardId,
+                                         @Param("since") Instant since,
+                                         @Param("beforeTime") Instant beforeTime,
+                                         @Param("beforeId") long beforeId,
+                                         @Param("limit") int limit);
+
+    /**
+     * Исходящие суммы по картам и часам начиная с since; from_card_id = 0 - зачисления с другого шарда.
+     * Компенсированные межшардовые списания вычитаются: запись cross_shard_transfers создается
+     * с тем же created_at, что и запись списания в transfers, поэтому попадает в тот же час.
+     */
+    @Query(value = "SELECT card_id AS \"cardId\", CAST(floor(extract(epoch FROM created_at) / 3600) AS bigint) AS \"hour\", " +
+            "sum(amount) AS \"amount\" FROM (" +
+            "SELECT from_card_id AS card_id, created_at, amount FROM transfers WHERE created_at >= :since AND from_card_id <> 0 " +
+            "UNION ALL SELECT from_card_id, created_at, -amount FROM cross_shard_transfers " +
+            "WHERE status = 'COMPENSATED' AND created_at >= :since) t " +
+            "GROUP BY 1, 2", nativeQuery = true)
+    List<OutgoingTotalsView> sumOutgoingByHour(@Param("since") Instant since);
+}
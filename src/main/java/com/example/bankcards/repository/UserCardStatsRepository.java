@@ -0,0 +1,18 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.UserCardStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserCardStatsRepository extends JpaRepository<UserCardStats, Long> {
+
+    @Modifying
+    @Query(value = "INSERT INTO user_card_stats (user_id, card_count) VALUES (:userId, :count) " +
+            "ON CONFLICT (user_id) DO UPDATE SET card_count = user_card_stats.card_count + EXCLUDED.card_count",
+            nativeQuery = true)
+    void addDelta(@Param("userId") Long userId, @Param("count") long count);
+}
@@ -1,12 +1,68 @@
 package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.projection.UserIdView;
+import com.example.bankcards.repository.projection.UserSearchView;
+import com.example.bankcards.repository.projection.UserSummaryView;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 @Repository
 public interface UsersRepository extends JpaRepository<User, Long> {
-    Optional<User> findByUsername(String s);
-    void deleteByUsername(String s);
+    /** Помеченные на удаление пользователи не находятся - ни здесь, ни в списках и поиске ниже. */
+    @Query("select u from User u where u.username = :username and u.deleted = false")
+    Optional<User> findByUsername(@Param("username") String s);
+
+    @Query("select u.id from User u where u.username = :username and u.deleted = false")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
+
+    /**
+     * Список пользователей без загрузки сущностей: имя, роль и число карт из user_card_stats.
+     * Пароль не выбирается, контекст персистентности не заполняется.
+     */
+    @Query(value = "select u.username as username, r.name as role, coalesce(s.cardCount, 0) as cardCount " +
+            "from User u join u.role r left join UserCardStats s on s.userId = u.id where u.deleted = false",
+            countQuery = "select count(u) from User u where u.deleted = false")
+    Page<UserSummaryView> findSummaries(Pageable pageable);
+
+    /** 0 - точное совпадение, 1 - совпадение с начала имени, 2 - вхождение. */
+    String SEARCH_TIER = "case when lower(u.username) = :query then 0 " +
+            "when lower(u.username) like :prefix escape '!' then 1 else 2 end";
+
+    /**
+     * Поиск по lower(username) like :pattern: в PostgreSQL обслуживается GIN-индексом pg_trgm,
+     * для шаблона без ведущего % - индексом text_pattern_ops. Порядок (tier, длина, имя) однозначен,
+     * поэтому страницы берутся keyset-условием после позиции курсора.
+     */
+    @Query("select u.username as username, u.role.name as role, " + SEARCH_TIER + " as tier from User u " +
+            "where u.deleted = false and lower(u.username) like :pattern escape '!' " +
+            "and (" + SEARCH_TIER + " > :tier or (" + SEARCH_TIER + " = :tier " +
+            "and (length(u.username) > :length or (length(u.username) = :length and u.username > :after)))) " +
+            "order by " + SEARCH_TIER + ", length(u.username), u.username")
+    List<UserSearchView> searchByUsername(@Param("query") String query, @Param("prefix") String prefix,
+                                          @Param("pattern") String pattern, @Param("tier") int tier,
+                                          @Param("length") int length, @Param("after") String after,
+                                          Pageable pageable);
+
+    @Modifying
+    @Query(value = "UPDATE users SET deleted = true, version = version + 1, updated_at = now() WHERE id = :id",
+            nativeQuery = true)
+    int markDeleted(@Param("id") Long id);
+
+    @Query("select u.id as id, u.username as username from User u where u.deleted = true order by u.id")
+    List<UserIdView> findMarkedDeleted();
+
+    /** Удаляет помеченного пользователя, только если у него не осталось карт. */
+    @Modifying
+    @Query(value = "DELETE FROM users WHERE id = :id AND deleted " +
+            "AND NOT EXISTS (SELECT 1 FROM cards WHERE owner_id = :id)", nativeQuery = true)
+    int purgeDeleted(@Param("id") Long id);
 }
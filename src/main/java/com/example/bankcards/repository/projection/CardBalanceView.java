@@ -0,0 +1,17 @@
+package com.example.bankcards.repository.projection;
+
+import com.example.bankcards.entity.enums.CardStatus;
+
+import java.math.BigDecimal;
+
+public interface CardBalanceView {
+    String getEncryptedNumber();
+
+    int getExpirationMonth();
+
+    int getExpirationYear();
+
+    CardStatus getStatus();
+
+    BigDecimal getBalance();
+}
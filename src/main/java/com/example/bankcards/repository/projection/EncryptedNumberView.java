@@ -0,0 +1,7 @@
+package com.example.bankcards.repository.projection;
+
+public interface EncryptedNumberView {
+    long getId();
+
+    String getEncryptedNumber();
+}
@@ -0,0 +1,16 @@
+package com.example.bankcards.repository.projection;
+
+import java.time.Instant;
+
+/**
+ * Дешевая сводка по набору строк: меняется при любой вставке, удалении или обновлении строки из набора.
+ */
+public interface ListingVersionView {
+    long getRowCount();
+
+    long getMaxId();
+
+    long getVersionSum();
+
+    Instant getLastUpdated();
+}
@@ -0,0 +1,12 @@
+package com.example.bankcards.repository.projection;
+
+import java.math.BigDecimal;
+
+public interface OutgoingTotalsView {
+    long getCardId();
+
+    /** Номер часа от эпохи (UTC). */
+    long getHour();
+
+    BigDecimal getAmount();
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.repository.projection;
+
+import java.math.BigDecimal;
+
+public interface StatusTotalsView {
+    String getStatus();
+
+    long getCardCount();
+
+    BigDecimal getTotalBalance();
+}
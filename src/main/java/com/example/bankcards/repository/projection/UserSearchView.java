@@ -0,0 +1,9 @@
+package com.example.bankcards.repository.projection;
+
+public interface UserSearchView {
+    String getUsername();
+
+    String getRole();
+
+    int getTier();
+}
@@ -0,0 +1,9 @@
+package com.example.bankcards.repository.projection;
+
+public interface UserSummaryView {
+    String getUsername();
+
+    String getRole();
+
+    long getCardCount();
+}
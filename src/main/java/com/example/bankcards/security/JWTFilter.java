@@ -4,12 +4,15 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.service.ShardRouter;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 
 import java.io.IOException;
 
@@ -18,10 +21,15 @@ public class JWTFilter extends OncePerRequestFilter {
 
     private final JWTUtil jwtUtil;
     private final UserDetailsServiceImplemented userDetailsService;
+    private final ShardRouter shardRouter;
+    private final TokenDenyList tokenDenyList;
 
-    public JWTFilter(JWTUtil jwtUtil, UserDetailsServiceImplemented userDetailsService) {
+    public JWTFilter(JWTUtil jwtUtil, UserDetailsServiceImplemented userDetailsService, ShardRouter shardRouter,
+                     TokenDenyList tokenDenyList) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.shardRouter = shardRouter;
+        this.tokenDenyList = tokenDenyList;
     }
 
     @Override
@@ -47,7 +55,13 @@ public class JWTFilter extends OncePerRequestFilter {
                         "Invalid JWT Token in Bearer Header");
             } else {
                 try {
-                    String username = jwtUtil.validateTokenAndRetrieveClaim(jwt);
+                    DecodedJWT decoded = jwtUtil.verifyToken(jwt);
+                    // проверка в памяти узла, до загрузки пользователя из БД
+                    if (tokenDenyList.isRevoked(decoded.getId())) {
+                        httpServletResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED, "JWT Token revoked");
+                        return;
+                    }
+                    String username = decoded.getClaim("username").asString();
                     UserDetails userDetails = userDetailsService.loadUserByUsername(username);
 
                     UsernamePasswordAuthenticationToken authToken =
@@ -58,6 +72,8 @@ public class JWTFilter extends OncePerRequestFilter {
                     if (SecurityContextHolder.getContext().getAuthentication() == null) {
                         SecurityContextHolder.getContext().setAuthentication(authToken);
                     }
+                    // запрос пользователя идет на его шард; запросы админа к чужим данным перенаправляет ShardRoutingInterceptor
+                    ShardContext.set(shardRouter.shardOfUser(username));
                 } catch (JWTVerificationException exc) {
                     httpServletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST,
                             "Invalid JWT Token");
@@ -65,6 +81,10 @@ public class JWTFilter extends OncePerRequestFilter {
             }
         }
 
-        filterChain.doFilter(httpServletRequest, httpServletResponse);
+        try {
+            filterChain.doFilter(httpServletRequest, httpServletResponse);
+        } finally {
+            ShardContext.clear();
+        }
     }
 }
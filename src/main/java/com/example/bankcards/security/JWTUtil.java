@@ -14,6 +14,7 @@ import java.time.ZonedDateTime;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 @Component
 public class JWTUtil {
@@ -52,6 +53,7 @@ public class JWTUtil {
         return JWT.create()
                 .withSubject("User details")
                 .withClaim("username", login)
+                .withJWTId(UUID.randomUUID().toString())
                 .withIssuedAt(new Date())
                 .withIssuer(issuer)
                 .withExpiresAt(expirationDate)
@@ -59,12 +61,16 @@ public class JWTUtil {
     }
 
     public String validateTokenAndRetrieveClaim(String token) throws JWTVerificationException {
+        return verifyToken(token).getClaim("username").asString();
+    }
+
+    /** Проверенный токен целиком: кроме имени пользователя нужны jti и срок действия (для отзыва). */
+    public DecodedJWT verifyToken(String token) throws JWTVerificationException {
         JWTVerifier verifier = JWT.require(Algorithm.HMAC256(secret))
                 .withSubject("User details")
                 .withIssuer(issuer)
                 .build();
 
-        DecodedJWT jwt = verifier.verify(token);
-        return jwt.getClaim("username").asString();
+        return verifier.verify(token);
     }
 }
@@ -0,0 +1,223 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.LoginLockedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Защита входа от перебора паролей. Неудачные попытки считаются отдельно по имени пользователя
+ * и по IP; после порога ключ блокируется, и каждая следующая неудача удваивает блокировку
+ * (до max-lockout). Заблокированная попытка отклоняется до поиска пользователя и проверки BCrypt.
+ * Счетчики живут в памяти узла, их число ограничено max-entries: при переполнении за O(1) вытесняется
+ * ключ, дольше всех не встречавшийся при входе. Заблокированные ключи проверяются на каждой попытке
+ * и поэтому вытесняются последними.
+ */
+@Component
+public class LoginAttemptGuard {
+
+    private final boolean enabled;
+
+    private final int maxFailuresPerUser;
+
+    private final int maxFailuresPerIp;
+
+    private final long baseLockoutNanos;
+
+    private final long maxLockoutNanos;
+
+    private final long resetAfterNanos;
+
+    private final int maxEntries;
+
+    /** LinkedHashMap в порядке доступа; все обращения под монитором самой карты. */
+    private final Map<String, Attempts> attempts;
+
+    private final Counter failuresCounter;
+
+    private final Counter lockoutsCounter;
+
+    private final Counter blockedCounter;
+
+    private final Counter evictedCounter;
+
+    @Autowired
+    public LoginAttemptGuard(@Value("${bank.auth.login-guard.enabled:true}") boolean enabled,
+                             @Value("${bank.auth.login-guard.max-failures-per-user:5}") int maxFailuresPerUser,
+                             @Value("${bank.auth.login-guard.max-failures-per-ip:20}") int maxFailuresPerIp,
+                             @Value("${bank.auth.login-guard.base-lockout:30s}") Duration baseLockout,
+                             @Value("${bank.auth.login-guard.max-lockout:15m}") Duration maxLockout,
+                             @Value("${bank.auth.login-guard.reset-after:15m}") Duration resetAfter,
+                             @Value("${bank.auth.login-guard.max-entries:100000}") int maxEntries,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxFailuresPerUser = maxFailuresPerUser;
+        this.maxFailuresPerIp = maxFailuresPerIp;
+        this.baseLockoutNanos = baseLockout.toNanos();
+        this.maxLockoutNanos = maxLockout.toNanos();
+        this.resetAfterNanos = resetAfter.toNanos();
+        this.maxEntries = maxEntries;
+        this.attempts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Attempts> eldest) {
+                if (size() <= LoginAttemptGuard.this.maxEntries) {
+                    return false;
+                }
+                evictedCounter.increment();
+                return true;
+            }
+        };
+        this.failuresCounter = Counter.builder("bank.auth.login.failures")
+                .description("Неудачные попытки входа")
+                .register(meterRegistry);
+        this.lockoutsCounter = Counter.builder("bank.auth.login.lockouts")
+                .description("Блокировки входа по имени пользователя или IP")
+                .register(meterRegistry);
+        this.blockedCounter = Counter.builder("bank.auth.login.blocked")
+                .description("Попытки входа, отклоненные без проверки пароля")
+                .register(meterRegistry);
+        this.evictedCounter = Counter.builder("bank.auth.login.evicted")
+                .description("Счетчики входа, вытесненные при переполнении max-entries")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("bank.auth.login.tracked", List.of(), attempts);
+    }
+
+    /** Бросает LoginLockedException, если имя или IP заблокированы. */
+    public void checkAllowed(String username, String clientIp) {
+        checkAllowed(username, clientIp, System.nanoTime());
+    }
+
+    void checkAllowed(String username, String clientIp, long now) {
+        if (!enabled) {
+            return;
+        }
+        long wait = Math.max(remainingLockout(userKey(username), now), remainingLockout(ipKey(clientIp), now));
+        if (wait > 0) {
+            blockedCounter.increment();
+            throw new LoginLockedException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L)));
+        }
+    }
+
+    public void onFailure(String username, String clientIp) {
+        onFailure(username, clientIp, System.nanoTime());
+    }
+
+    void onFailure(String username, String clientIp, long now) {
+        if (!enabled) {
+            return;
+        }
+        failuresCounter.increment();
+        recordFailure(userKey(username), maxFailuresPerUser, now);
+        recordFailure(ipKey(clientIp), maxFailuresPerIp, now);
+    }
+
+    /** Успешный вход сбрасывает счетчик имени; счетчик IP остается, чтобы свой аккаунт не обнулял перебор чужих. */
+    public void onSuccess(String username) {
+        if (enabled) {
+            synchronized (attempts) {
+                attempts.remove(userKey(username));
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bank.auth.login-guard.cleanup-interval:PT1M}")
+    public void evictExpired() {
+        evictExpired(System.nanoTime());
+    }
+
+    void evictExpired(long now) {
+        synchronized (attempts) {
+            attempts.values().removeIf(entry -> entry.isExpired(now, resetAfterNanos));
+        }
+    }
+
+    int trackedCount() {
+        synchronized (attempts) {
+            return attempts.size();
+        }
+    }
+
+    private long remainingLockout(String key, long now) {
+        if (key == null) {
+            return 0;
+        }
+        Attempts entry;
+        synchronized (attempts) {
+            entry = attempts.get(key);
+        }
+        return entry != null ? entry.remainingLockout(now) : 0;
+    }
+
+    private void recordFailure(String key, int threshold, long now) {
+        if (key == null) {
+            return;
+        }
+        Attempts entry;
+        synchronized (attempts) {
+            entry = attempts.computeIfAbsent(key, k -> new Attempts(now));
+        }
+        if (entry.onFailure(now, threshold, baseLockoutNanos, maxLockoutNanos, resetAfterNanos)) {
+            lockoutsCounter.increment();
+        }
+    }
+
+    private static String userKey(String username) {
+        return username != null && !username.isBlank() ? "u:" + username.trim().toLowerCase() : null;
+    }
+
+    private static String ipKey(String clientIp) {
+        return clientIp != null && !clientIp.isBlank() ? "ip:" + clientIp : null;
+    }
+
+    private static final class Attempts {
+
+        private int failures;
+
+        private long lastFailureAt;
+
+        private long lockedUntil;
+
+        /** nanoTime может быть отрицательным, поэтому моменты отсчитываются от времени создания, а не от 0. */
+        private Attempts(long now) {
+            this.lastFailureAt = now;
+            this.lockedUntil = now;
+        }
+
+        private synchronized long remainingLockout(long now) {
+            return Math.max(0, lockedUntil - now);
+        }
+
+        /** Возвращает true, если эта неудача заблокировала ключ. */
+        private synchronized boolean onFailure(long now, int threshold, long baseLockout, long maxLockout,
+                                               long resetAfter) {
+            if (failures > 0 && now - lastFailureAt > resetAfter && lockedUntil - now <= 0) {
+                failures = 0;
+            }
+            failures++;
+            lastFailureAt = now;
+            if (failures < threshold) {
+                return false;
+            }
+            int doublings = Math.min(failures - threshold, 30);
+            long lockout = Math.min(maxLockout, baseLockout << doublings);
+            if (lockout <= 0) {
+                lockout = maxLockout;
+            }
+            lockedUntil = now + lockout;
+            return true;
+        }
+
+        private synchronized boolean isExpired(long now, long resetAfter) {
+            return lockedUntil - now <= 0 && now - lastFailureAt > resetAfter;
+        }
+    }
+}
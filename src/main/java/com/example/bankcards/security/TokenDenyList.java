@@ -0,0 +1,157 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokensRepository;
+import com.example.bankcards.service.ShardRouter;
+import com.example.bankcards.util.BloomFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отозванные JWT. Источник истины - таблица revoked_tokens (на шарде 0), а на каждом узле в памяти
+ * лежат фильтр Блума и точный набор jti со сроком действия. JWTFilter проверяет токен без обращения к БД:
+ * почти всегда хватает фильтра, точный набор нужен только при его срабатывании. Отзывы с других узлов
+ * подгружаются опросом по времени отзыва, истекшие токены удаляются из набора и из таблицы.
+ */
+@Slf4j
+@Component
+public class TokenDenyList {
+
+    private static final int REFRESH_BATCH = 1000;
+
+    private final RevokedTokensRepository revokedTokensRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int expectedTokens;
+
+    private final double falsePositiveRate;
+
+    private final Map<String, Instant> revoked = new ConcurrentHashMap<>();
+
+    /**
+     * revoked_at ставится в начале транзакции отзыва, а строка становится видна только после коммита,
+     * поэтому опрос каждый раз перечитывает отзывы за последние refreshOverlap: строка, закоммиченная
+     * позже более новых, попадет в следующий опрос. Повторы безвредны.
+     */
+    private final Duration refreshOverlap;
+
+    /** Опросы идут по очереди, но не под монитором this: revoke не ждет запроса к БД. */
+    private final Object refreshLock = new Object();
+
+    private volatile BloomFilter bloomFilter;
+
+    private Instant lastSeenRevokedAt = Instant.EPOCH;
+
+    @Autowired
+    public TokenDenyList(RevokedTokensRepository revokedTokensRepository, PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${bank.auth.revocation.expected-tokens:100000}") int expectedTokens,
+                         @Value("${bank.auth.revocation.false-positive-rate:0.01}") double falsePositiveRate,
+                         @Value("${bank.auth.revocation.refresh-overlap:PT1M}") Duration refreshOverlap) {
+        this.revokedTokensRepository = revokedTokensRepository;
+        // отзыв пишется сразу, даже если вызывающий код в транзакции на другом шарде
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.expectedTokens = expectedTokens;
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshOverlap = refreshOverlap;
+        this.bloomFilter = new BloomFilter(expectedTokens, falsePositiveRate);
+        meterRegistry.gaugeMapSize("bank.auth.revoked.tokens", List.of(), revoked);
+    }
+
+    /** O(1) и без БД; токены без jti (выданные до появления отзыва) отозванными не считаются. */
+    public boolean isRevoked(String jti) {
+        if (jti == null || !bloomFilter.mightContain(jti)) {
+            return false;
+        }
+        Instant expiresAt = revoked.get(jti);
+        return expiresAt != null && expiresAt.isAfter(Instant.now());
+    }
+
+    public void revoke(String jti, Instant expiresAt) {
+        ShardContext.runOn(ShardRouter.DIRECTORY_SHARD, () -> transactionTemplate.executeWithoutResult(status ->
+                revokedTokensRepository.insertIfAbsent(jti, expiresAt)));
+        remember(jti, expiresAt);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        refresh();
+    }
+
+    /** Подгружает отзывы, сделанные на других узлах. */
+    @Scheduled(fixedDelayString = "${bank.auth.revocation.refresh-interval:PT5S}")
+    public void refresh() {
+        synchronized (refreshLock) {
+            try {
+                Instant afterRevokedAt = lastSeenRevokedAt.minus(refreshOverlap);
+                long afterId = 0;
+                while (true) {
+                    Instant position = afterRevokedAt;
+                    long positionId = afterId;
+                    List<RevokedToken> batch = ShardContext.callOn(ShardRouter.DIRECTORY_SHARD, () ->
+                            revokedTokensRepository.findActiveRevokedAfter(position, positionId, Instant.now(),
+                                    PageRequest.of(0, REFRESH_BATCH)));
+                    for (RevokedToken token : batch) {
+                        remember(token.getJti(), token.getExpiresAt());
+                        afterRevokedAt = token.getRevokedAt();
+                        afterId = token.getId();
+                    }
+                    if (afterRevokedAt.isAfter(lastSeenRevokedAt)) {
+                        lastSeenRevokedAt = afterRevokedAt;
+                    }
+                    if (batch.size() < REFRESH_BATCH) {
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Не удалось обновить список отозванных токенов: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Удаляет истекшие токены: из набора, из фильтра (пересозданием) и из таблицы. */
+    @Scheduled(fixedDelayString = "${bank.auth.revocation.prune-interval:PT10M}")
+    public void prune() {
+        Instant now = Instant.now();
+        synchronized (this) {
+            revoked.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+            BloomFilter rebuilt = new BloomFilter(Math.max(expectedTokens, revoked.size()), falsePositiveRate);
+            revoked.keySet().forEach(rebuilt::put);
+            bloomFilter = rebuilt;
+        }
+        try {
+            Integer deleted = ShardContext.callOn(ShardRouter.DIRECTORY_SHARD, () ->
+                    transactionTemplate.execute(status -> revokedTokensRepository.deleteExpired(now)));
+            if (deleted != null && deleted > 0) {
+                log.info("Удалено истекших отозванных токенов: {}", deleted);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить истекшие отозванные токены: {}", e.getMessage());
+        }
+    }
+
+    /** Добавление и пересоздание фильтра под одной блокировкой, чтобы отзыв не потерялся при замене фильтра. */
+    private synchronized void remember(String jti, Instant expiresAt) {
+        revoked.put(jti, expiresAt);
+        bloomFilter.put(jti);
+    }
+}
@@ -15,6 +15,11 @@ public class UserDetailsImplemented implements UserDetails {
         this.user = user;
     }
 
+    /** id пользователя, чтобы проверять владельца карты условием owner_id в том же запросе. */
+    public Long getId() {
+        return this.user.getId();
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return Collections.singletonList(new SimpleGrantedAuthority(user.getRole().getName()));
@@ -1,7 +1,9 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.config.ShardContext;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.service.ShardRouter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -15,14 +17,17 @@ public class UserDetailsServiceImplemented implements UserDetailsService {
 
     private final UsersRepository usersRepository;
 
+    private final ShardRouter shardRouter;
+
     @Autowired
-    public UserDetailsServiceImplemented(UsersRepository usersRepository) {
+    public UserDetailsServiceImplemented(UsersRepository usersRepository, ShardRouter shardRouter) {
         this.usersRepository = usersRepository;
+        this.shardRouter = shardRouter;
     }
 
     @Override
     public UserDetails loadUserByUsername(String s) throws UsernameNotFoundException {
-        Optional<User> person = usersRepository.findByUsername(s);
+        Optional<User> person = ShardContext.callOn(shardRouter.shardOfUser(s), () -> usersRepository.findByUsername(s));
 
         if (person.isEmpty())
             throw new UsernameNotFoundException("User not found");
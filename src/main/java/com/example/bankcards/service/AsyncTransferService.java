@@ -0,0 +1,66 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferStatusDTO;
+import com.example.bankcards.entity.PendingTransfer;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.exception.TransferNotFoundException;
+import com.example.bankcards.repository.PendingTransfersRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Service
+public class AsyncTransferService {
+
+    private final PendingTransfersRepository pendingTransfersRepository;
+
+    private final PendingTransferProcessor pendingTransferProcessor;
+
+    private final EncryptionUtil encryptionUtil;
+
+    @Autowired
+    public AsyncTransferService(PendingTransfersRepository pendingTransfersRepository,
+                                PendingTransferProcessor pendingTransferProcessor, EncryptionUtil encryptionUtil) {
+        this.pendingTransfersRepository = pendingTransfersRepository;
+        this.pendingTransferProcessor = pendingTransferProcessor;
+        this.encryptionUtil = encryptionUtil;
+    }
+
+    public TransferStatusDTO submit(String username, String fromCardNumber, String toCardNumber, BigDecimal amount) {
+        if (!pendingTransferProcessor.isEnabled()) {
+            throw new IllegalStateException("Асинхронные переводы отключены");
+        }
+
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма перевода должна быть больше 0");
+        }
+
+        PendingTransfer transfer = new PendingTransfer();
+        transfer.setUsername(username);
+        transfer.setFromCardEncrypted(encryptionUtil.encrypt(fromCardNumber));
+        transfer.setToCardEncrypted(encryptionUtil.encrypt(toCardNumber));
+        transfer.setAmount(amount);
+        transfer.setStatus(TransferStatus.PENDING);
+        transfer.setCreatedAt(Instant.now());
+
+        PendingTransfer saved = pendingTransfersRepository.save(transfer);
+        pendingTransferProcessor.wakeUp();
+        return toDTO(saved);
+    }
+
+    @Transactional(readOnly = true)
+    public TransferStatusDTO getStatus(String username, Long id) {
+        PendingTransfer transfer = pendingTransfersRepository.findByIdAndUsername(id, username)
+                .orElseThrow(() -> new TransferNotFoundException(id));
+        return toDTO(transfer);
+    }
+
+    private TransferStatusDTO toDTO(PendingTransfer transfer) {
+        return new TransferStatusDTO(transfer.getId(), transfer.getAmount(), transfer.getStatus(),
+                transfer.getError(), transfer.getCreatedAt(), transfer.getProcessedAt());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Переводит в EXPIRED карты с истекшим сроком действия. Карты отбираются по частичному индексу
+ * (expiration_year, expiration_month) порциями по chunk-size строк, каждая порция - отдельная короткая
+ * транзакция с FOR UPDATE SKIP LOCKED, поэтому несколько узлов могут работать одновременно,
+ * а переводы не ждут длинных блокировок. Между порциями выдерживается пауза.
+ */
+@Slf4j
+@Component
+public class CardExpirySweeper {
+
+    private final CardsRepository cardsRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final CardStatsService cardStatsService;
+
+    private final ShardRouter shardRouter;
+
+    private final int chunkSize;
+
+    private final int maxChunksPerRun;
+
+    private final Duration pause;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicLong lastRunExpired = new AtomicLong();
+
+    private final Counter expiredCounter;
+
+    private final Counter chunksCounter;
+
+    private final Timer runTimer;
+
+    @Autowired
+    public CardExpirySweeper(CardsRepository cardsRepository, TransactionTemplate transactionTemplate,
+                             CardStatsService cardStatsService, ShardRouter shardRouter, MeterRegistry meterRegistry,
+                             @Value("${bank.cards.expiry.chunk-size:500}") int chunkSize,
+                             @Value("${bank.cards.expiry.max-chunks-per-run:200}") int maxChunksPerRun,
+                             @Value("${bank.cards.expiry.pause:200ms}") Duration pause) {
+        this.cardsRepository = cardsRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.cardStatsService = cardStatsService;
+        this.shardRouter = shardRouter;
+        this.chunkSize = chunkSize;
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.pause = pause;
+        this.expiredCounter = Counter.builder("bank.cards.expiry.expired")
+                .description("Карты, переведенные в EXPIRED")
+                .register(meterRegistry);
+        this.chunksCounter = Counter.builder("bank.cards.expiry.chunks")
+                .description("Обработанные порции")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("bank.cards.expiry.run")
+                .description("Длительность прохода")
+                .register(meterRegistry);
+        meterRegistry.gauge("bank.cards.expiry.last.run.expired", lastRunExpired);
+        meterRegistry.gauge("bank.cards.expiry.running", running, flag -> flag.get() ? 1 : 0);
+    }
+
+    @Scheduled(cron = "${bank.cards.expiry.cron:0 5 * * * *}", zone = "UTC")
+    public void scheduledSweep() {
+        shardRouter.forEachShard(this::sweep);
+    }
+
+    /** Возвращает число карт, переведенных в EXPIRED за проход; 0, если проход уже идет. */
+    public long sweep() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        long total = 0;
+        int chunks = 0;
+        Timer.Sample sample = Timer.start();
+        try {
+            while (chunks < maxChunksPerRun) {
+                Integer expired = transactionTemplate.execute(status -> expireChunk(current));
+                if (expired == null || expired == 0) {
+                    break;
+                }
+                chunks++;
+                total += expired;
+                expiredCounter.increment(expired);
+                chunksCounter.increment();
+                if (expired < chunkSize || !pauseBetweenChunks()) {
+                    break;
+                }
+            }
+        } finally {
+            sample.stop(runTimer);
+            lastRunExpired.set(total);
+            running.set(false);
+        }
+        if (total > 0) {
+            log.info("Просроченных карт переведено в EXPIRED: {} за {} порций", total, chunks);
+        }
+        return total;
+    }
+
+    private int expireChunk(YearMonth current) {
+        List<Long> ids = cardsRepository.lockDueForExpiry(current.getYear(), current.getMonthValue(), chunkSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        cardStatsService.onExpired(cardsRepository.summarizeDueForExpiry(ids));
+        return cardsRepository.markExpired(ids);
+    }
+
+    private boolean pauseBetweenChunks() {
+        if (pause.isZero()) {
+            return true;
+        }
+        try {
+            Thread.sleep(pause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
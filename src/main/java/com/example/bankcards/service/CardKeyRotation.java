@@ -0,0 +1,185 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.EncryptionProperties;
+import com.example.bankcards.entity.KeyRotationProgress;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.KeyRotationProgressRepository;
+import com.example.bankcards.repository.projection.EncryptedNumberView;
+import com.example.bankcards.util.EncryptionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Перешифровывает номера карт текущим ключом (encryption.current-version) без остановки приложения.
+ * Карты обходятся по id порциями по chunk-size, каждая порция - своя транзакция вместе с контрольной
+ * точкой в key_rotation_progress, поэтому после перезапуска проход продолжается с того же места.
+ * Скорость ограничена rows-per-second. Пока проход не завершен, поиск карт пробует и прежние ключи.
+ */
+@Slf4j
+@Component
+public class CardKeyRotation {
+
+    private final CardsRepository cardsRepository;
+
+    private final KeyRotationProgressRepository progressRepository;
+
+    private final EncryptionUtil encryptionUtil;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final int chunkSize;
+
+    private final int rowsPerSecond;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter rotatedCounter;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-key-rotation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public CardKeyRotation(CardsRepository cardsRepository, KeyRotationProgressRepository progressRepository,
+                           EncryptionUtil encryptionUtil, TransactionTemplate transactionTemplate,
+                           ShardRouter shardRouter, EncryptionProperties properties, MeterRegistry meterRegistry) {
+        this.cardsRepository = cardsRepository;
+        this.progressRepository = progressRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
+        this.chunkSize = properties.getRotation().getChunkSize();
+        this.rowsPerSecond = properties.getRotation().getRowsPerSecond();
+        this.rotatedCounter = Counter.builder("bank.encryption.rotation.rotated")
+                .description("Карты, перешифрованные текущим ключом")
+                .register(meterRegistry);
+        meterRegistry.gauge("bank.encryption.rotation.running", running, flag -> flag.get() ? 1 : 0);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        start();
+    }
+
+    /** Продолжает проход, прерванный ошибкой; завершенная ротация повторно не запускается. */
+    @Scheduled(fixedDelayString = "${encryption.rotation.check-interval:PT10M}")
+    public void resume() {
+        start();
+    }
+
+    private void start() {
+        if (encryptionUtil.getCurrentVersion() == 0 || running.get()) {
+            return;
+        }
+        try {
+            // прогресс ротации хранится на каждом шарде свой, шарды обходятся по очереди
+            executor.submit(() -> shardRouter.forEachShard(this::rotate));
+        } catch (RejectedExecutionException e) {
+            log.warn("Перешифрование карт не запущено: {}", e.getMessage());
+        }
+    }
+
+    /** Возвращает число перешифрованных карт за проход; 0, если проход уже идет или ротация завершена. */
+    public long rotate() {
+        int version = encryptionUtil.getCurrentVersion();
+        if (version == 0 || !running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            KeyRotationProgress progress = progressRepository.findById(version).orElse(null);
+            if (progress != null && progress.getCompletedAt() != null) {
+                return 0;
+            }
+            long afterId = progress != null ? progress.getLastCardId() : 0;
+            String prefixPattern = encryptionUtil.getCurrentPrefix() + "%";
+            long total = 0;
+
+            while (true) {
+                long started = System.nanoTime();
+                List<EncryptedNumberView> chunk = cardsRepository.findEncryptedWithOtherKeys(
+                        afterId, prefixPattern, PageRequest.of(0, chunkSize));
+                if (chunk.isEmpty()) {
+                    long lastId = afterId;
+                    transactionTemplate.executeWithoutResult(status -> {
+                        progressRepository.saveCheckpoint(version, lastId, 0);
+                        progressRepository.markCompleted(version);
+                    });
+                    log.info("Номера карт перешифрованы ключом версии {}: {} карт за проход", version, total);
+                    return total;
+                }
+
+                long lastId = chunk.get(chunk.size() - 1).getId();
+                Integer rotated = transactionTemplate.execute(status -> rotateChunk(version, chunk, lastId));
+                int count = rotated != null ? rotated : 0;
+                total += count;
+                rotatedCounter.increment(count);
+                afterId = lastId;
+
+                if (!throttle(chunk.size(), started)) {
+                    return total;
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int rotateChunk(int version, List<EncryptedNumberView> chunk, long lastId) {
+        int rotated = 0;
+        for (EncryptedNumberView card : chunk) {
+            String reencrypted;
+            try {
+                reencrypted = encryptionUtil.encrypt(encryptionUtil.decrypt(card.getEncryptedNumber()));
+            } catch (RuntimeException e) {
+                log.warn("Не удалось перешифровать номер карты {}: {}", card.getId(), e.getMessage());
+                continue;
+            }
+            rotated += cardsRepository.replaceEncryptedNumber(card.getId(), card.getEncryptedNumber(), reencrypted);
+        }
+        progressRepository.saveCheckpoint(version, lastId, rotated);
+        return rotated;
+    }
+
+    /** Выдерживает паузу так, чтобы скорость не превышала rows-per-second; false, если поток прерван. */
+    private boolean throttle(int rows, long startedNanos) {
+        if (rowsPerSecond <= 0) {
+            return true;
+        }
+        long minimumMillis = rows * 1000L / rowsPerSecond;
+        long elapsedMillis = (System.nanoTime() - startedNanos) / 1_000_000;
+        if (elapsedMillis >= minimumMillis) {
+            return true;
+        }
+        try {
+            Thread.sleep(minimumMillis - elapsedMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.projection.EncryptedNumberView;
+import com.example.bankcards.util.CardMaskingUtil;
+import com.example.bankcards.util.EncryptionUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Заполняет last_four у карт, созданных до появления колонки. Номер можно получить только
+ * расшифровкой в приложении, поэтому карты обходятся порциями по id, каждая порция в своей транзакции.
+ * Обновление идет с условием last_four IS NULL и не трогает version, так что несколько узлов
+ * могут выполнять его одновременно. Проход идет в отдельном потоке и не задерживает готовность узла;
+ * поиск оставшихся карт идет по частичному индексу, поэтому после заполнения стоит одного чтения индекса.
+ */
+@Slf4j
+@Component
+public class CardLastFourBackfill {
+
+    private final CardsRepository cardsRepository;
+
+    private final EncryptionUtil encryptionUtil;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final int chunkSize;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-last-four-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public CardLastFourBackfill(CardsRepository cardsRepository, EncryptionUtil encryptionUtil,
+                                TransactionTemplate transactionTemplate, ShardRouter shardRouter,
+                                @Value("${bank.cards.last-four-backfill.chunk-size:500}") int chunkSize) {
+        this.cardsRepository = cardsRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
+        this.chunkSize = chunkSize;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            executor.submit(() -> shardRouter.forEachShard(() -> {
+                long filled = backfill();
+                if (filled > 0) {
+                    log.info("Заполнено last_four у {} карт", filled);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            log.warn("Заполнение last_four не запущено: {}", e.getMessage());
+        }
+    }
+
+    public long backfill() {
+        long afterId = 0;
+        long filled = 0;
+        while (true) {
+            List<EncryptedNumberView> chunk = cardsRepository.findWithoutLastFour(afterId, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                return filled;
+            }
+            Integer updated = transactionTemplate.execute(status -> fillChunk(chunk));
+            filled += updated != null ? updated : 0;
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+
+    private int fillChunk(List<EncryptedNumberView> chunk) {
+        int updated = 0;
+        for (EncryptedNumberView card : chunk) {
+            String lastFour;
+            try {
+                lastFour = CardMaskingUtil.getLastFour(encryptionUtil.decrypt(card.getEncryptedNumber()));
+            } catch (RuntimeException e) {
+                log.warn("Не удалось расшифровать номер карты {}: {}", card.getId(), e.getMessage());
+                continue;
+            }
+            if (lastFour != null) {
+                updated += cardsRepository.fillLastFour(card.getId(), lastFour);
+            }
+        }
+        return updated;
+    }
+}
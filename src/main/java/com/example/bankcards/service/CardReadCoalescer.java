@@ -0,0 +1,112 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.util.ReadYourWritesTracker;
+import com.example.bankcards.util.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Объединяет одинаковые одновременные чтения баланса и списка карт одного пользователя: несколько
+ * виджетов кошелька или повторы получают результат одного запроса к БД, а ждущие запросы
+ * не открывают своих транзакций. Результат переиспользуется еще bank.cards.coalescing.window.
+ * Пользователь, чьи карты только что изменил перевод (исходящий, входящий или межшардовый)
+ * или запрос блокировки (ReadYourWritesTracker), читает мимо объединения, чтобы не получить результат,
+ * начатый до записи.
+ * Прочие изменения (действия админа) видны не позже чем через window.
+ * Список карт читается вместе со своим ETag в одном чтении: общий результат может быть старше
+ * ETag, прочитанного отдельно, и клиент закешировал бы старую страницу под новым ETag.
+ */
+@Service
+public class CardReadCoalescer {
+
+    private final CardService cardService;
+
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    private final boolean enabled;
+
+    private final SingleFlight<BalanceKey, BigDecimal> balances;
+
+    private final SingleFlight<UserCardsKey, UserCards> userCards;
+
+    @Autowired
+    public CardReadCoalescer(CardService cardService, ReadYourWritesTracker readYourWritesTracker,
+                             MeterRegistry meterRegistry,
+                             @Value("${bank.cards.coalescing.enabled:true}") boolean enabled,
+                             @Value("${bank.cards.coalescing.window:50ms}") Duration window) {
+        this.cardService = cardService;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.enabled = enabled;
+        this.balances = new SingleFlight<>(window.toNanos());
+        this.userCards = new SingleFlight<>(window.toNanos());
+        register(meterRegistry, "balance", balances);
+        register(meterRegistry, "user-cards", userCards);
+    }
+
+    public BigDecimal checkCardBalance(String username, String cardNumber) {
+        if (!coalesce(username)) {
+            return cardService.checkCardBalance(username, cardNumber);
+        }
+        return balances.execute(new BalanceKey(ShardContext.current(), username, cardNumber),
+                () -> cardService.checkCardBalance(username, cardNumber));
+    }
+
+    public UserCards getUserCards(String username, int page, int size) {
+        if (!coalesce(username)) {
+            return loadUserCards(username, page, size);
+        }
+        return userCards.execute(new UserCardsKey(ShardContext.current(), username, page, size),
+                () -> loadUserCards(username, page, size));
+    }
+
+    /** ETag читается до строк, поэтому не может опередить страницу (см. ListingVersionService). */
+    private UserCards loadUserCards(String username, int page, int size) {
+        String eTag = cardService.getUserCardsETag(username, page, size);
+        return new UserCards(eTag, cardService.getUserCards(username, page, size));
+    }
+
+    @Scheduled(fixedDelayString = "${bank.cards.coalescing.evict-interval:PT1M}")
+    public void evictExpired() {
+        balances.evictExpired();
+        userCards.evictExpired();
+    }
+
+    private boolean coalesce(String username) {
+        return enabled && !readYourWritesTracker.isPinnedToPrimary(username);
+    }
+
+    private static void register(MeterRegistry meterRegistry, String operation, SingleFlight<?, ?> flight) {
+        FunctionCounter.builder("bank.cards.coalescing.loads", flight, SingleFlight::getLoads)
+                .description("Чтения, выполненные запросом к БД")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        FunctionCounter.builder("bank.cards.coalescing.deduplicated", flight, SingleFlight::getShared)
+                .description("Чтения, получившие результат одновременного запроса")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        meterRegistry.gauge("bank.cards.coalescing.flights", List.of(Tag.of("operation", operation)),
+                flight, SingleFlight::size);
+    }
+
+    /** Страница карт и ETag, прочитанный вместе с ней. */
+    public record UserCards(String eTag, Page<CardDTO> cards) {
+    }
+
+    private record BalanceKey(int shard, String username, String cardNumber) {
+    }
+
+    private record UserCardsKey(int shard, String username, int page, int size) {
+    }
+}
@@ -1,27 +1,59 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.ShardContext;
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.PortfolioDTO;
+import com.example.bankcards.dto.TransferHistoryDTO;
+import com.example.bankcards.dto.TransferHistoryItemDTO;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CrossShardTransfer;
+import com.example.bankcards.entity.TransferRecord;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.CrossShardTransferStatus;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.IncorrectOwnerException;
+import com.example.bankcards.exception.TransferNotFoundException;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.exception.WrongCardStatusException;
 import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.CrossShardCreditsRepository;
+import com.example.bankcards.repository.CrossShardTransfersRepository;
+import com.example.bankcards.repository.TransfersRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.CardBalanceView;
+import com.example.bankcards.security.UserDetailsImplemented;
 import com.example.bankcards.util.CardMapper;
+import com.example.bankcards.util.CardMaskingUtil;
 import com.example.bankcards.util.EncryptionUtil;
-import jakarta.transaction.Transactional;
+import com.example.bankcards.util.HistoryCursorUtil;
+import com.example.bankcards.util.ListingETagUtil;
+import com.example.bankcards.util.ReadYourWritesTracker;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class CardService {
@@ -34,14 +66,59 @@ public class CardService {
 
     private final EncryptionUtil encryptionUtil;
 
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    private final TransfersRepository transfersRepository;
+
+    private final CardStatsService cardStatsService;
+
+    private final ShardRouter shardRouter;
+
+    private final CrossShardTransfersRepository crossShardTransfersRepository;
+
+    private final CrossShardCreditsRepository crossShardCreditsRepository;
+
+    private final TransferLimits transferLimits;
+
+    private final ListingVersionService listingVersionService;
+
+    private final IdempotencyService idempotencyService;
+
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    /** id карты на другом шарде в истории переводов: локального id у нее нет. */
+    private static final long EXTERNAL_CARD_ID = 0L;
+
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    @Value("${bank.transfer.history.retention-months:24}")
+    private int historyRetentionMonths;
+
     @Autowired
-    public CardService(CardsRepository cardsRepository, UsersRepository usersRepository, CardMapper cardMapper, EncryptionUtil encryptionUtil){
+    public CardService(CardsRepository cardsRepository, UsersRepository usersRepository, CardMapper cardMapper,
+                       EncryptionUtil encryptionUtil, ReadYourWritesTracker readYourWritesTracker,
+                       TransfersRepository transfersRepository, CardStatsService cardStatsService,
+                       ShardRouter shardRouter, CrossShardTransfersRepository crossShardTransfersRepository,
+                       CrossShardCreditsRepository crossShardCreditsRepository, TransferLimits transferLimits,
+                       ListingVersionService listingVersionService, IdempotencyService idempotencyService){
         this.cardsRepository = cardsRepository;
         this.usersRepository = usersRepository;
         this.cardMapper = cardMapper;
         this.encryptionUtil = encryptionUtil;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.transfersRepository = transfersRepository;
+        this.cardStatsService = cardStatsService;
+        this.shardRouter = shardRouter;
+        this.crossShardTransfersRepository = crossShardTransfersRepository;
+        this.crossShardCreditsRepository = crossShardCreditsRepository;
+        this.transferLimits = transferLimits;
+        this.listingVersionService = listingVersionService;
+        this.idempotencyService = idempotencyService;
     }
 
+    @Transactional(readOnly = true)
     public Page<CardDTO> getAllCards(int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
         Page<Card> cardsPage = cardsRepository.findAll(pageable);
@@ -50,6 +127,13 @@ public class CardService {
     }
 
 
+    @Transactional(readOnly = true)
+    public String getAllCardsETag(int page, int size) {
+        return ListingETagUtil.toETag(page, size, listingVersionService.version(ListingVersionService.CARDS));
+    }
+
+
+    @Transactional(readOnly = true)
     public Page<CardDTO> getUserCards(String username, int page, int size) {
         User user = usersRepository.findByUsername(username)
                 .orElseThrow(() -> new UserNotFoundException(username));
@@ -62,29 +146,48 @@ public class CardService {
     }
 
 
+    @Transactional(readOnly = true)
+    public String getUserCardsETag(String username, int page, int size) {
+        return ListingETagUtil.toETag(cardsRepository.findListingVersionByOwnerUsername(username), page, size);
+    }
+
+
+    @Transactional(readOnly = true)
     public BigDecimal checkCardBalance(String username, String cardNumber) {
         String encryptedNumber = encryptionUtil.encrypt(cardNumber);
 
-        Card card = cardsRepository.findByEncryptedNumber(encryptedNumber)
-                .orElseThrow(() -> new CardNotFoundException());
+        Card card = findOwnedCard(username, encryptedNumber, CardNotFoundException::new);
 
-        if (!card.getOwner().getUsername().equals(username)) {
-            throw new IncorrectOwnerException(username);
-        }
+        return card.getBalance();
+    }
 
 
-        return card.getBalance();
+    @Transactional(readOnly = true)
+    public PortfolioDTO getPortfolio(String username) {
+        List<CardBalanceView> rows = cardsRepository.findBalancesByOwnerUsername(username);
+
+        List<CardDTO> cards = new ArrayList<>(rows.size());
+        BigDecimal totalBalance = BigDecimal.ZERO;
+        BigDecimal availableBalance = BigDecimal.ZERO;
+        int activeCardCount = 0;
+
+        for (CardBalanceView row : rows) {
+            cards.add(cardMapper.toDTO(row, username));
+            totalBalance = totalBalance.add(row.getBalance());
+
+            if (row.getStatus() == CardStatus.ACTIVE) {
+                availableBalance = availableBalance.add(row.getBalance());
+                activeCardCount++;
+            }
+        }
+
+        return new PortfolioDTO(username, cards, cards.size(), activeCardCount, totalBalance, availableBalance);
     }
 
 
     @Transactional
     public void requestBlockCard(String username, String number) {
-        Card card = cardsRepository.findByEncryptedNumber(encryptionUtil.encrypt(number))
-                .orElseThrow(() -> new CardNotFoundException());
-
-        if (!card.getOwner().getUsername().equals(username)) {
-            throw new IncorrectOwnerException(username);
-        }
+        Card card = findOwnedCard(username, encryptionUtil.encrypt(number), CardNotFoundException::new);
 
         if (card.getStatus() == CardStatus.BLOCK_REQUESTED) {
             throw new WrongCardStatusException("Запрос на блокировку уже отправлен");
@@ -94,15 +197,19 @@ public class CardService {
             throw new WrongCardStatusException("Карта уже заблокирована");
         }
 
+        CardStatus oldStatus = card.getStatus();
         card.setStatus(CardStatus.BLOCK_REQUESTED);
         cardsRepository.save(card);
+        cardStatsService.onStatusChanged(oldStatus, card);
+        readYourWritesTracker.recordWrite(username);
     }
 
     @Transactional
     public void changeCardStatus(String number, String status) {
-        Card card = cardsRepository.findByEncryptedNumber(encryptionUtil.encrypt(number))
+        Card card = findByEncryptedNumber(encryptionUtil.encrypt(number))
                 .orElseThrow(() -> new CardNotFoundException());
 
+        CardStatus oldStatus = card.getStatus();
 
         try {
             CardStatus newStatus = CardStatus.valueOf(status.toUpperCase());
@@ -112,26 +219,60 @@ public class CardService {
         }
 
         cardsRepository.save(card);
-
+        cardStatsService.onStatusChanged(oldStatus, card);
     }
 
 
     @Transactional
     public void transfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount) {
+        applyTransfer(username, fromCardNumber, toCardNumber, amount, null);
+    }
+
+    /** claim - Idempotency-Key запроса, фиксируется в этой же транзакции (см. IdempotencyService). */
+    @Transactional
+    public void transfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount,
+                         IdempotencyService.Claim claim) {
+        applyTransfer(username, fromCardNumber, toCardNumber, amount, claim);
+    }
+
+    /**
+     * Логика перевода без собственной транзакции: выполняется в транзакции вызывающего
+     * (transfer() или пакета ShardedTransferExecutor). Все проверки идут до изменения балансов,
+     * поэтому отклоненный перевод не оставляет изменений в общей транзакции.
+     */
+    public void applyTransfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount,
+                              IdempotencyService.Claim claim) {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Сумма перевода должна быть больше 0");
         }
 
-        String encryptedFrom = encryptionUtil.encrypt(fromCardNumber);
-        String encryptedTo = encryptionUtil.encrypt(toCardNumber);
+        applyEncryptedTransfer(username, encryptionUtil.encrypt(fromCardNumber), encryptionUtil.encrypt(toCardNumber),
+                amount, claim);
+    }
 
-        Card fromCard = cardsRepository.findByEncryptedNumber(encryptedFrom)
-                .orElseThrow(() -> new CardNotFoundException("Исходная карта"));
-        Card toCard = cardsRepository.findByEncryptedNumber(encryptedTo)
+    /**
+     * То же, что applyTransfer, но по уже зашифрованным номерам (так они хранятся в pending_transfers).
+     */
+    public void applyEncryptedTransfer(String username, String encryptedFrom, String encryptedTo, BigDecimal amount) {
+        applyEncryptedTransfer(username, encryptedFrom, encryptedTo, amount, null);
+    }
+
+    private void applyEncryptedTransfer(String username, String encryptedFrom, String encryptedTo, BigDecimal amount,
+                                        IdempotencyService.Claim claim) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма перевода должна быть больше 0");
+        }
+
+        if (claim != null && !idempotencyService.acquire(claim)) {
+            return;
+        }
+
+        Card fromCard = findOwnedCard(username, encryptedFrom, () -> new CardNotFoundException("Исходная карта"));
+        Card toCard = findByEncryptedNumber(encryptedTo)
                 .orElseThrow(() -> new CardNotFoundException("Целевая карта"));
 
-        if (!fromCard.getOwner().getUsername().equals(username)) {
-            throw new IncorrectOwnerException(username);
+        if (toCard.getOwner().isDeleted()) {
+            throw new CardNotFoundException("Целевая карта");
         }
 
         if (fromCard.getStatus() != CardStatus.ACTIVE || toCard.getStatus() != CardStatus.ACTIVE) {
@@ -142,14 +283,66 @@ public class CardService {
             throw new RuntimeException("Недостаточно средств на карте");
         }
 
+        transferLimits.reserve(fromCard.getId(), amount);
+
         fromCard.setBalance(fromCard.getBalance().subtract(amount));
         toCard.setBalance(toCard.getBalance().add(amount));
 
+        // статистику по статусам не меняет: обе карты ACTIVE и сумма балансов та же,
+        // но балансы видны в /bank/cards/all и списке запросов на блокировку, поэтому версия списка растет
         cardsRepository.save(fromCard);
         cardsRepository.save(toCard);
+        transfersRepository.save(new TransferRecord(null, fromCard.getId(), toCard.getId(), amount, Instant.now()));
+        listingVersionService.touch(ListingVersionService.CARDS);
+        readYourWritesTracker.recordWrite(username);
+        readYourWritesTracker.recordWrite(toCard.getOwner().getUsername());
     }
 
 
+    @Transactional(readOnly = true)
+    public TransferHistoryDTO getTransferHistory(String username, String number, String cursor, int size) {
+        if (size <= 0 || size > MAX_HISTORY_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_HISTORY_PAGE_SIZE);
+        }
+
+        Card card = findOwnedCard(username, encryptionUtil.encrypt(number), CardNotFoundException::new);
+
+        HistoryCursorUtil.Position position = cursor != null && !cursor.isBlank()
+                ? HistoryCursorUtil.decode(cursor)
+                : new HistoryCursorUtil.Position(Instant.now().plus(1, ChronoUnit.DAYS), Long.MAX_VALUE);
+        Instant since = YearMonth.now(ZoneOffset.UTC).minusMonths(historyRetentionMonths)
+                .atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+
+        List<TransferRecord> rows = transfersRepository.findHistoryPage(card.getId(), since,
+                position.createdAt(), position.id(), size);
+
+        Set<Long> counterpartIds = rows.stream()
+                .map(row -> row.getFromCardId() == card.getId() ? row.getToCardId() : row.getFromCardId())
+                .collect(Collectors.toSet());
+        Map<Long, String> maskedNumbers = cardsRepository.findAllById(counterpartIds).stream()
+                .collect(Collectors.toMap(Card::getId,
+                        c -> CardMaskingUtil.getMaskedNumber(encryptionUtil.decrypt(c.getEncryptedNumber()))));
+
+        List<TransferHistoryItemDTO> items = new ArrayList<>(rows.size());
+        for (TransferRecord row : rows) {
+            boolean outgoing = row.getFromCardId() == card.getId();
+            long counterpartId = outgoing ? row.getToCardId() : row.getFromCardId();
+            items.add(new TransferHistoryItemDTO(row.getId(), outgoing ? "OUT" : "IN",
+                    maskedNumbers.getOrDefault(counterpartId, CardMaskingUtil.getMaskedNumber(null)),
+                    row.getAmount(), row.getCreatedAt()));
+        }
+
+        String nextCursor = null;
+        if (rows.size() == size) {
+            TransferRecord last = rows.get(rows.size() - 1);
+            nextCursor = HistoryCursorUtil.encode(last.getCreatedAt(), last.getId());
+        }
+
+        return new TransferHistoryDTO(items, nextCursor);
+    }
+
+
+    @Transactional(readOnly = true)
     public Page<CardDTO> checkBlockingRequests(int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
         Page<Card> cardsPage = cardsRepository.findCardsByStatus(CardStatus.BLOCK_REQUESTED, pageable);
@@ -157,8 +350,49 @@ public class CardService {
         return cardsPage.map(card -> cardMapper.toDTO(card, true));
     }
 
+    @Transactional(readOnly = true)
+    public String getBlockingRequestsETag(int page, int size) {
+        return ListingETagUtil.toETag(page, size, listingVersionService.version(ListingVersionService.CARDS));
+    }
+
+    /**
+     * Поиск для админа по последним 4 цифрам и, при необходимости, владельцу и статусу.
+     * Кандидаты находятся по индексу (last_four, owner_id), расшифровываются только найденные строки.
+     */
+    @Transactional(readOnly = true)
+    public List<CardDTO> searchCards(String lastFour, String ownerUsername, String status) {
+        if (lastFour == null || !lastFour.matches("\\d{4}")) {
+            throw new IllegalArgumentException("Нужно указать ровно 4 последние цифры номера карты");
+        }
+
+        Long ownerId = null;
+        if (ownerUsername != null && !ownerUsername.isBlank()) {
+            ownerId = usersRepository.findByUsername(ownerUsername)
+                    .orElseThrow(() -> new UserNotFoundException(ownerUsername))
+                    .getId();
+        }
+
+        CardStatus cardStatus = null;
+        if (status != null && !status.isBlank()) {
+            try {
+                cardStatus = CardStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new WrongCardStatusException(status);
+            }
+        }
+
+        return cardsRepository.searchByLastFour(lastFour, ownerId, cardStatus, PageRequest.of(0, MAX_SEARCH_RESULTS))
+                .stream()
+                .map(card -> cardMapper.toDTO(card, true))
+                .toList();
+    }
+
     @Transactional
     public CardDTO createCard(CardDTO cardDTO) {
+        // карта создается на шарде владельца; соединение еще не взято, поэтому шард можно выбрать здесь
+        int shard = shardRouter.shardOfUser(cardDTO.getOwnerUsername());
+        ShardContext.set(shard);
+
         User owner = usersRepository.findByUsername(cardDTO.getOwnerUsername())
                 .orElseThrow(() -> new UserNotFoundException(cardDTO.getOwnerUsername()));
 
@@ -166,10 +400,14 @@ public class CardService {
             throw new IllegalArgumentException("Номер карты не может быть пустым");
         }
 
+        validateExpiration(cardDTO.getExpirationMonth(), cardDTO.getExpirationYear());
+
         String encryptedNumber = encryptionUtil.encrypt(cardDTO.getMaskedNumber());
+        shardRouter.registerCard(cardDTO.getMaskedNumber(), shard);
 
         Card card = new Card();
         card.setEncryptedNumber(encryptedNumber);
+        card.setLastFour(CardMaskingUtil.getLastFour(cardDTO.getMaskedNumber()));
         card.setExpirationMonth(cardDTO.getExpirationMonth());
         card.setExpirationYear(cardDTO.getExpirationYear());
         card.setOwner(owner);
@@ -177,6 +415,7 @@ public class CardService {
         card.setStatus(cardDTO.getStatus() != null ? cardDTO.getStatus() : CardStatus.ACTIVE);
 
         Card saved = cardsRepository.save(card);
+        cardStatsService.onCreated(saved);
 
         CardDTO result = cardMapper.toDTO(saved);
         return result;
@@ -185,12 +424,23 @@ public class CardService {
 
     @Transactional
     public CardDTO updateCard(String number, CardDTO cardDTO) {
-        Card card = cardsRepository.findByEncryptedNumber(encryptionUtil.encrypt(number))
+        Card card = findByEncryptedNumber(encryptionUtil.encrypt(number))
                 .orElseThrow(() -> new CardNotFoundException());
 
-        if (cardDTO.getMaskedNumber() != null && !cardDTO.getMaskedNumber().isBlank()) {
+        CardStatus oldStatus = card.getStatus();
+        BigDecimal oldBalance = card.getBalance();
+        Long oldOwnerId = card.getOwner().getId();
+
+        validateExpiration(cardDTO.getExpirationMonth() > 0 ? cardDTO.getExpirationMonth() : card.getExpirationMonth(),
+                cardDTO.getExpirationYear() > 0 ? cardDTO.getExpirationYear() : card.getExpirationYear());
+
+        if (cardDTO.getMaskedNumber() != null && !cardDTO.getMaskedNumber().isBlank()
+                && !cardDTO.getMaskedNumber().equals(number)) {
             String encrypted = encryptionUtil.encrypt(cardDTO.getMaskedNumber());
             card.setEncryptedNumber(encrypted);
+            card.setLastFour(CardMaskingUtil.getLastFour(cardDTO.getMaskedNumber()));
+            shardRouter.registerCard(cardDTO.getMaskedNumber(), ShardContext.current());
+            shardRouter.unregisterCard(number);
         }
 
         if (cardDTO.getExpirationMonth() > 0) {
@@ -214,22 +464,207 @@ public class CardService {
         }
 
         if (cardDTO.getOwnerUsername() != null) {
+            if (shardRouter.shardOfUser(cardDTO.getOwnerUsername()) != ShardContext.current()) {
+                throw new IllegalArgumentException("Владелец хранится на другом шарде, перенос карты не поддерживается");
+            }
             User newOwner = usersRepository.findByUsername(cardDTO.getOwnerUsername())
                     .orElseThrow(() -> new UserNotFoundException(cardDTO.getOwnerUsername()));
             card.setOwner(newOwner);
         }
 
         Card updated = cardsRepository.save(card);
+        cardStatsService.onChanged(oldStatus, oldBalance, oldOwnerId, updated);
         CardDTO result = cardMapper.toDTO(updated);
         return result;
     }
 
 
+    @Transactional
     public void deleteCard(String number){
-        Card card = cardsRepository.findByEncryptedNumber(encryptionUtil.encrypt(number))
+        Card card = findByEncryptedNumber(encryptionUtil.encrypt(number))
                 .orElseThrow(() -> new CardNotFoundException());
 
         cardsRepository.delete(card);
+        cardStatsService.onDeleted(card);
+        shardRouter.unregisterCard(number);
+    }
+
+    /**
+     * Первый шаг межшардового перевода, на шарде исходной карты: проверки, списание и запись
+     * cross_shard_transfers в статусе DEBITED в одной транзакции. Idempotency-Key (claim, может быть null)
+     * фиксируется в ней же; если ключ уже использован, списания нет и claim.isReplayed().
+     */
+    @Transactional
+    public void debitCrossShard(String transferId, String username, String fromCardNumber, String encryptedTo,
+                                int toShard, BigDecimal amount, IdempotencyService.Claim claim) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма перевода должна быть больше 0");
+        }
+
+        if (claim != null && !idempotencyService.acquire(claim)) {
+            return;
+        }
+
+        Card fromCard = findOwnedCard(username, encryptionUtil.encrypt(fromCardNumber),
+                () -> new CardNotFoundException("Исходная карта"));
+
+        if (fromCard.getStatus() != CardStatus.ACTIVE) {
+            throw new WrongCardStatusException("Исходная:" + fromCard.getStatus());
+        }
+
+        if (fromCard.getBalance().compareTo(amount) < 0) {
+            throw new RuntimeException("Недостаточно средств на карте");
+        }
+
+        transferLimits.reserve(fromCard.getId(), amount);
+
+        BigDecimal oldBalance = fromCard.getBalance();
+        fromCard.setBalance(oldBalance.subtract(amount));
+        cardsRepository.save(fromCard);
+        cardStatsService.onChanged(fromCard.getStatus(), oldBalance, fromCard.getOwner().getId(), fromCard);
+
+        Instant now = Instant.now();
+        crossShardTransfersRepository.save(new CrossShardTransfer(transferId, username, fromCard.getId(), encryptedTo,
+                toShard, amount, CrossShardTransferStatus.DEBITED, null, now, now));
+        transfersRepository.save(new TransferRecord(null, fromCard.getId(), EXTERNAL_CARD_ID, amount, now));
+        readYourWritesTracker.recordWrite(username);
+    }
+
+    /**
+     * Второй шаг, на шарде целевой карты. Повтор с тем же transferId ничего не меняет, поэтому
+     * зачисление можно повторять после сбоя, пока не известно, прошло ли оно.
+     */
+    @Transactional
+    public void creditCrossShard(String transferId, String encryptedTo, BigDecimal amount) {
+        if (crossShardCreditsRepository.existsById(transferId)) {
+            return;
+        }
+
+        Card toCard = findByEncryptedNumber(encryptedTo)
+                .orElseThrow(() -> new CardNotFoundException("Целевая карта"));
+
+        // при отказе ниже транзакция откатывается вместе с этой записью
+        if (crossShardCreditsRepository.insertIfAbsent(transferId, toCard.getId(), amount) == 0) {
+            return;
+        }
+
+        if (toCard.getOwner().isDeleted()) {
+            throw new CardNotFoundException("Целевая карта");
+        }
+
+        if (toCard.getStatus() != CardStatus.ACTIVE) {
+            throw new WrongCardStatusException("Целевая:" + toCard.getStatus());
+        }
+
+        BigDecimal oldBalance = toCard.getBalance();
+        toCard.setBalance(oldBalance.add(amount));
+        cardsRepository.save(toCard);
+        cardStatsService.onChanged(toCard.getStatus(), oldBalance, toCard.getOwner().getId(), toCard);
+        transfersRepository.save(new TransferRecord(null, EXTERNAL_CARD_ID, toCard.getId(), amount, Instant.now()));
+        readYourWritesTracker.recordWrite(toCard.getOwner().getUsername());
+    }
+
+    @Transactional
+    public void completeCrossShard(String transferId) {
+        CrossShardTransfer transfer = crossShardTransfersRepository.lockById(transferId)
+                .orElseThrow(() -> new TransferNotFoundException(transferId));
+        if (transfer.getStatus() == CrossShardTransferStatus.DEBITED) {
+            transfer.setStatus(CrossShardTransferStatus.COMPLETED);
+        }
+    }
+
+    /**
+     * Компенсация отклоненного зачисления: деньги возвращаются на исходную карту независимо от ее статуса.
+     * Idempotency-Key списания (claim, может быть null) снимается, чтобы повтор не получил ответ об успехе.
+     */
+    @Transactional
+    public void compensateCrossShard(String transferId, String reason, IdempotencyService.Claim claim) {
+        CrossShardTransfer transfer = crossShardTransfersRepository.lockById(transferId)
+                .orElseThrow(() -> new TransferNotFoundException(transferId));
+        if (transfer.getStatus() != CrossShardTransferStatus.DEBITED) {
+            return;
+        }
+
+        Card fromCard = cardsRepository.findById(transfer.getFromCardId())
+                .orElseThrow(() -> new CardNotFoundException("Исходная карта"));
+        BigDecimal oldBalance = fromCard.getBalance();
+        fromCard.setBalance(oldBalance.add(transfer.getAmount()));
+        cardsRepository.save(fromCard);
+        cardStatsService.onChanged(fromCard.getStatus(), oldBalance, fromCard.getOwner().getId(), fromCard);
+        transfersRepository.save(new TransferRecord(null, EXTERNAL_CARD_ID, fromCard.getId(), transfer.getAmount(), Instant.now()));
+        transferLimits.release(fromCard.getId(), transfer.getAmount(), transfer.getCreatedAt());
+        readYourWritesTracker.recordWrite(fromCard.getOwner().getUsername());
+
+        String message = reason != null ? reason : "Зачисление отклонено";
+        transfer.setStatus(CrossShardTransferStatus.COMPENSATED);
+        transfer.setError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+        if (claim != null) {
+            idempotencyService.release(claim);
+        }
+    }
+
+    /** Месяц или год 0 сравнивался бы как давно прошедший срок, и карту сразу перевело бы в EXPIRED. */
+    private static void validateExpiration(int month, int year) {
+        if (month < 1 || month > 12) {
+            throw new IllegalArgumentException("Месяц окончания срока действия должен быть от 1 до 12");
+        }
+        if (year < 1000 || year > 9999) {
+            throw new IllegalArgumentException("Год окончания срока действия должен состоять из четырех цифр");
+        }
+    }
+
+    /**
+     * Поиск по шифротексту. Пока CardKeyRotation не перешифровал все карты, карта может храниться
+     * под прежним ключом, поэтому при промахе пробуются шифротексты остальных ключей связки.
+     */
+    private Optional<Card> findByEncryptedNumber(String encryptedNumber) {
+        return findWithAnyKey(encryptedNumber, cardsRepository::findByEncryptedNumber);
+    }
+
+    /**
+     * Карта пользователя одним запросом с условием owner_id. Id берется из аутентифицированного
+     * пользователя, а для фоновых переводов, где его нет, - коротким запросом по имени.
+     * Только при промахе выясняется, чужая это карта (IncorrectOwnerException) или ее нет.
+     * Id пользователей уникальны только в пределах шарда, поэтому id из аутентификации годится лишь
+     * на домашнем шарде пользователя; на шарде карты владелец ищется по имени.
+     */
+    private Card findOwnedCard(String username, String encryptedNumber, Supplier<CardNotFoundException> notFound) {
+        Long ownerId = userIdOf(username);
+        if (ownerId != null) {
+            Optional<Card> card = findWithAnyKey(encryptedNumber,
+                    encrypted -> cardsRepository.findByEncryptedNumberAndOwnerId(encrypted, ownerId));
+            if (card.isPresent()) {
+                return card.get();
+            }
+        }
+        if (findByEncryptedNumber(encryptedNumber).isPresent()) {
+            throw new IncorrectOwnerException(username);
+        }
+        throw notFound.get();
+    }
+
+    private Long userIdOf(String username) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImplemented principal
+                && principal.getUsername().equals(username)
+                && ShardContext.current() == shardRouter.shardOfUser(username)) {
+            return principal.getId();
+        }
+        return usersRepository.findIdByUsername(username).orElse(null);
+    }
+
+    private Optional<Card> findWithAnyKey(String encryptedNumber, Function<String, Optional<Card>> finder) {
+        Optional<Card> card = finder.apply(encryptedNumber);
+        if (card.isPresent()) {
+            return card;
+        }
+        for (String other : encryptionUtil.encryptWithOtherKeys(encryptedNumber)) {
+            card = finder.apply(other);
+            if (card.isPresent()) {
+                return card;
+            }
+        }
+        return Optional.empty();
     }
 
 }
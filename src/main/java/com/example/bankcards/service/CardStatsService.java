@@ -0,0 +1,161 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardStatsDTO;
+import com.example.bankcards.dto.UserCardCountDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStats;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.UserCardStats;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.exception.UserNotFoundException;
+import com.example.bankcards.repository.CardStatsRepository;
+import com.example.bankcards.repository.UserCardStatsRepository;
+import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.StatusTotalsView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поддерживает card_stats (итоги по статусам) и user_card_stats (число карт пользователя).
+ * Методы on* вызываются внутри транзакции, изменяющей карты, и применяют только дельты.
+ * Дельты по статусам применяются в порядке объявления CardStatus, чтобы параллельные
+ * транзакции блокировали строки card_stats в одном порядке.
+ * Перевод статистику не меняет: обе карты ACTIVE, сумма по статусу и число карт сохраняются.
+ * Каждое изменение также увеличивает версию списка карт (ListingVersionService) для ETag, а изменение
+ * числа карт пользователя - версию списка пользователей, где это число показывается.
+ */
+@Service
+public class CardStatsService {
+
+    private final CardStatsRepository cardStatsRepository;
+
+    private final UserCardStatsRepository userCardStatsRepository;
+
+    private final UsersRepository usersRepository;
+
+    private final ListingVersionService listingVersionService;
+
+    @Autowired
+    public CardStatsService(CardStatsRepository cardStatsRepository,
+                            UserCardStatsRepository userCardStatsRepository,
+                            UsersRepository usersRepository,
+                            ListingVersionService listingVersionService) {
+        this.cardStatsRepository = cardStatsRepository;
+        this.userCardStatsRepository = userCardStatsRepository;
+        this.usersRepository = usersRepository;
+        this.listingVersionService = listingVersionService;
+    }
+
+    public void onCreated(Card card) {
+        Map<CardStatus, CardStatsDTO.StatusStats> deltas = new EnumMap<>(CardStatus.class);
+        add(deltas, card.getStatus(), 1, card.getBalance());
+        apply(deltas);
+        userCardStatsRepository.addDelta(card.getOwner().getId(), 1);
+        listingVersionService.touch(ListingVersionService.USERS);
+    }
+
+    public void onDeleted(Card card) {
+        Map<CardStatus, CardStatsDTO.StatusStats> deltas = new EnumMap<>(CardStatus.class);
+        add(deltas, card.getStatus(), -1, card.getBalance().negate());
+        apply(deltas);
+        userCardStatsRepository.addDelta(card.getOwner().getId(), -1);
+        listingVersionService.touch(ListingVersionService.USERS);
+    }
+
+    public void onStatusChanged(CardStatus oldStatus, Card card) {
+        Map<CardStatus, CardStatsDTO.StatusStats> deltas = new EnumMap<>(CardStatus.class);
+        add(deltas, oldStatus, -1, card.getBalance().negate());
+        add(deltas, card.getStatus(), 1, card.getBalance());
+        apply(deltas);
+    }
+
+    /** Состояние карты до изменения передается отдельно: сущность к этому моменту уже изменена. */
+    public void onChanged(CardStatus oldStatus, BigDecimal oldBalance, Long oldOwnerId, Card card) {
+        Map<CardStatus, CardStatsDTO.StatusStats> deltas = new EnumMap<>(CardStatus.class);
+        add(deltas, oldStatus, -1, oldBalance.negate());
+        add(deltas, card.getStatus(), 1, card.getBalance());
+        apply(deltas);
+
+        Long newOwnerId = card.getOwner().getId();
+        if (!newOwnerId.equals(oldOwnerId)) {
+            if (oldOwnerId < newOwnerId) {
+                userCardStatsRepository.addDelta(oldOwnerId, -1);
+                userCardStatsRepository.addDelta(newOwnerId, 1);
+            } else {
+                userCardStatsRepository.addDelta(newOwnerId, 1);
+                userCardStatsRepository.addDelta(oldOwnerId, -1);
+            }
+            listingVersionService.touch(ListingVersionService.USERS);
+        }
+    }
+
+    /** Карты из totals переведены в EXPIRED. */
+    public void onExpired(List<StatusTotalsView> totals) {
+        Map<CardStatus, CardStatsDTO.StatusStats> deltas = new EnumMap<>(CardStatus.class);
+        for (StatusTotalsView row : totals) {
+            add(deltas, CardStatus.valueOf(row.getStatus()), -row.getCardCount(), row.getTotalBalance().negate());
+            add(deltas, CardStatus.EXPIRED, row.getCardCount(), row.getTotalBalance());
+        }
+        apply(deltas);
+    }
+
+    /** Карты из totals удалены вместе с владельцем; строка user_card_stats удалится вместе с ним по внешнему ключу. */
+    public void onOwnerDeleted(List<StatusTotalsView> totals) {
+        Map<CardStatus, CardStatsDTO.StatusStats> deltas = new EnumMap<>(CardStatus.class);
+        for (StatusTotalsView row : totals) {
+            add(deltas, CardStatus.valueOf(row.getStatus()), -row.getCardCount(), row.getTotalBalance().negate());
+        }
+        apply(deltas);
+    }
+
+    @Transactional(readOnly = true)
+    public CardStatsDTO getStats() {
+        Map<CardStatus, CardStatsDTO.StatusStats> byStatus = new EnumMap<>(CardStatus.class);
+        for (CardStatus status : CardStatus.values()) {
+            byStatus.put(status, new CardStatsDTO.StatusStats(0, BigDecimal.ZERO));
+        }
+
+        long totalCards = 0;
+        BigDecimal totalBalance = BigDecimal.ZERO;
+        for (CardStats row : cardStatsRepository.findAll()) {
+            byStatus.put(row.getStatus(), new CardStatsDTO.StatusStats(row.getCardCount(), row.getTotalBalance()));
+            totalCards += row.getCardCount();
+            totalBalance = totalBalance.add(row.getTotalBalance());
+        }
+
+        return new CardStatsDTO(totalCards, totalBalance, byStatus);
+    }
+
+    @Transactional(readOnly = true)
+    public UserCardCountDTO getUserCardCount(String username) {
+        User user = usersRepository.findByUsername(username)
+                .orElseThrow(() -> new UserNotFoundException(username));
+
+        long cardCount = userCardStatsRepository.findById(user.getId())
+                .map(UserCardStats::getCardCount)
+                .orElse(0L);
+
+        return new UserCardCountDTO(username, cardCount);
+    }
+
+    private void add(Map<CardStatus, CardStatsDTO.StatusStats> deltas, CardStatus status, long count, BigDecimal balance) {
+        CardStatsDTO.StatusStats delta = deltas.computeIfAbsent(status, s -> new CardStatsDTO.StatusStats(0, BigDecimal.ZERO));
+        delta.setCardCount(delta.getCardCount() + count);
+        delta.setTotalBalance(delta.getTotalBalance().add(balance));
+    }
+
+    private void apply(Map<CardStatus, CardStatsDTO.StatusStats> deltas) {
+        listingVersionService.touch(ListingVersionService.CARDS);
+        deltas.forEach((status, delta) -> {
+            if (delta.getCardCount() != 0 || delta.getTotalBalance().signum() != 0) {
+                cardStatsRepository.addDelta(status.name(), delta.getCardCount(), delta.getTotalBalance());
+            }
+        });
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.config.ShardProperties;
+import com.example.bankcards.entity.CrossShardTransfer;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.WrongCardStatusException;
+import com.example.bankcards.repository.CrossShardTransfersRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Переводы при шардировании БД. Если обе карты на одном шарде - обычный CardService.transfer на нем.
+ * Иначе перевод идет в два шага: списание с записью DEBITED на шарде исходной карты, затем
+ * идемпотентное зачисление на шарде целевой карты. Если зачисление отклонено (карта не найдена
+ * или не активна), списание компенсируется. Если исход зачисления неизвестен (сбой связи с шардом),
+ * перевод остается DEBITED и дозавершается recoverPending.
+ */
+@Slf4j
+@Service
+public class CrossShardTransferService {
+
+    private static final int RECOVERY_BATCH = 100;
+
+    private final CardService cardService;
+
+    private final ShardRouter shardRouter;
+
+    private final CrossShardTransfersRepository crossShardTransfersRepository;
+
+    private final EncryptionUtil encryptionUtil;
+
+    private final Duration recoveryAfter;
+
+    private final Counter compensatedCounter;
+
+    private final Counter recoveredCounter;
+
+    @Autowired
+    public CrossShardTransferService(CardService cardService, ShardRouter shardRouter,
+                                     CrossShardTransfersRepository crossShardTransfersRepository,
+                                     EncryptionUtil encryptionUtil, ShardProperties properties,
+                                     MeterRegistry meterRegistry) {
+        this.cardService = cardService;
+        this.shardRouter = shardRouter;
+        this.crossShardTransfersRepository = crossShardTransfersRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.recoveryAfter = properties.getRecoveryAfter();
+        this.compensatedCounter = Counter.builder("bank.shards.transfers.compensated")
+                .description("Межшардовые переводы, отмененные компенсацией")
+                .register(meterRegistry);
+        this.recoveredCounter = Counter.builder("bank.shards.transfers.recovered")
+                .description("Межшардовые переводы, дозавершенные после сбоя")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return shardRouter.isEnabled();
+    }
+
+    public void transfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount) {
+        transfer(username, fromCardNumber, toCardNumber, amount, null);
+    }
+
+    /** claim - Idempotency-Key запроса, фиксируется в транзакции списания на шарде исходной карты. */
+    public void transfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount,
+                         IdempotencyService.Claim claim) {
+        int fromShard = shardRouter.shardOfUser(username);
+        int toShard = shardRouter.shardOfCard(toCardNumber)
+                .orElseThrow(() -> new CardNotFoundException("Целевая карта"));
+
+        if (fromShard == toShard) {
+            ShardContext.runOn(fromShard, () ->
+                    cardService.transfer(username, fromCardNumber, toCardNumber, amount, claim));
+            return;
+        }
+
+        String transferId = UUID.randomUUID().toString();
+        String encryptedTo = encryptionUtil.encrypt(toCardNumber);
+        ShardContext.runOn(fromShard, () ->
+                cardService.debitCrossShard(transferId, username, fromCardNumber, encryptedTo, toShard, amount, claim));
+        if (claim != null && claim.isReplayed()) {
+            return;
+        }
+        settle(fromShard, transferId, toShard, encryptedTo, amount, claim);
+    }
+
+    /** Дозавершает переводы, оставшиеся DEBITED после сбоя, на всех шардах. */
+    @Scheduled(fixedDelayString = "${bank.datasource.shards.recovery-interval:PT1M}")
+    public void recoverPending() {
+        if (shardRouter.isEnabled()) {
+            shardRouter.forEachShard(this::recoverCurrentShard);
+        }
+    }
+
+    void recoverCurrentShard() {
+        int fromShard = ShardContext.current();
+        List<String> ids = crossShardTransfersRepository.findDebitedBefore(Instant.now().minus(recoveryAfter),
+                PageRequest.of(0, RECOVERY_BATCH));
+        for (String id : ids) {
+            CrossShardTransfer transfer = crossShardTransfersRepository.findById(id).orElse(null);
+            if (transfer == null) {
+                continue;
+            }
+            try {
+                settle(fromShard, id, transfer.getToShard(), transfer.getToCardEncrypted(), transfer.getAmount(), null);
+                recoveredCounter.increment();
+            } catch (CardNotFoundException | WrongCardStatusException e) {
+                log.info("Межшардовый перевод {} отменен: {}", id, e.getMessage());
+            } catch (RuntimeException e) {
+                log.warn("Межшардовый перевод {} не дозавершен, повтор позже: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    private void settle(int fromShard, String transferId, int toShard, String encryptedTo, BigDecimal amount,
+                        IdempotencyService.Claim claim) {
+        try {
+            ShardContext.runOn(toShard, () -> cardService.creditCrossShard(transferId, encryptedTo, amount));
+        } catch (CardNotFoundException | WrongCardStatusException e) {
+            ShardContext.runOn(fromShard, () -> cardService.compensateCrossShard(transferId, e.getMessage(), claim));
+            compensatedCounter.increment();
+            throw e;
+        }
+        ShardContext.runOn(fromShard, () -> cardService.completeCrossShard(transferId));
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.IdempotencyKeyMismatchException;
+import com.example.bankcards.repository.IdempotencyKeysRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Idempotency-Key для переводов. Ключ вместе с ответом вставляется через acquire в транзакции,
+ * которая списывает деньги: CardService.transfer, межшардовое списание debitCrossShard или пакет
+ * ShardedTransferExecutor. Поэтому ключ фиксируется атомарно со списанием, отдельного соединения
+ * под ключ нет, а откат перевода освобождает ключ для повтора. Параллельный дубль на другом узле
+ * ждет первую транзакцию на уникальном индексе и получает ее ответ, дубль на этом же узле ждет
+ * первый запрос в памяти. Завершенные ответы cache-ttl хранятся в памяти, так что повтор клиента
+ * по таймауту отвечает без обращения к БД.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyKeysRepository idempotencyKeysRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final boolean enabled;
+
+    private final Duration retention;
+
+    private final long cacheTtlNanos;
+
+    private final int cacheMaxEntries;
+
+    private final Duration waitTimeout;
+
+    private final Map<String, CachedResponse> completed = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter cacheReplays;
+
+    private final Counter storedReplays;
+
+    @Autowired
+    public IdempotencyService(IdempotencyKeysRepository idempotencyKeysRepository,
+                              TransactionTemplate transactionTemplate, ShardRouter shardRouter,
+                              MeterRegistry meterRegistry,
+                              @Value("${bank.transfer.idempotency.enabled:true}") boolean enabled,
+                              @Value("${bank.transfer.idempotency.retention:24h}") Duration retention,
+                              @Value("${bank.transfer.idempotency.cache-ttl:10m}") Duration cacheTtl,
+                              @Value("${bank.transfer.idempotency.cache-max-entries:100000}") int cacheMaxEntries,
+                              @Value("${bank.transfer.idempotency.wait-timeout:10s}") Duration waitTimeout) {
+        this.idempotencyKeysRepository = idempotencyKeysRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.cacheMaxEntries = cacheMaxEntries;
+        this.waitTimeout = waitTimeout;
+        this.cacheReplays = Counter.builder("bank.transfer.idempotency.replayed")
+                .description("Повторы запроса с тем же Idempotency-Key")
+                .tag("source", "cache")
+                .register(meterRegistry);
+        this.storedReplays = Counter.builder("bank.transfer.idempotency.replayed")
+                .description("Повторы запроса с тем же Idempotency-Key")
+                .tag("source", "db")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("bank.transfer.idempotency.cached", List.of(), completed);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Выполняет transfer один раз на пару (username, key). request - параметры запроса; повтор
+     * с тем же ключом, но другими параметрами отклоняется. response - ответ успешного перевода,
+     * до 500 символов. transfer обязан передать Claim в acquire внутри своей транзакции.
+     */
+    public Result execute(String username, String key, String request, String response, Consumer<Claim> transfer) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key должен быть от 1 до " + MAX_KEY_LENGTH + " символов");
+        }
+        String cacheKey = username + ':' + key;
+        String requestHash = hash(request);
+
+        Result cached = fromCache(cacheKey, key, requestHash);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            await(running);
+            cached = fromCache(cacheKey, key, requestHash);
+            if (cached != null) {
+                return cached;
+            }
+            // первый запрос завершился ошибкой или еще идет - дальше решает уникальный индекс
+            return executeOnce(new Claim(username, key, requestHash, response), cacheKey, transfer);
+        }
+        try {
+            return executeOnce(new Claim(username, key, requestHash, response), cacheKey, transfer);
+        } finally {
+            inFlight.remove(cacheKey, mine);
+            mine.complete(null);
+        }
+    }
+
+    private Result executeOnce(Claim claim, String cacheKey, Consumer<Claim> transfer) {
+        transfer.accept(claim);
+        Result result = claim.result;
+        if (result == null) {
+            throw new IllegalStateException("Перевод не зафиксировал Idempotency-Key " + claim.key);
+        }
+        if (result.replayed()) {
+            storedReplays.increment();
+        }
+        remember(cacheKey, claim.requestHash, result.response());
+        return result;
+    }
+
+    /**
+     * Вызывается в транзакции перевода до изменения балансов. false - ключ уже зафиксирован
+     * (ответ сохранен в claim), перевод проводить не нужно; ключ с другим запросом - исключение.
+     */
+    public boolean acquire(Claim claim) {
+        Instant now = Instant.now();
+        if (idempotencyKeysRepository.insertIfAbsent(claim.username, claim.key, claim.requestHash, claim.response,
+                now, now.plus(retention)) == 0) {
+            IdempotencyKey stored = idempotencyKeysRepository.findByUsernameAndKey(claim.username, claim.key)
+                    .orElseThrow(() -> new IllegalStateException("Ключ Idempotency-Key не найден: " + claim.key));
+            if (!stored.getRequestHash().equals(claim.requestHash)) {
+                throw new IdempotencyKeyMismatchException(claim.key);
+            }
+            claim.result = new Result(stored.getResponse(), true);
+            return false;
+        }
+        claim.result = new Result(claim.response, false);
+        return true;
+    }
+
+    /**
+     * Снимает ключ, взятый acquire, в текущей транзакции: перевод из пакета отклонен, а пакет
+     * коммитится, или списание межшардового перевода компенсировано.
+     */
+    public void release(Claim claim) {
+        if (claim.result != null && !claim.result.replayed()) {
+            idempotencyKeysRepository.deleteByUsernameAndKey(claim.username, claim.key);
+            claim.result = null;
+        }
+    }
+
+    private Result fromCache(String cacheKey, String key, String requestHash) {
+        CachedResponse cached = completed.get(cacheKey);
+        if (cached == null || cached.expiresAtNanos() - System.nanoTime() <= 0) {
+            return null;
+        }
+        if (!cached.requestHash().equals(requestHash)) {
+            throw new IdempotencyKeyMismatchException(key);
+        }
+        cacheReplays.increment();
+        return new Result(cached.response(), true);
+    }
+
+    private void remember(String cacheKey, String requestHash, String response) {
+        if (completed.size() < cacheMaxEntries) {
+            completed.put(cacheKey, new CachedResponse(requestHash, response, System.nanoTime() + cacheTtlNanos));
+        }
+    }
+
+    private void await(CompletableFuture<Void> running) {
+        try {
+            running.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // не дождались - вставка ключа подождет первую транзакцию на уникальном индексе
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bank.transfer.idempotency.purge-interval:PT1H}")
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        completed.values().removeIf(cached -> cached.expiresAtNanos() - now <= 0);
+        if (enabled) {
+            shardRouter.forEachShard(() -> transactionTemplate.executeWithoutResult(status ->
+                    idempotencyKeysRepository.deleteExpired(Instant.now())));
+        }
+    }
+
+    static String hash(String request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Ключ запроса, который передается в транзакцию перевода. */
+    public static final class Claim {
+
+        private final String username;
+
+        private final String key;
+
+        private final String requestHash;
+
+        private final String response;
+
+        /** Пишется потоком перевода (в т.ч. потоком ShardedTransferExecutor), читается вызывающим. */
+        private volatile Result result;
+
+        Claim(String username, String key, String requestHash, String response) {
+            this.username = username;
+            this.key = key;
+            this.requestHash = requestHash;
+            this.response = response;
+        }
+
+        /** true - перевод уже был выполнен с этим ключом и сейчас не проводился. */
+        public boolean isReplayed() {
+            Result current = result;
+            return current != null && current.replayed();
+        }
+    }
+
+    /** replayed - ответ взят из ранее выполненного запроса. */
+    public record Result(String response, boolean replayed) {
+    }
+
+    private record CachedResponse(String requestHash, String response, long expiresAtNanos) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.ListingVersionsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Версии списков для ETag: вместо агрегата count/max/sum по всей таблице на каждый опрос
+ * читается одна строка listing_versions.
+ * touch увеличивает версию один раз на транзакцию и непосредственно перед коммитом: строка
+ * счетчика блокируется последней и ненадолго, поэтому параллельные изменения карт не ждут друг
+ * друга на ней дольше коммита и не образуют взаимных блокировок с card_stats. Новая версия видна
+ * только вместе с изменением, так что ETag, прочитанный до строк списка, не может опередить данные.
+ */
+@Service
+public class ListingVersionService {
+
+    public static final String CARDS = "cards";
+
+    public static final String USERS = "users";
+
+    private final ListingVersionsRepository listingVersionsRepository;
+
+    @Autowired
+    public ListingVersionService(ListingVersionsRepository listingVersionsRepository) {
+        this.listingVersionsRepository = listingVersionsRepository;
+    }
+
+    public void touch(String listing) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            listingVersionsRepository.increment(listing);
+            return;
+        }
+        TouchKey key = new TouchKey(listing);
+        if (TransactionSynchronizationManager.hasResource(key)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(key, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                listingVersionsRepository.increment(listing);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+        });
+    }
+
+    public long version(String listing) {
+        return listingVersionsRepository.findVersion(listing).orElse(0L);
+    }
+
+    private record TouchKey(String listing) {
+    }
+}
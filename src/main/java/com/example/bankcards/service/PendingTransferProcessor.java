@@ -0,0 +1,186 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.PendingTransfer;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.repository.PendingTransfersRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул обработчиков pending_transfers: каждый забирает до batch-size ожидающих переводов
+ * (FOR UPDATE SKIP LOCKED, поэтому обработчики и узлы не мешают друг другу) и проводит их
+ * одной транзакцией - один коммит на пакет вместо коммита на перевод.
+ */
+@Slf4j
+@Component
+public class PendingTransferProcessor {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final PendingTransfersRepository pendingTransfersRepository;
+
+    private final CardService cardService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+
+    private final int workers;
+
+    private final int batchSize;
+
+    private final Duration groupCommitWindow;
+
+    private final Duration idlePollInterval;
+
+    private final Duration retention;
+
+    private final Semaphore signal = new Semaphore(0);
+
+    private volatile boolean running;
+
+    private ExecutorService pool;
+
+    @Autowired
+    public PendingTransferProcessor(PendingTransfersRepository pendingTransfersRepository, CardService cardService,
+                                    TransactionTemplate transactionTemplate,
+                                    @Value("${bank.transfer.async.enabled:true}") boolean enabled,
+                                    @Value("${bank.transfer.async.workers:2}") int workers,
+                                    @Value("${bank.transfer.async.batch-size:100}") int batchSize,
+                                    @Value("${bank.transfer.async.group-commit-window:5ms}") Duration groupCommitWindow,
+                                    @Value("${bank.transfer.async.idle-poll-interval:500ms}") Duration idlePollInterval,
+                                    @Value("${bank.transfer.async.retention:7d}") Duration retention) {
+        this.pendingTransfersRepository = pendingTransfersRepository;
+        this.cardService = cardService;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.groupCommitWindow = groupCommitWindow;
+        this.idlePollInterval = idlePollInterval;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "pending-transfer-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            pool.submit(this::workerLoop);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Будит обработчики на этом узле; другие узлы увидят перевод при очередном опросе. */
+    public void wakeUp() {
+        signal.release();
+    }
+
+    private void workerLoop() {
+        while (running) {
+            try {
+                signal.tryAcquire(idlePollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                signal.drainPermits();
+                Thread.sleep(groupCommitWindow.toMillis());
+
+                int processed;
+                do {
+                    processed = processBatch();
+                } while (running && processed == batchSize);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки отложенных переводов", e);
+            }
+        }
+    }
+
+    int processBatch() {
+        List<Long> claimed = new ArrayList<>();
+        try {
+            Integer processed = transactionTemplate.execute(status -> {
+                List<PendingTransfer> batch = pendingTransfersRepository.claimPending(batchSize);
+                for (PendingTransfer transfer : batch) {
+                    claimed.add(transfer.getId());
+                    apply(transfer);
+                }
+                return batch.size();
+            });
+            return processed != null ? processed : 0;
+        } catch (RuntimeException e) {
+            log.warn("Пакет из {} переводов не закоммичен, обработка по одному: {}", claimed.size(), e.getMessage());
+            claimed.forEach(this::processSingle);
+            return claimed.size();
+        }
+    }
+
+    private void processSingle(Long id) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    pendingTransfersRepository.claimById(id).ifPresent(this::apply));
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status ->
+                    pendingTransfersRepository.claimById(id).ifPresent(transfer -> fail(transfer, e)));
+        }
+    }
+
+    private void apply(PendingTransfer transfer) {
+        try {
+            cardService.applyEncryptedTransfer(transfer.getUsername(), transfer.getFromCardEncrypted(),
+                    transfer.getToCardEncrypted(), transfer.getAmount());
+            transfer.setStatus(TransferStatus.COMPLETED);
+            transfer.setProcessedAt(Instant.now());
+        } catch (RuntimeException e) {
+            fail(transfer, e);
+        }
+    }
+
+    private void fail(PendingTransfer transfer, RuntimeException e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        transfer.setStatus(TransferStatus.FAILED);
+        transfer.setError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+        transfer.setProcessedAt(Instant.now());
+    }
+
+    @Scheduled(fixedDelayString = "${bank.transfer.async.purge-interval:PT1H}")
+    public void purgeProcessed() {
+        if (enabled) {
+            pendingTransfersRepository.deleteProcessedBefore(Instant.now().minus(retention));
+        }
+    }
+}
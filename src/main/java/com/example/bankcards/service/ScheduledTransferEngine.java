@@ -0,0 +1,391 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.entity.ScheduledTransfer;
+import com.example.bankcards.entity.enums.ScheduleFrequency;
+import com.example.bankcards.entity.enums.ScheduledTransferStatus;
+import com.example.bankcards.repository.ScheduledTransfersRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import com.example.bankcards.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выполнение регулярных переводов. Раз в poll-interval каждый узел забирает из индекса сроков
+ * до batch-size переводов, которые наступят в ближайшие lookahead (FOR UPDATE SKIP LOCKED и аренда
+ * claimed_until, поэтому пик первого числа разбирают все узлы без пересечений), и раскладывает их
+ * в колесо таймеров. Наступившие сроки проводятся пулом из parallelism потоков тем же путем,
+ * что и POST /bank/cards/transfer (TransferDispatcher), а забирается не больше max-pending переводов на узел.
+ * Перед выполнением строка блокируется заново с проверкой статуса и next_run_at: отмененный
+ * или уже проведенный другим узлом (после истечения аренды) перевод пропускается.
+ * Обычный перевод идет в одной транзакции со сдвигом срока. Межшардовый и шардированный переводы
+ * коммитят сами, поэтому срок сдвигается отдельной транзакцией после них, а повтор того же срока
+ * после сбоя между ними отсекается ключом идемпотентности scheduled:{id}:{occurrence}.
+ * Сбой перевода записывается в last_error, а срок все равно сдвигается на следующий период.
+ */
+@Slf4j
+@Component
+public class ScheduledTransferEngine {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private static final String RUN_COMPLETED = "Регулярный перевод выполнен";
+
+    private final ScheduledTransfersRepository scheduledTransfersRepository;
+
+    private final CardService cardService;
+
+    private final TransferDispatcher transferDispatcher;
+
+    private final IdempotencyService idempotencyService;
+
+    private final EncryptionUtil encryptionUtil;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final int maxPending;
+
+    private final int parallelism;
+
+    private final Duration lookahead;
+
+    private final Duration lease;
+
+    private final Duration tick;
+
+    private final HashedTimingWheel<DueTransfer> wheel;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final Counter claimedCounter;
+
+    private final Counter completedCounter;
+
+    private final Counter failedCounter;
+
+    private final Timer lagTimer;
+
+    private ScheduledExecutorService ticker;
+
+    private ExecutorService workers;
+
+    @Autowired
+    public ScheduledTransferEngine(ScheduledTransfersRepository scheduledTransfersRepository, CardService cardService,
+                                   TransferDispatcher transferDispatcher, IdempotencyService idempotencyService,
+                                   EncryptionUtil encryptionUtil, TransactionTemplate transactionTemplate,
+                                   ShardRouter shardRouter, MeterRegistry meterRegistry,
+                                   @Value("${bank.transfer.scheduled.enabled:true}") boolean enabled,
+                                   @Value("${bank.transfer.scheduled.batch-size:200}") int batchSize,
+                                   @Value("${bank.transfer.scheduled.max-pending:5000}") int maxPending,
+                                   @Value("${bank.transfer.scheduled.parallelism:4}") int parallelism,
+                                   @Value("${bank.transfer.scheduled.lookahead:1m}") Duration lookahead,
+                                   @Value("${bank.transfer.scheduled.lease:5m}") Duration lease,
+                                   @Value("${bank.transfer.scheduled.tick:100ms}") Duration tick,
+                                   @Value("${bank.transfer.scheduled.wheel-size:1024}") int wheelSize) {
+        this.scheduledTransfersRepository = scheduledTransfersRepository;
+        this.cardService = cardService;
+        this.transferDispatcher = transferDispatcher;
+        this.idempotencyService = idempotencyService;
+        this.encryptionUtil = encryptionUtil;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.parallelism = parallelism;
+        this.lookahead = lookahead;
+        this.lease = lease;
+        this.tick = tick;
+        this.wheel = new HashedTimingWheel<>(tick.toNanos(), wheelSize, System.nanoTime());
+        this.claimedCounter = Counter.builder("bank.transfer.scheduled.claimed")
+                .description("Регулярные переводы, забранные узлом к выполнению")
+                .register(meterRegistry);
+        this.completedCounter = Counter.builder("bank.transfer.scheduled.runs")
+                .description("Выполнения регулярных переводов")
+                .tag("result", "completed")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("bank.transfer.scheduled.runs")
+                .description("Выполнения регулярных переводов")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("bank.transfer.scheduled.lag")
+                .description("Задержка выполнения относительно срока")
+                .register(meterRegistry);
+        meterRegistry.gauge("bank.transfer.scheduled.pending", outstanding);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "scheduled-transfer-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduled-transfer-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::fireDue, tick.toNanos(), tick.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // невыполненные переводы остаются арендованными и будут забраны снова после истечения lease
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Переводы, забранные узлом и еще не выполненные. */
+    public int getPending() {
+        return outstanding.get();
+    }
+
+    @Scheduled(fixedDelayString = "${bank.transfer.scheduled.poll-interval:PT10S}")
+    public void poll() {
+        if (enabled) {
+            shardRouter.forEachShard(() -> claimDue(Instant.now()));
+        }
+    }
+
+    /** Забирает наступающие переводы текущего шарда в колесо; возвращает их число. */
+    int claimDue(Instant now) {
+        int claimed = 0;
+        while (outstanding.get() < maxPending) {
+            int limit = Math.min(batchSize, maxPending - outstanding.get());
+            List<DueTransfer> batch = transactionTemplate.execute(status -> claimBatch(now, limit));
+            if (batch == null || batch.isEmpty()) {
+                break;
+            }
+            long nowNanos = System.nanoTime();
+            for (DueTransfer due : batch) {
+                outstanding.incrementAndGet();
+                wheel.schedule(due, nowNanos + Math.max(0, Duration.between(now, due.runAt()).toNanos()));
+            }
+            claimed += batch.size();
+            claimedCounter.increment(batch.size());
+            if (batch.size() < limit) {
+                break;
+            }
+        }
+        return claimed;
+    }
+
+    private List<DueTransfer> claimBatch(Instant now, int limit) {
+        int shard = ShardContext.current();
+        List<DueTransfer> batch = new ArrayList<>();
+        for (ScheduledTransfer transfer : scheduledTransfersRepository.claimDue(now.plus(lookahead), now, limit)) {
+            Instant runAt = transfer.getNextRunAt();
+            transfer.setClaimedUntil((runAt.isAfter(now) ? runAt : now).plus(lease));
+            batch.add(new DueTransfer(shard, transfer.getId(), runAt));
+        }
+        return batch;
+    }
+
+    private void fireDue() {
+        try {
+            for (DueTransfer due : wheel.advance(System.nanoTime())) {
+                workers.submit(() -> {
+                    try {
+                        ShardContext.runOn(due.shard(), () -> execute(due, Instant.now()));
+                    } finally {
+                        outstanding.decrementAndGet();
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка колеса регулярных переводов", e);
+        }
+    }
+
+    /** Проводит один срок перевода; false, если перевод отменен или уже выполнен другим узлом. */
+    boolean execute(DueTransfer due, Instant now) {
+        Outcome outcome;
+        try {
+            outcome = transferDispatcher.commitsItself() ? executeInSteps(due, now) : executeInTransaction(due, now);
+        } catch (RuntimeException e) {
+            // транзакция перевода не закоммичена - ошибка записывается и срок сдвигается отдельно
+            outcome = recordFailure(due, now, e);
+        }
+        if (outcome == Outcome.SKIPPED) {
+            return false;
+        }
+        // счетчики - только по закоммиченному исходу, чтобы откат и повторная запись не считались дважды
+        (outcome == Outcome.COMPLETED ? completedCounter : failedCounter).increment();
+        lagTimer.record(Duration.between(due.runAt(), now).isNegative()
+                ? Duration.ZERO : Duration.between(due.runAt(), now));
+        return true;
+    }
+
+    /** Перевод и сдвиг срока в одной транзакции на шарде регулярного перевода. */
+    private Outcome executeInTransaction(DueTransfer due, Instant now) {
+        return transactionTemplate.execute(status -> scheduledTransfersRepository
+                .claimForRun(due.id(), due.runAt())
+                .map(transfer -> {
+                    reencrypt(transfer);
+                    RuntimeException error = null;
+                    try {
+                        cardService.applyEncryptedTransfer(transfer.getUsername(), transfer.getFromCardEncrypted(),
+                                transfer.getToCardEncrypted(), transfer.getAmount());
+                    } catch (RuntimeException e) {
+                        error = e;
+                    }
+                    finishRun(transfer, now, error);
+                    return error == null ? Outcome.COMPLETED : Outcome.FAILED;
+                })
+                .orElse(Outcome.SKIPPED));
+    }
+
+    /** Аренда продлевается на время перевода, сам перевод коммитится вне транзакции строки. */
+    private Outcome executeInSteps(DueTransfer due, Instant now) {
+        Optional<ScheduledTransfer> claimed = transactionTemplate.execute(status -> scheduledTransfersRepository
+                .claimForRun(due.id(), due.runAt())
+                .map(transfer -> {
+                    reencrypt(transfer);
+                    transfer.setClaimedUntil(now.plus(lease));
+                    return transfer;
+                }));
+        if (claimed == null || claimed.isEmpty()) {
+            return Outcome.SKIPPED;
+        }
+        RuntimeException error = dispatch(claimed.get());
+        transactionTemplate.executeWithoutResult(status -> scheduledTransfersRepository
+                .claimForRun(due.id(), due.runAt())
+                .ifPresent(transfer -> finishRun(transfer, now, error)));
+        return error == null ? Outcome.COMPLETED : Outcome.FAILED;
+    }
+
+    private RuntimeException dispatch(ScheduledTransfer transfer) {
+        try {
+            String fromCard = encryptionUtil.decrypt(transfer.getFromCardEncrypted());
+            String toCard = encryptionUtil.decrypt(transfer.getToCardEncrypted());
+            if (!idempotencyService.isEnabled()) {
+                transferDispatcher.transfer(transfer.getUsername(), fromCard, toCard, transfer.getAmount());
+                return null;
+            }
+            String key = "scheduled:" + transfer.getId() + ':' + transfer.getOccurrence();
+            String request = fromCard + '|' + toCard + '|' + transfer.getAmount().stripTrailingZeros().toPlainString();
+            idempotencyService.execute(transfer.getUsername(), key, request, RUN_COMPLETED, claim ->
+                    transferDispatcher.transfer(transfer.getUsername(), fromCard, toCard, transfer.getAmount(), claim));
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private Outcome recordFailure(DueTransfer due, Instant now, RuntimeException error) {
+        try {
+            Boolean recorded = transactionTemplate.execute(status -> scheduledTransfersRepository
+                    .claimForRun(due.id(), due.runAt())
+                    .map(transfer -> {
+                        finishRun(transfer, now, error);
+                        return true;
+                    })
+                    .orElse(false));
+            return Boolean.TRUE.equals(recorded) ? Outcome.FAILED : Outcome.SKIPPED;
+        } catch (RuntimeException again) {
+            log.warn("Регулярный перевод {} не выполнен, повтор после истечения аренды: {}",
+                    due.id(), again.getMessage());
+            return Outcome.SKIPPED;
+        }
+    }
+
+    /** Перевод живет дольше ключа шифрования: номера перешифровываются текущим ключом при выполнении. */
+    private void reencrypt(ScheduledTransfer transfer) {
+        if (!encryptionUtil.isCurrent(transfer.getFromCardEncrypted())) {
+            transfer.setFromCardEncrypted(encryptionUtil.encrypt(encryptionUtil.decrypt(transfer.getFromCardEncrypted())));
+        }
+        if (!encryptionUtil.isCurrent(transfer.getToCardEncrypted())) {
+            transfer.setToCardEncrypted(encryptionUtil.encrypt(encryptionUtil.decrypt(transfer.getToCardEncrypted())));
+        }
+    }
+
+    private void finishRun(ScheduledTransfer transfer, Instant now, RuntimeException error) {
+        transfer.setLastRunAt(now);
+        if (error == null) {
+            transfer.setLastError(null);
+        } else {
+            String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+            transfer.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+            log.info("Регулярный перевод {} не выполнен: {}", transfer.getId(), message);
+        }
+        advance(transfer, now);
+        transfer.setClaimedUntil(null);
+    }
+
+    /** Сдвигает срок на следующий период; сроки, пропущенные за время простоя, не догоняются. */
+    static void advance(ScheduledTransfer transfer, Instant now) {
+        if (transfer.getFrequency() == ScheduleFrequency.ONCE) {
+            transfer.setStatus(ScheduledTransferStatus.COMPLETED);
+            return;
+        }
+        int occurrence = transfer.getOccurrence() + 1;
+        Instant next = occurrenceAt(transfer.getFrequency(), transfer.getStartAt(), occurrence);
+        while (!next.isAfter(now)) {
+            occurrence++;
+            next = occurrenceAt(transfer.getFrequency(), transfer.getStartAt(), occurrence);
+        }
+        transfer.setOccurrence(occurrence);
+        transfer.setNextRunAt(next);
+        if (transfer.getEndAt() != null && next.isAfter(transfer.getEndAt())) {
+            transfer.setStatus(ScheduledTransferStatus.COMPLETED);
+        }
+    }
+
+    static Instant occurrenceAt(ScheduleFrequency frequency, Instant startAt, int occurrence) {
+        ZonedDateTime start = startAt.atZone(ZoneOffset.UTC);
+        return switch (frequency) {
+            case ONCE -> startAt;
+            case DAILY -> start.plusDays(occurrence).toInstant();
+            case WEEKLY -> start.plusWeeks(occurrence).toInstant();
+            case MONTHLY -> start.plusMonths(occurrence).toInstant();
+        };
+    }
+
+    record DueTransfer(int shard, Long id, Instant runAt) {
+    }
+
+    private enum Outcome {
+        COMPLETED, FAILED, SKIPPED
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.ScheduledTransferDTO;
+import com.example.bankcards.entity.ScheduledTransfer;
+import com.example.bankcards.entity.enums.ScheduleFrequency;
+import com.example.bankcards.entity.enums.ScheduledTransferStatus;
+import com.example.bankcards.exception.TransferNotFoundException;
+import com.example.bankcards.repository.ScheduledTransfersRepository;
+import com.example.bankcards.util.CardMaskingUtil;
+import com.example.bankcards.util.EncryptionUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@Service
+public class ScheduledTransferService {
+
+    private final ScheduledTransfersRepository scheduledTransfersRepository;
+
+    private final ScheduledTransferEngine scheduledTransferEngine;
+
+    private final EncryptionUtil encryptionUtil;
+
+    @Autowired
+    public ScheduledTransferService(ScheduledTransfersRepository scheduledTransfersRepository,
+                                    ScheduledTransferEngine scheduledTransferEngine, EncryptionUtil encryptionUtil) {
+        this.scheduledTransfersRepository = scheduledTransfersRepository;
+        this.scheduledTransferEngine = scheduledTransferEngine;
+        this.encryptionUtil = encryptionUtil;
+    }
+
+    /** startAt не задан - первое выполнение сразу; дальше сроки идут от startAt с шагом frequency. */
+    @Transactional
+    public ScheduledTransferDTO create(String username, String fromCardNumber, String toCardNumber, BigDecimal amount,
+                                       String frequency, Instant startAt, Instant endAt) {
+        if (!scheduledTransferEngine.isEnabled()) {
+            throw new IllegalStateException("Регулярные переводы отключены");
+        }
+
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Сумма перевода должна быть больше 0");
+        }
+
+        ScheduleFrequency parsedFrequency;
+        try {
+            parsedFrequency = ScheduleFrequency.valueOf(frequency.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестная периодичность: " + frequency);
+        }
+
+        Instant now = Instant.now();
+        Instant firstRun = startAt != null ? startAt.truncatedTo(ChronoUnit.SECONDS) : now.truncatedTo(ChronoUnit.SECONDS);
+        if (firstRun.isBefore(now.minus(1, ChronoUnit.MINUTES))) {
+            throw new IllegalArgumentException("Дата начала не может быть в прошлом");
+        }
+        if (endAt != null && endAt.isBefore(firstRun)) {
+            throw new IllegalArgumentException("Дата окончания раньше даты начала");
+        }
+
+        ScheduledTransfer transfer = new ScheduledTransfer();
+        transfer.setUsername(username);
+        transfer.setFromCardEncrypted(encryptionUtil.encrypt(fromCardNumber));
+        transfer.setToCardEncrypted(encryptionUtil.encrypt(toCardNumber));
+        transfer.setAmount(amount);
+        transfer.setFrequency(parsedFrequency);
+        transfer.setStartAt(firstRun);
+        transfer.setEndAt(endAt);
+        transfer.setOccurrence(0);
+        transfer.setNextRunAt(firstRun);
+        transfer.setStatus(ScheduledTransferStatus.ACTIVE);
+        transfer.setCreatedAt(now);
+
+        return toDTO(scheduledTransfersRepository.save(transfer));
+    }
+
+    @Transactional(readOnly = true)
+    public List<ScheduledTransferDTO> list(String username) {
+        return scheduledTransfersRepository.findByUsernameOrderByIdDesc(username).stream()
+                .map(this::toDTO)
+                .toList();
+    }
+
+    /**
+     * Отменяет перевод. Если срок уже забран узлом в колесо, перевод не выполнится:
+     * перед выполнением статус проверяется заново под блокировкой строки.
+     */
+    @Transactional
+    public ScheduledTransferDTO cancel(String username, Long id) {
+        scheduledTransfersRepository.cancel(id, username);
+        return scheduledTransfersRepository.findByIdAndUsername(id, username)
+                .map(this::toDTO)
+                .orElseThrow(() -> new TransferNotFoundException(id));
+    }
+
+    private ScheduledTransferDTO toDTO(ScheduledTransfer transfer) {
+        return new ScheduledTransferDTO(transfer.getId(), mask(transfer.getFromCardEncrypted()),
+                mask(transfer.getToCardEncrypted()), transfer.getAmount(), transfer.getFrequency(),
+                transfer.getStatus(), transfer.getNextRunAt(), transfer.getEndAt(), transfer.getLastRunAt(),
+                transfer.getLastError());
+    }
+
+    private String mask(String encryptedNumber) {
+        try {
+            return CardMaskingUtil.getMaskedNumber(encryptionUtil.decrypt(encryptedNumber));
+        } catch (RuntimeException e) {
+            return CardMaskingUtil.getMaskedNumber(null);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.config.ShardProperties;
+import com.example.bankcards.repository.CardDirectoryRepository;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Выбор шарда БД. Пользователь закреплен за шардом по хешу имени, его карты хранятся там же,
+ * поэтому число шардов нельзя менять без переноса данных. Шард карты по номеру берется из справочника
+ * card_directory на шарде 0; если записи нет (карта создана до включения шардирования), шарды
+ * опрашиваются по очереди и найденный шард записывается в справочник.
+ * Справочник читается и пишется в отдельной транзакции, чтобы не попасть в транзакцию другого шарда.
+ * Изменения справочника из транзакции карты применяются после ее коммита: откат создания, изменения
+ * или удаления карты не оставляет в справочнике неверных записей. Если узел упадет между коммитом и
+ * записью справочника, запись просто отсутствует, и shardOfCard восстановит ее опросом шардов.
+ * Без bank.datasource.shards.enabled шард всегда 0 и справочник не используется.
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties(ShardProperties.class)
+public class ShardRouter {
+
+    public static final int DIRECTORY_SHARD = 0;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final CardDirectoryRepository cardDirectoryRepository;
+
+    private final CardsRepository cardsRepository;
+
+    private final EncryptionUtil encryptionUtil;
+
+    private final TransactionTemplate newTransaction;
+
+    private final boolean enabled;
+
+    private final int shardCount;
+
+    private final SecretKeySpec directoryKey;
+
+    @Autowired
+    public ShardRouter(ShardProperties properties, CardDirectoryRepository cardDirectoryRepository,
+                       CardsRepository cardsRepository, EncryptionUtil encryptionUtil,
+                       PlatformTransactionManager transactionManager) {
+        this.cardDirectoryRepository = cardDirectoryRepository;
+        this.cardsRepository = cardsRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = properties.isEnabled();
+        this.shardCount = enabled ? properties.getNodes().size() + 1 : 1;
+        if (enabled && (properties.getDirectorySecret() == null || properties.getDirectorySecret().isBlank())) {
+            throw new IllegalStateException("Не задан bank.datasource.shards.directory-secret");
+        }
+        this.directoryKey = enabled
+                ? new SecretKeySpec(properties.getDirectorySecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM)
+                : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardOfUser(String username) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(username.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shardCount);
+    }
+
+    /** Шард карты; пусто, если карта не найдена ни на одном шарде. */
+    public Optional<Integer> shardOfCard(String cardNumber) {
+        if (!enabled) {
+            return Optional.of(0);
+        }
+        String key = directoryKeyOf(cardNumber);
+        Optional<Integer> known = ShardContext.callOn(DIRECTORY_SHARD, () -> newTransaction.execute(status ->
+                cardDirectoryRepository.findById(key).map(entry -> entry.getShard())));
+        if (known != null && known.isPresent()) {
+            return known;
+        }
+
+        List<String> candidates = new ArrayList<>();
+        candidates.add(encryptionUtil.encrypt(cardNumber));
+        candidates.addAll(encryptionUtil.encryptWithOtherKeys(candidates.get(0)));
+        for (int shard = 0; shard < shardCount; shard++) {
+            Boolean found = ShardContext.callOn(shard, () -> newTransaction.execute(status ->
+                    candidates.stream().anyMatch(candidate -> cardsRepository.findIdByEncryptedNumber(candidate).isPresent())));
+            if (Boolean.TRUE.equals(found)) {
+                registerCard(cardNumber, shard);
+                return Optional.of(shard);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void registerCard(String cardNumber, int shard) {
+        if (!enabled) {
+            return;
+        }
+        String key = directoryKeyOf(cardNumber);
+        afterCommit(() -> ShardContext.runOn(DIRECTORY_SHARD, () -> newTransaction.executeWithoutResult(status ->
+                cardDirectoryRepository.upsert(key, shard))));
+    }
+
+    public void unregisterCard(String cardNumber) {
+        if (!enabled) {
+            return;
+        }
+        String key = directoryKeyOf(cardNumber);
+        afterCommit(() -> ShardContext.runOn(DIRECTORY_SHARD, () -> newTransaction.executeWithoutResult(status ->
+                cardDirectoryRepository.deleteById(key))));
+    }
+
+    /** Вне транзакции действие выполняется сразу. */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.warn("Справочник карт не обновлен, запись будет восстановлена при поиске: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    /** Выполняет действие на каждом шарде по очереди (фоновые задачи). */
+    public void forEachShard(Runnable action) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            try {
+                ShardContext.runOn(shard, action);
+            } catch (RuntimeException e) {
+                log.error("Ошибка фоновой задачи на шарде {}", shard, e);
+            }
+        }
+    }
+
+    private String directoryKeyOf(String cardNumber) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(directoryKey);
+            return HexFormat.of().formatHex(mac.doFinal(cardNumber.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new RuntimeException("Ошибка вычисления ключа справочника карт", e);
+        }
+    }
+}
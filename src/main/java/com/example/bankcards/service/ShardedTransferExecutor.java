@@ -0,0 +1,326 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Необязательный режим переводов: каждая карта закреплена за одним однопоточным шардом,
+ * поэтому переводы по одной карте выстраиваются в очередь в памяти, а не ждут блокировок строк,
+ * удерживая соединения из пула. Переводы шарда коммитятся пакетами в одной транзакции.
+ * Перевод между двумя шардами ставится в шард с меньшим номером, который передает его в шард
+ * с большим номером и ждет результата - ожидание всегда идет по возрастанию номеров, без циклов.
+ */
+@Slf4j
+@Component
+public class ShardedTransferExecutor {
+
+    private final CardService cardService;
+
+    private final CardsRepository cardsRepository;
+
+    private final EncryptionUtil encryptionUtil;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final IdempotencyService idempotencyService;
+
+    private final boolean enabled;
+
+    private final int shardCount;
+
+    private final int batchSize;
+
+    private final int queueCapacity;
+
+    private final Duration timeout;
+
+    private ShardWorker[] shards = new ShardWorker[0];
+
+    @Autowired
+    public ShardedTransferExecutor(CardService cardService, CardsRepository cardsRepository,
+                                   EncryptionUtil encryptionUtil, TransactionTemplate transactionTemplate,
+                                   IdempotencyService idempotencyService,
+                                   @Value("${bank.transfer.sharded.enabled:false}") boolean enabled,
+                                   @Value("${bank.transfer.sharded.shards:8}") int shardCount,
+                                   @Value("${bank.transfer.sharded.batch-size:32}") int batchSize,
+                                   @Value("${bank.transfer.sharded.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${bank.transfer.sharded.timeout:10s}") Duration timeout) {
+        this.cardService = cardService;
+        this.cardsRepository = cardsRepository;
+        this.encryptionUtil = encryptionUtil;
+        this.transactionTemplate = transactionTemplate;
+        this.idempotencyService = idempotencyService;
+        this.enabled = enabled;
+        this.shardCount = shardCount;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.timeout = timeout;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        shards = new ShardWorker[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ShardWorker(i);
+            shards[i].start();
+        }
+        log.info("Шардированные переводы включены: {} шардов, пакет до {}", shardCount, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (ShardWorker shard : shards) {
+            shard.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void transfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount) {
+        transfer(username, fromCardNumber, toCardNumber, amount, null);
+    }
+
+    /** claim - Idempotency-Key запроса, фиксируется в транзакции пакета вместе с переводом. */
+    public void transfer(String username, String fromCardNumber, String toCardNumber, BigDecimal amount,
+                         IdempotencyService.Claim claim) {
+        if (!enabled) {
+            cardService.transfer(username, fromCardNumber, toCardNumber, amount, claim);
+            return;
+        }
+
+        long fromId = findCardId(fromCardNumber).orElseThrow(() -> new CardNotFoundException("Исходная карта"));
+        long toId = findCardId(toCardNumber).orElseThrow(() -> new CardNotFoundException("Целевая карта"));
+
+        TransferTask task = new TransferTask(username, fromCardNumber, toCardNumber, amount, claim);
+
+        int fromShard = shardOf(fromId);
+        int toShard = shardOf(toId);
+        if (fromShard == toShard) {
+            shards[fromShard].submit(task);
+        } else {
+            ShardWorker higher = shards[Math.max(fromShard, toShard)];
+            shards[Math.min(fromShard, toShard)].submit(new CrossShardTask(higher, task));
+        }
+
+        await(task);
+    }
+
+    /** Во время ротации ключей карта может быть зашифрована прежним ключом, см. CardKeyRotation. */
+    private Optional<Long> findCardId(String cardNumber) {
+        String encrypted = encryptionUtil.encrypt(cardNumber);
+        Optional<Long> id = cardsRepository.findIdByEncryptedNumber(encrypted);
+        if (id.isPresent()) {
+            return id;
+        }
+        for (String other : encryptionUtil.encryptWithOtherKeys(encrypted)) {
+            id = cardsRepository.findIdByEncryptedNumber(other);
+            if (id.isPresent()) {
+                return id;
+            }
+        }
+        return Optional.empty();
+    }
+
+    int shardOf(long cardId) {
+        return (int) Math.floorMod(cardId, (long) shards.length);
+    }
+
+    private void await(TransferTask task) {
+        try {
+            try {
+                task.result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (task.cancel()) {
+                    RuntimeException timedOut = new RuntimeException("Превышено время ожидания перевода, перевод не выполнен");
+                    task.result.completeExceptionally(timedOut);
+                    throw timedOut;
+                }
+                task.result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ожидание перевода прервано", e);
+        }
+    }
+
+    private void commitBatch(List<TransferTask> batch) {
+        List<TransferTask> applied = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (TransferTask task : batch) {
+                    try {
+                        cardService.applyTransfer(task.username, task.fromCardNumber, task.toCardNumber, task.amount,
+                                task.claim);
+                        applied.add(task);
+                    } catch (RuntimeException e) {
+                        // отклоненный перевод не должен оставить свой ключ в коммите пакета
+                        if (task.claim != null) {
+                            idempotencyService.release(task.claim);
+                        }
+                        task.result.completeExceptionally(e);
+                    }
+                }
+            });
+            applied.forEach(task -> task.result.complete(null));
+        } catch (RuntimeException e) {
+            batch.stream()
+                    .filter(task -> batch.size() == 1 || !applied.contains(task))
+                    .forEach(task -> task.result.completeExceptionally(e));
+            if (batch.size() == 1) {
+                return;
+            }
+            log.warn("Пакет из {} переводов не закоммичен, повтор по одному: {}", applied.size(), e.getMessage());
+            for (TransferTask task : applied) {
+                commitBatch(List.of(task));
+            }
+        }
+    }
+
+    private sealed interface ShardTask permits TransferTask, CrossShardTask {
+    }
+
+    private static final class TransferTask implements ShardTask {
+        private static final int NEW = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final String username;
+        private final String fromCardNumber;
+        private final String toCardNumber;
+        private final BigDecimal amount;
+        private final IdempotencyService.Claim claim;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private TransferTask(String username, String fromCardNumber, String toCardNumber, BigDecimal amount,
+                             IdempotencyService.Claim claim) {
+            this.username = username;
+            this.fromCardNumber = fromCardNumber;
+            this.toCardNumber = toCardNumber;
+            this.amount = amount;
+            this.claim = claim;
+        }
+
+        boolean begin() {
+            return state.compareAndSet(NEW, STARTED);
+        }
+
+        boolean cancel() {
+            return state.compareAndSet(NEW, CANCELLED);
+        }
+    }
+
+    private record CrossShardTask(ShardWorker higher, TransferTask task) implements ShardTask {
+    }
+
+    private final class ShardWorker extends Thread {
+
+        private final BlockingQueue<ShardTask> queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        private ShardWorker(int index) {
+            super("transfer-shard-" + index);
+            setDaemon(true);
+        }
+
+        void submit(ShardTask task) {
+            if (!queue.offer(task)) {
+                throw new RuntimeException("Очередь переводов переполнена, повторите позже");
+            }
+        }
+
+        @Override
+        public void run() {
+            List<ShardTask> drained = new ArrayList<>(batchSize);
+            while (!isInterrupted()) {
+                try {
+                    ShardTask first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    drained.add(first);
+                    queue.drainTo(drained, batchSize - 1);
+                    process(drained);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Ошибка в шарде {}", getName(), e);
+                } finally {
+                    drained.clear();
+                }
+            }
+        }
+
+        private void process(List<ShardTask> drained) throws InterruptedException {
+            List<TransferTask> batch = new ArrayList<>(drained.size());
+            for (ShardTask next : drained) {
+                if (next instanceof TransferTask task) {
+                    if (task.begin()) {
+                        batch.add(task);
+                    }
+                } else if (next instanceof CrossShardTask cross) {
+                    flush(batch);
+                    runCrossShard(cross);
+                }
+            }
+            flush(batch);
+        }
+
+        private void flush(List<TransferTask> batch) {
+            if (!batch.isEmpty()) {
+                commitBatch(new ArrayList<>(batch));
+                batch.clear();
+            }
+        }
+
+        /** Шард с меньшим номером не берет новые задачи, пока перевод не выполнится в шарде с большим. */
+        private void runCrossShard(CrossShardTask cross) throws InterruptedException {
+            if (cross.task().state.get() != TransferTask.NEW) {
+                return;
+            }
+            try {
+                cross.higher().submit(cross.task());
+            } catch (RuntimeException e) {
+                if (cross.task().cancel()) {
+                    cross.task().result.completeExceptionally(e);
+                }
+                return;
+            }
+            try {
+                cross.task().result.get();
+            } catch (ExecutionException ignored) {
+                // результат получит вызывающий поток
+            }
+        }
+    }
+}
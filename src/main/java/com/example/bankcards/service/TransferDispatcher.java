@@ -0,0 +1,50 @@
+package com.example.bankcards.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+
+/**
+ * Выбор пути синхронного перевода по включенным режимам: межшардовый перевод при шардировании БД,
+ * иначе очередь ShardedTransferExecutor, иначе обычный CardService.transfer. Общий для
+ * POST /bank/cards/transfer и регулярных переводов, чтобы они не расходились.
+ */
+@Service
+public class TransferDispatcher {
+
+    private final CardService cardService;
+
+    private final CrossShardTransferService crossShardTransferService;
+
+    private final ShardedTransferExecutor shardedTransferExecutor;
+
+    @Autowired
+    public TransferDispatcher(CardService cardService, CrossShardTransferService crossShardTransferService,
+                              ShardedTransferExecutor shardedTransferExecutor) {
+        this.cardService = cardService;
+        this.crossShardTransferService = crossShardTransferService;
+        this.shardedTransferExecutor = shardedTransferExecutor;
+    }
+
+    /** true - перевод коммитится в собственных транзакциях, а не в транзакции вызывающего. */
+    public boolean commitsItself() {
+        return crossShardTransferService.isEnabled() || shardedTransferExecutor.isEnabled();
+    }
+
+    public void transfer(String username, String fromCard, String toCard, BigDecimal amount) {
+        transfer(username, fromCard, toCard, amount, null);
+    }
+
+    /** claim - Idempotency-Key запроса; каждый путь фиксирует его в транзакции, которая списывает деньги. */
+    public void transfer(String username, String fromCard, String toCard, BigDecimal amount,
+                         IdempotencyService.Claim claim) {
+        if (crossShardTransferService.isEnabled()) {
+            crossShardTransferService.transfer(username, fromCard, toCard, amount, claim);
+        } else if (shardedTransferExecutor.isEnabled()) {
+            shardedTransferExecutor.transfer(username, fromCard, toCard, amount, claim);
+        } else {
+            cardService.transfer(username, fromCard, toCard, amount, claim);
+        }
+    }
+}
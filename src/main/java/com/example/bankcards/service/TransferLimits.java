@@ -0,0 +1,265 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.exception.TransferLimitExceededException;
+import com.example.bankcards.repository.TransfersRepository;
+import com.example.bankcards.repository.projection.OutgoingTotalsView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лимиты исходящих переводов карты: сумма за скользящие 24 часа (bank.transfer.limits.daily-amount)
+ * и число переводов за минуту (max-per-minute). Проверка идет по счетчикам в памяти, без запросов к БД:
+ * у каждой карты 24 часовые корзины сумм и кольцо времен последних переводов, блокировка - на карту.
+ * Сумма резервируется в транзакции перевода и возвращается, если транзакция откатилась
+ * или межшардовое списание потом компенсировано.
+ * Источник истины - таблица transfers: при старте и затем каждые reconcile-interval часовые корзины
+ * сверяются с ней, что восстанавливает счетчики после перезапуска и учитывает переводы других узлов.
+ * id карт на разных шардах совпадают, поэтому счетчик ищется по паре (шард, id): перевод списывает
+ * на шарде исходной карты, сверка идет по каждому шарду в его контексте.
+ */
+@Slf4j
+@Component
+public class TransferLimits {
+
+    static final int WINDOW_HOURS = 24;
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TransfersRepository transfersRepository;
+
+    private final ShardRouter shardRouter;
+
+    private final boolean enabled;
+
+    private final BigDecimal dailyAmount;
+
+    private final int maxPerMinute;
+
+    private final Map<CardKey, CardUsage> usage = new ConcurrentHashMap<>();
+
+    private final Counter dailyRejectedCounter;
+
+    private final Counter velocityRejectedCounter;
+
+    @Autowired
+    public TransferLimits(TransfersRepository transfersRepository, ShardRouter shardRouter, MeterRegistry meterRegistry,
+                          @Value("${bank.transfer.limits.enabled:true}") boolean enabled,
+                          @Value("${bank.transfer.limits.daily-amount:100000}") BigDecimal dailyAmount,
+                          @Value("${bank.transfer.limits.max-per-minute:10}") int maxPerMinute) {
+        this.transfersRepository = transfersRepository;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.dailyAmount = dailyAmount;
+        this.maxPerMinute = maxPerMinute;
+        this.dailyRejectedCounter = Counter.builder("bank.transfer.limits.rejected")
+                .description("Переводы, отклоненные лимитами")
+                .tag("rule", "daily")
+                .register(meterRegistry);
+        this.velocityRejectedCounter = Counter.builder("bank.transfer.limits.rejected")
+                .description("Переводы, отклоненные лимитами")
+                .tag("rule", "velocity")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("bank.transfer.limits.cards", List.of(), usage);
+    }
+
+    /**
+     * Проверяет лимиты исходной карты и резервирует сумму. Вызывается после остальных проверок перевода,
+     * непосредственно перед изменением балансов.
+     */
+    public void reserve(Long cardId, BigDecimal amount) {
+        reserve(cardId, amount, System.currentTimeMillis());
+    }
+
+    void reserve(Long cardId, BigDecimal amount, long nowMillis) {
+        if (!enabled || cardId == null) {
+            return;
+        }
+        CardUsage card = usage.computeIfAbsent(new CardKey(ShardContext.current(), cardId),
+                key -> new CardUsage(maxPerMinute));
+        long hour = Math.floorDiv(nowMillis, HOUR_MILLIS);
+
+        Violation violation = card.tryReserve(amount, hour, nowMillis, dailyAmount);
+        if (violation == Violation.DAILY) {
+            dailyRejectedCounter.increment();
+            throw new TransferLimitExceededException("не более " + dailyAmount + " в сутки с карты");
+        }
+        if (violation == Violation.VELOCITY) {
+            velocityRejectedCounter.increment();
+            throw new TransferLimitExceededException("не более " + maxPerMinute + " переводов в минуту с карты");
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        card.release(amount, hour);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Возвращает сумму, зарезервированную в reservedAt, например при компенсации межшардового списания.
+     * В транзакции сумма возвращается только после ее коммита.
+     */
+    public void release(Long cardId, BigDecimal amount, Instant reservedAt) {
+        if (!enabled || cardId == null) {
+            return;
+        }
+        CardUsage card = usage.get(new CardKey(ShardContext.current(), cardId));
+        if (card == null) {
+            return;
+        }
+        long hour = Math.floorDiv(reservedAt.toEpochMilli(), HOUR_MILLIS);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    card.release(amount, hour);
+                }
+            });
+        } else {
+            card.release(amount, hour);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        reconcile();
+    }
+
+    /** Сверка с журналом переводов: закрытые часы берутся из transfers, текущий - максимум из двух. */
+    @Scheduled(fixedDelayString = "${bank.transfer.limits.reconcile-interval:PT5M}")
+    public void reconcile() {
+        if (enabled) {
+            shardRouter.forEachShard(() -> reconcile(System.currentTimeMillis()));
+        }
+    }
+
+    void reconcile(long nowMillis) {
+        long currentHour = Math.floorDiv(nowMillis, HOUR_MILLIS);
+        long firstHour = currentHour - WINDOW_HOURS + 1;
+        int shard = ShardContext.current();
+        List<OutgoingTotalsView> rows = transfersRepository.sumOutgoingByHour(Instant.ofEpochMilli(firstHour * HOUR_MILLIS));
+        for (OutgoingTotalsView row : rows) {
+            usage.computeIfAbsent(new CardKey(shard, row.getCardId()), key -> new CardUsage(maxPerMinute))
+                    .applyLedger(row.getHour(), row.getAmount(), currentHour);
+        }
+        usage.entrySet().removeIf(entry -> entry.getKey().shard() == shard
+                && entry.getValue().isIdle(firstHour, nowMillis));
+    }
+
+    BigDecimal usedToday(long cardId, long nowMillis) {
+        CardUsage card = usage.get(new CardKey(ShardContext.current(), cardId));
+        return card != null ? card.dailyTotal(Math.floorDiv(nowMillis, HOUR_MILLIS)) : BigDecimal.ZERO;
+    }
+
+    private record CardKey(int shard, long cardId) {
+    }
+
+    private enum Violation {
+        DAILY, VELOCITY
+    }
+
+    private static final class CardUsage {
+
+        private final long[] bucketHours = new long[WINDOW_HOURS];
+
+        private final BigDecimal[] bucketAmounts = new BigDecimal[WINDOW_HOURS];
+
+        /** Времена последних переводов по кругу; самый старый - в позиции next. */
+        private final long[] recent;
+
+        private int next;
+
+        private CardUsage(int maxPerMinute) {
+            Arrays.fill(bucketHours, Long.MIN_VALUE);
+            Arrays.fill(bucketAmounts, BigDecimal.ZERO);
+            this.recent = new long[Math.max(1, maxPerMinute)];
+            Arrays.fill(recent, Long.MIN_VALUE);
+        }
+
+        private synchronized Violation tryReserve(BigDecimal amount, long hour, long nowMillis, BigDecimal dailyLimit) {
+            if (dailyTotal(hour).add(amount).compareTo(dailyLimit) > 0) {
+                return Violation.DAILY;
+            }
+            long oldest = recent[next];
+            if (oldest != Long.MIN_VALUE && nowMillis - oldest < MINUTE_MILLIS) {
+                return Violation.VELOCITY;
+            }
+            recent[next] = nowMillis;
+            next = (next + 1) % recent.length;
+            int index = bucket(hour);
+            bucketAmounts[index] = bucketAmounts[index].add(amount);
+            return null;
+        }
+
+        /** Попытка из отката по-прежнему учитывается в частоте: кольцо хранит только времена. */
+        private synchronized void release(BigDecimal amount, long hour) {
+            int index = (int) Math.floorMod(hour, (long) WINDOW_HOURS);
+            if (bucketHours[index] == hour) {
+                bucketAmounts[index] = bucketAmounts[index].subtract(amount).max(BigDecimal.ZERO);
+            }
+        }
+
+        private synchronized void applyLedger(long hour, BigDecimal amount, long currentHour) {
+            if (hour <= currentHour - WINDOW_HOURS || hour > currentHour) {
+                return;
+            }
+            int index = bucket(hour);
+            bucketAmounts[index] = hour < currentHour ? amount : bucketAmounts[index].max(amount);
+        }
+
+        private synchronized BigDecimal dailyTotal(long currentHour) {
+            BigDecimal total = BigDecimal.ZERO;
+            for (int i = 0; i < WINDOW_HOURS; i++) {
+                if (bucketHours[i] > currentHour - WINDOW_HOURS && bucketHours[i] <= currentHour) {
+                    total = total.add(bucketAmounts[i]);
+                }
+            }
+            return total;
+        }
+
+        private synchronized boolean isIdle(long firstHour, long nowMillis) {
+            for (long bucketHour : bucketHours) {
+                if (bucketHour >= firstHour) {
+                    return false;
+                }
+            }
+            long latest = recent[Math.floorMod(next - 1, recent.length)];
+            return latest == Long.MIN_VALUE || nowMillis - latest >= MINUTE_MILLIS;
+        }
+
+        /** Корзина часа; устаревшее содержимое (час, вышедший из окна) сбрасывается. */
+        private int bucket(long hour) {
+            int index = (int) Math.floorMod(hour, (long) WINDOW_HOURS);
+            if (bucketHours[index] != hour) {
+                bucketHours[index] = hour;
+                bucketAmounts[index] = BigDecimal.ZERO;
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.bankcards.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Поддерживает месячные секции таблицы transfers: заранее создает секции на premake-months вперед
+ * и отсоединяет (DETACH, без удаления данных) секции старше retention-months.
+ */
+@Slf4j
+@Component
+public class TransferPartitionMaintainer {
+
+    private static final String PREFIX = "transfers_p";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int premakeMonths;
+
+    private final int retentionMonths;
+
+    @Autowired
+    public TransferPartitionMaintainer(JdbcTemplate jdbcTemplate,
+                                       @Value("${bank.transfer.history.premake-months:3}") int premakeMonths,
+                                       @Value("${bank.transfer.history.retention-months:24}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.premakeMonths = premakeMonths;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${bank.transfer.history.maintenance-cron:0 15 3 * * *}", zone = "UTC")
+    public void maintain() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= premakeMonths; i++) {
+            createPartition(current.plusMonths(i));
+        }
+
+        YearMonth oldestKept = current.minusMonths(retentionMonths);
+        for (String partition : attachedPartitions()) {
+            YearMonth month = parseMonth(partition);
+            if (month != null && month.isBefore(oldestKept)) {
+                detachPartition(partition);
+            }
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        String sql = String.format(
+                "CREATE TABLE IF NOT EXISTS %s%s PARTITION OF transfers " +
+                        "FOR VALUES FROM ('%s-01 00:00:00+00') TO ('%s-01 00:00:00+00')",
+                PREFIX, month.format(SUFFIX), month, month.plusMonths(1));
+        try {
+            jdbcTemplate.execute(sql);
+        } catch (DataAccessException e) {
+            log.warn("Не удалось создать секцию transfers за {}: {}", month, e.getMessage());
+        }
+    }
+
+    private void detachPartition(String partition) {
+        try {
+            jdbcTemplate.execute("ALTER TABLE transfers DETACH PARTITION " + partition);
+            log.info("Секция {} отсоединена от transfers", partition);
+        } catch (DataAccessException e) {
+            log.warn("Не удалось отсоединить секцию {}: {}", partition, e.getMessage());
+        }
+    }
+
+    private List<String> attachedPartitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                        "JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "JOIN pg_class p ON p.oid = i.inhparent " +
+                        "WHERE p.relname = 'transfers'", String.class);
+    }
+
+    private YearMonth parseMonth(String partition) {
+        if (!partition.startsWith(PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(PREFIX.length()), SUFFIX);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
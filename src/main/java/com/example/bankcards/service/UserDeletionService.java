@@ -0,0 +1,186 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.dto.UserDeletionDTO;
+import com.example.bankcards.entity.enums.DeletionStatus;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.UserIdView;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Удаление пользователя без загрузки его карт в память. Сначала пользователь помечается deleted
+ * и сразу перестает быть виден; затем карты удаляются пакетными DELETE по chunk-size строк,
+ * каждая порция в своей транзакции, и в конце удаляется сам пользователь.
+ * В фоновом режиме удаление идет в отдельном потоке, а ход виден через getStatus. Помеченные
+ * пользователи, удаление которых прервалось (например, при перезапуске), дочищаются по расписанию:
+ * задача только ставит их в ту же очередь и не ждет удаления. Пользователь, уже стоящий в очереди
+ * или удаляемый, повторно не ставится; завершенные и неудачные записи хода убираются из памяти,
+ * а неудачное удаление ставится заново, так как пользователь остается помеченным.
+ */
+@Slf4j
+@Service
+public class UserDeletionService {
+
+    private final UsersRepository usersRepository;
+
+    private final CardsRepository cardsRepository;
+
+    private final CardStatsService cardStatsService;
+
+    private final ListingVersionService listingVersionService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ShardRouter shardRouter;
+
+    private final int chunkSize;
+
+    private final boolean background;
+
+    private final Map<String, UserDeletionDTO> progress = new ConcurrentHashMap<>();
+
+    /** Пользователи, поставленные в очередь executor и еще не обработанные; id уникальны только в шарде. */
+    private final Set<ScheduledUser> scheduled = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-deletion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public UserDeletionService(UsersRepository usersRepository, CardsRepository cardsRepository,
+                               CardStatsService cardStatsService, ListingVersionService listingVersionService,
+                               TransactionTemplate transactionTemplate,
+                               ShardRouter shardRouter,
+                               @Value("${bank.users.delete.chunk-size:1000}") int chunkSize,
+                               @Value("${bank.users.delete.background:true}") boolean background) {
+        this.usersRepository = usersRepository;
+        this.cardsRepository = cardsRepository;
+        this.cardStatsService = cardStatsService;
+        this.listingVersionService = listingVersionService;
+        this.transactionTemplate = transactionTemplate;
+        this.shardRouter = shardRouter;
+        this.chunkSize = chunkSize;
+        this.background = background;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public UserDeletionDTO delete(Long userId, String username) {
+        transactionTemplate.executeWithoutResult(status -> {
+            usersRepository.markDeleted(userId);
+            listingVersionService.touch(ListingVersionService.USERS);
+        });
+
+        UserDeletionDTO state = new UserDeletionDTO(username, DeletionStatus.QUEUED, 0, null);
+        progress.put(username, state);
+        schedule(userId, state);
+        return state;
+    }
+
+    public UserDeletionDTO getStatus(String username) {
+        return progress.get(username);
+    }
+
+    @Scheduled(fixedDelayString = "${bank.users.delete.resume-interval:PT5M}")
+    public void resumePending() {
+        progress.values().removeIf(state -> state.getStatus() == DeletionStatus.COMPLETED
+                || state.getStatus() == DeletionStatus.FAILED);
+        shardRouter.forEachShard(this::resumeOnCurrentShard);
+    }
+
+    private void resumeOnCurrentShard() {
+        List<UserIdView> pending = usersRepository.findMarkedDeleted();
+        for (UserIdView user : pending) {
+            if (scheduled.contains(new ScheduledUser(ShardContext.current(), user.getId()))) {
+                continue;
+            }
+            UserDeletionDTO resumed = new UserDeletionDTO(user.getUsername(), DeletionStatus.QUEUED, 0, null);
+            progress.put(user.getUsername(), resumed);
+            schedule(user.getId(), resumed);
+        }
+    }
+
+    private void schedule(Long userId, UserDeletionDTO state) {
+        if (!background) {
+            purge(userId, state);
+            return;
+        }
+
+        int shard = ShardContext.current();
+        ScheduledUser key = new ScheduledUser(shard, userId);
+        if (!scheduled.add(key)) {
+            return;
+        }
+        try {
+            executor.submit(() -> {
+                try {
+                    ShardContext.runOn(shard, () -> purge(userId, state));
+                } finally {
+                    scheduled.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduled.remove(key);
+            // останавливаемся - пользователь уже помечен, его дочистит resumePending после запуска
+            log.warn("Удаление пользователя {} отложено: {}", state.getUsername(), e.getMessage());
+        }
+    }
+
+    void purge(Long userId, UserDeletionDTO state) {
+        state.setStatus(DeletionStatus.IN_PROGRESS);
+        try {
+            while (true) {
+                Integer deleted = transactionTemplate.execute(status -> deleteChunk(userId));
+                if (deleted == null || deleted == 0) {
+                    break;
+                }
+                state.setDeletedCards(state.getDeletedCards() + deleted);
+            }
+
+            Integer removed = transactionTemplate.execute(status -> usersRepository.purgeDeleted(userId));
+            if (removed == null || removed == 0) {
+                // карты еще держит другой узел (SKIP LOCKED) - пользователь будет удален при следующем проходе
+                state.setStatus(DeletionStatus.QUEUED);
+                return;
+            }
+            state.setStatus(DeletionStatus.COMPLETED);
+            log.info("Пользователь {} удален, карт удалено: {}", state.getUsername(), state.getDeletedCards());
+        } catch (RuntimeException e) {
+            state.setStatus(DeletionStatus.FAILED);
+            state.setError(e.getMessage());
+            log.error("Ошибка удаления пользователя {}", state.getUsername(), e);
+        }
+    }
+
+    private int deleteChunk(Long userId) {
+        List<Long> ids = cardsRepository.lockIdsByOwnerId(userId, chunkSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        cardStatsService.onOwnerDeleted(cardsRepository.summarizeByIds(ids));
+        return cardsRepository.deleteByIds(ids);
+    }
+
+    private record ScheduledUser(int shard, Long userId) {
+    }
+}
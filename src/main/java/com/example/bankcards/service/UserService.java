@@ -1,7 +1,13 @@
 package com.example.bankcards.service;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.bankcards.config.ShardContext;
 import com.example.bankcards.dto.AuthDTO;
 import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserDeletionDTO;
+import com.example.bankcards.dto.UserSearchDTO;
+import com.example.bankcards.dto.UserSearchItemDTO;
+import com.example.bankcards.dto.UserSummaryDTO;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
@@ -9,13 +15,18 @@ import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.repository.CardsRepository;
 import com.example.bankcards.repository.RolesRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.UserSearchView;
 import com.example.bankcards.security.JWTUtil;
+import com.example.bankcards.security.LoginAttemptGuard;
+import com.example.bankcards.security.TokenDenyList;
 import com.example.bankcards.util.CardMapper;
 import com.example.bankcards.util.EncryptionUtil;
+import com.example.bankcards.util.ListingETagUtil;
 import com.example.bankcards.util.UserMapper;
+import com.example.bankcards.util.UserSearchCursorUtil;
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,12 +34,14 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @Service
@@ -47,33 +60,122 @@ public class UserService {
 
     private final JWTUtil jwtUtil;
 
+    private final CardsRepository cardsRepository;
+
+    private final UserDeletionService userDeletionService;
+
+    private final ShardRouter shardRouter;
+
+    private final TokenDenyList tokenDenyList;
+
+    private final LoginAttemptGuard loginAttemptGuard;
+
+    private final ListingVersionService listingVersionService;
+
+    private final UserSearchCursorUtil userSearchCursorUtil;
+
+    private static final int MAX_SEARCH_PAGE_SIZE = 50;
+
+    /** Короче трех символов триграммный индекс не помогает, такие запросы ищут только по началу имени. */
+    private static final int MIN_CONTAINS_QUERY_LENGTH = 3;
+
+    private static final String[] SEARCH_MATCHES = {"EXACT", "PREFIX", "CONTAINS"};
+
+    @Value("${bank.users.search.max-results:200}")
+    private int maxSearchResults;
+
     @Autowired
     public UserService(UsersRepository usersRepository, RolesRepository rolesRepository,
                        UserMapper userMapper, PasswordEncoder passwordEncoder,
-                       AuthenticationManager authenticationManager, JWTUtil jwtUtil){
+                       AuthenticationManager authenticationManager, JWTUtil jwtUtil,
+                       CardsRepository cardsRepository, UserDeletionService userDeletionService,
+                       ShardRouter shardRouter, TokenDenyList tokenDenyList,
+                       LoginAttemptGuard loginAttemptGuard, ListingVersionService listingVersionService,
+                       UserSearchCursorUtil userSearchCursorUtil){
         this.usersRepository = usersRepository;
         this.rolesRepository = rolesRepository;
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.jwtUtil = jwtUtil;
+        this.cardsRepository = cardsRepository;
+        this.userDeletionService = userDeletionService;
+        this.shardRouter = shardRouter;
+        this.tokenDenyList = tokenDenyList;
+        this.loginAttemptGuard = loginAttemptGuard;
+        this.listingVersionService = listingVersionService;
+        this.userSearchCursorUtil = userSearchCursorUtil;
     }
 
+    @Transactional(readOnly = true)
     public UserDTO getUser(String username){
         User user = usersRepository.findByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден: " + username));
         return userMapper.toDTO(user);
     }
 
-    public Page<UserDTO> getAllUsers(int page, int size) {
+    @Transactional(readOnly = true)
+    public Page<UserSummaryDTO> getAllUsers(int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
-        Page<User> usersPage = usersRepository.findAll(pageable);
-        return usersPage.map(userMapper::toDTO);
+        return usersRepository.findSummaries(pageable).map(userMapper::toDTO);
+    }
+
+    /**
+     * Число карт в списке берется из user_card_stats, а ее изменения увеличивают версию списка
+     * пользователей (CardStatsService). Поэтому переводы и блокировки, не меняющие число карт, кэш не сбрасывают.
+     */
+    @Transactional(readOnly = true)
+    public String getAllUsersETag(int page, int size) {
+        return ListingETagUtil.toETag(page, size, listingVersionService.version(ListingVersionService.USERS));
+    }
+
+    @Transactional(readOnly = true)
+    public UserSearchDTO searchUsers(String query, String cursor, int size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Строка поиска не может быть пустой");
+        }
+
+        if (size <= 0 || size > MAX_SEARCH_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_SEARCH_PAGE_SIZE);
+        }
+
+        String normalized = query.trim().toLowerCase(Locale.ROOT);
+        UserSearchCursorUtil.Position position = cursor != null && !cursor.isBlank()
+                ? userSearchCursorUtil.decode(normalized, cursor)
+                : UserSearchCursorUtil.START;
+
+        int limit = Math.min(size, maxSearchResults - position.served());
+        if (limit <= 0) {
+            return new UserSearchDTO(List.of(), null);
+        }
+
+        String escaped = normalized.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+        String prefix = escaped + "%";
+        String pattern = normalized.length() < MIN_CONTAINS_QUERY_LENGTH ? prefix : "%" + escaped + "%";
+
+        List<UserSearchView> rows = usersRepository.searchByUsername(normalized, prefix, pattern,
+                position.tier(), position.length(), position.username(), PageRequest.of(0, limit));
+
+        List<UserSearchItemDTO> items = new ArrayList<>(rows.size());
+        for (UserSearchView row : rows) {
+            items.add(new UserSearchItemDTO(row.getUsername(), row.getRole(), SEARCH_MATCHES[row.getTier()]));
+        }
+
+        int served = position.served() + rows.size();
+        String nextCursor = null;
+        if (rows.size() == limit && served < maxSearchResults) {
+            UserSearchView last = rows.get(rows.size() - 1);
+            nextCursor = userSearchCursorUtil.encode(normalized, last.getTier(), last.getUsername(), served);
+        }
+
+        return new UserSearchDTO(items, nextCursor);
     }
 
 
     @Transactional
     public UserDTO createUser(UserDTO userDTO) {
+        // пользователь создается на своем шарде; соединение еще не взято, поэтому шард можно выбрать здесь
+        ShardContext.set(shardRouter.shardOfUser(userDTO.getUsername()));
         if (usersRepository.findByUsername(userDTO.getUsername()).isPresent()) {
             throw new IllegalArgumentException("Пользователь с таким именем уже существует");
         }
@@ -87,6 +189,7 @@ public class UserService {
         user.setPassword("{bcrypt}" + passwordEncoder.encode(userDTO.getPassword()));
 
         User saved = usersRepository.save(user);
+        listingVersionService.touch(ListingVersionService.USERS);
         return userMapper.toDTO(saved);
     }
 
@@ -96,6 +199,9 @@ public class UserService {
                 .orElseThrow(() -> new UserNotFoundException(username));
 
         if (userDTO.getUsername() != null && !userDTO.getUsername().isBlank()) {
+            if (shardRouter.shardOfUser(userDTO.getUsername()) != shardRouter.shardOfUser(username)) {
+                throw new IllegalArgumentException("Новое имя относится к другому шарду, переименование не поддерживается");
+            }
             existingUser.setUsername(userDTO.getUsername());
         }
 
@@ -110,29 +216,55 @@ public class UserService {
         }
 
         usersRepository.save(existingUser);
+        listingVersionService.touch(ListingVersionService.USERS);
     }
 
-    @Transactional
+    /**
+     * Пользователь сразу помечается удаленным, карты и сама запись удаляются пакетами
+     * (в фоне, если bank.users.delete.background=true). Ход удаления - getDeletionStatus.
+     */
     public void deleteUser(String username) {
-        usersRepository.findByUsername(username)
+        User user = usersRepository.findByUsername(username)
                 .orElseThrow(() -> new UserNotFoundException(username));
 
-        usersRepository.deleteByUsername(username);
+        userDeletionService.delete(user.getId(), username);
     }
 
-    public String login(AuthDTO authDTO) {
+    public UserDeletionDTO getDeletionStatus(String username) {
+        return userDeletionService.getStatus(username);
+    }
 
-            Authentication auth = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            authDTO.getUsername(), authDTO.getPassword()
-                    )
-            );
+    public String login(AuthDTO authDTO, String clientIp) {
+            // заблокированное имя или IP отклоняются до поиска пользователя и BCrypt
+            loginAttemptGuard.checkAllowed(authDTO.getUsername(), clientIp);
+
+            try {
+                authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(
+                                authDTO.getUsername(), authDTO.getPassword()
+                        )
+                );
+            } catch (AuthenticationException e) {
+                loginAttemptGuard.onFailure(authDTO.getUsername(), clientIp);
+                throw e;
+            }
+            loginAttemptGuard.onSuccess(authDTO.getUsername());
 
             return jwtUtil.generateToken(authDTO.getUsername());
 
     }
 
+    /** Отзывает токен до истечения его срока; повторный вызов с тем же токеном ничего не меняет. */
+    public void logout(String token) {
+        DecodedJWT jwt = jwtUtil.verifyToken(token);
+        if (jwt.getId() == null) {
+            throw new IllegalArgumentException("Токен выдан до появления отзыва и истечет сам");
+        }
+        tokenDenyList.revoke(jwt.getId(), jwt.getExpiresAtAsInstant());
+    }
+
     public void register(AuthDTO authDTO) {
+        ShardContext.set(shardRouter.shardOfUser(authDTO.getUsername()));
 
         if (usersRepository.findByUsername(authDTO.getUsername()).isPresent()) {
             throw new IllegalArgumentException("Пользователь с таким именем уже существует");
@@ -147,6 +279,7 @@ public class UserService {
         user.setPassword("{bcrypt}" + passwordEncoder.encode(authDTO.getPassword()));
 
         usersRepository.save(user);
+        listingVersionService.touch(ListingVersionService.USERS);
 
     }
 
@@ -0,0 +1,123 @@
+package com.example.bankcards.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Адаптивный предел одновременных запросов на изменение данных (AIMD по задержке).
+ * Если запрос уложился в latency-slo, а предел был использован хотя бы наполовину, предел растет на 1;
+ * если не уложился - умножается на backoff-ratio, но не чаще раза за sampling-window: медленные ответы
+ * одного всплеска приходят пачкой, и без окна предел падал бы до минимума от одного эпизода.
+ * Запросы сверх предела отклоняются сразу,
+ * не занимая потоки и соединения с БД, пока она не справляется.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private final boolean enabled;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long sloNanos;
+
+    private final double backoffRatio;
+
+    private final long windowNanos;
+
+    /** Момент последнего уменьшения; меняется под монитором в release. */
+    private long lastDecreaseNanos;
+
+    private boolean decreased;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private volatile double limit;
+
+    private final Counter rejectedCounter;
+
+    private final Counter slowCounter;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(@Value("${bank.concurrency-limit.enabled:true}") boolean enabled,
+                                      @Value("${bank.concurrency-limit.initial-limit:20}") int initialLimit,
+                                      @Value("${bank.concurrency-limit.min-limit:4}") int minLimit,
+                                      @Value("${bank.concurrency-limit.max-limit:200}") int maxLimit,
+                                      @Value("${bank.concurrency-limit.latency-slo:500ms}") Duration latencySlo,
+                                      @Value("${bank.concurrency-limit.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${bank.concurrency-limit.sampling-window:1s}") Duration samplingWindow,
+                                      MeterRegistry meterRegistry) {
+        if (minLimit < 1 || minLimit > maxLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalStateException("Некорректные параметры bank.concurrency-limit");
+        }
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.sloNanos = latencySlo.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.windowNanos = samplingWindow.toNanos();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.rejectedCounter = Counter.builder("bank.concurrency.rejected")
+                .description("Запросы, отклоненные пределом одновременных изменений")
+                .register(meterRegistry);
+        this.slowCounter = Counter.builder("bank.concurrency.slow")
+                .description("Запросы, не уложившиеся в latency-slo")
+                .register(meterRegistry);
+        meterRegistry.gauge("bank.concurrency.limit", this, limiter -> limiter.getLimit());
+        meterRegistry.gauge("bank.concurrency.inflight", inflight);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /** Занимает место под запрос; false - предел исчерпан, запрос нужно отклонить. */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                rejectedCounter.increment();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Освобождает место и корректирует предел по длительности запроса. */
+    public void release(long latencyNanos) {
+        release(latencyNanos, System.nanoTime());
+    }
+
+    void release(long latencyNanos, long nowNanos) {
+        int inflightBefore = inflight.getAndDecrement();
+        synchronized (this) {
+            if (latencyNanos > sloNanos) {
+                slowCounter.increment();
+                if (!decreased || nowNanos - lastDecreaseNanos >= windowNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = nowNanos;
+                    decreased = true;
+                }
+            } else if (inflightBefore * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+}
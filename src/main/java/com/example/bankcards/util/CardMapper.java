@@ -4,6 +4,7 @@ import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.CardBalanceView;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -49,5 +50,16 @@ public class CardMapper {
 
    }
 
+    public CardDTO toDTO(CardBalanceView view, String ownerUsername) {
+        return new CardDTO(
+                CardMaskingUtil.getMaskedNumber(encryptionUtil.decrypt(view.getEncryptedNumber())),
+                ownerUsername,
+                view.getExpirationMonth(),
+                view.getExpirationYear(),
+                view.getStatus(),
+                view.getBalance()
+        );
+    }
+
 
 }
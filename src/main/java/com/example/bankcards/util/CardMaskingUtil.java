@@ -4,7 +4,12 @@ public class CardMaskingUtil {
 
     public static String getMaskedNumber(String number) {
         if (number == null || number.length() < 4) return "****";
-        return "**** **** **** " + number.substring(number.length() - 4);
+        return "**** **** **** " + getLastFour(number);
+    }
+
+    public static String getLastFour(String number) {
+        if (number == null || number.length() < 4) return null;
+        return number.substring(number.length() - 4);
     }
 
 }
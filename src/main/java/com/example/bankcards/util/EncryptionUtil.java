@@ -1,40 +1,131 @@
 package com.example.bankcards.util;
 
-import jakarta.annotation.PostConstruct;
-import org.springframework.beans.factory.annotation.Value;
+import com.example.bankcards.config.EncryptionProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Шифрование номеров карт с версионированием ключей. Новые значения шифруются текущим ключом
+ * и получают префикс версии ("v2:..."), значения без префикса относятся к исходному ключу (версия 0).
+ * Шифрование детерминированное, поэтому поиск карты идет по шифротексту; пока идет ротация,
+ * карта может быть зашифрована прежним ключом - для этого есть encryptWithOtherKeys.
+ */
 @Component
+@EnableConfigurationProperties(EncryptionProperties.class)
 public class EncryptionUtil {
 
     private static final String ALGORITHM = "AES";
-    @Value("${encryption.aes-key}")
-    private String key;
 
+    private static final String VERSION_PREFIX = "v";
+
+    private static final char VERSION_SEPARATOR = ':';
+
+    private final Map<Integer, SecretKeySpec> keyring = new TreeMap<>();
+
+    private final int currentVersion;
+
+    @Autowired
+    public EncryptionUtil(EncryptionProperties properties) {
+        if (properties.getAesKey() != null) {
+            keyring.put(0, new SecretKeySpec(properties.getAesKey().getBytes(), ALGORITHM));
+        }
+        properties.getKeys().forEach((version, key) -> {
+            if (version <= 0) {
+                throw new IllegalStateException("Версии ключей encryption.keys начинаются с 1, версия 0 - encryption.aes-key");
+            }
+            keyring.put(version, new SecretKeySpec(key.getBytes(), ALGORITHM));
+        });
+        if (!keyring.containsKey(properties.getCurrentVersion())) {
+            throw new IllegalStateException("Не задан ключ текущей версии " + properties.getCurrentVersion());
+        }
+        this.currentVersion = properties.getCurrentVersion();
+    }
+
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /** Префикс шифротекстов текущей версии; для версии 0 префикса нет. */
+    public String getCurrentPrefix() {
+        return prefixOf(currentVersion);
+    }
+
+    public boolean isCurrent(String encryptedData) {
+        return versionOf(encryptedData) == currentVersion;
+    }
 
     public String encrypt(String data) {
+        return encrypt(data, currentVersion);
+    }
+
+    public String decrypt(String encryptedData) {
+        int version = versionOf(encryptedData);
+        SecretKeySpec keySpec = keyring.get(version);
+        if (keySpec == null) {
+            throw new RuntimeException("Нет ключа версии " + version + " для расшифровки номера карты");
+        }
         try {
             Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(key.getBytes(), ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec);
-            return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes()));
+            cipher.init(Cipher.DECRYPT_MODE, keySpec);
+            String payload = encryptedData.substring(prefixOf(version).length());
+            return new String(cipher.doFinal(Base64.getDecoder().decode(payload)));
         } catch (Exception e) {
-            throw new RuntimeException("Ошибка при шифровании номера карты", e);
+            throw new RuntimeException("Ошибка при расшифровке номера карты", e);
         }
     }
 
-    public String decrypt(String encryptedData) {
+    /** Тот же номер, зашифрованный остальными ключами связки. Пусто, если ключ один. */
+    public List<String> encryptWithOtherKeys(String encryptedData) {
+        if (keyring.size() == 1) {
+            return List.of();
+        }
+        int version = versionOf(encryptedData);
+        String data = decrypt(encryptedData);
+        List<String> result = new ArrayList<>(keyring.size() - 1);
+        for (Integer other : keyring.keySet()) {
+            if (other != version) {
+                result.add(encrypt(data, other));
+            }
+        }
+        return result;
+    }
+
+    private String encrypt(String data, int version) {
         try {
             Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(key.getBytes(), ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, keySpec);
-            return new String(cipher.doFinal(Base64.getDecoder().decode(encryptedData)));
+            cipher.init(Cipher.ENCRYPT_MODE, keyring.get(version));
+            return prefixOf(version) + Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes()));
         } catch (Exception e) {
-            throw new RuntimeException("Ошибка при расшифровке номера карты", e);
+            throw new RuntimeException("Ошибка при шифровании номера карты", e);
+        }
+    }
+
+    private static String prefixOf(int version) {
+        return version == 0 ? "" : VERSION_PREFIX + version + VERSION_SEPARATOR;
+    }
+
+    private static int versionOf(String encryptedData) {
+        // в base64 нет ':', поэтому значение исходного ключа не спутать с версионированным
+        int separator = encryptedData.indexOf(VERSION_SEPARATOR);
+        if (separator < 0) {
+            return 0;
+        }
+        if (!encryptedData.startsWith(VERSION_PREFIX)) {
+            throw new RuntimeException("Неизвестный формат зашифрованного номера карты");
+        }
+        try {
+            return Integer.parseInt(encryptedData.substring(VERSION_PREFIX.length(), separator));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Неизвестный формат зашифрованного номера карты", e);
         }
     }
 }
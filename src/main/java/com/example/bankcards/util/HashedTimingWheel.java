@@ -0,0 +1,96 @@
+package com.example.bankcards.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Колесо таймеров: время делится на тики, задача кладется в ячейку (тик срока) mod wheel-size.
+ * Добавление - O(1) из любого потока через очередь, а advance() вызывается одним потоком-тикером
+ * и просматривает только ячейки прошедших тиков, поэтому тысячи сроков на одну минуту
+ * не требуют ни сортировки, ни отдельного таймера на каждую задачу.
+ * Задача в ячейке, срок которой дальше одного оборота колеса, остается там до своего оборота.
+ */
+public class HashedTimingWheel<T> {
+
+    private final long tickNanos;
+
+    private final long startNanos;
+
+    private final int mask;
+
+    private final List<ArrayDeque<Entry<T>>> buckets;
+
+    private final Queue<Entry<T>> added = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private long processedTick = -1;
+
+    /** wheelSize округляется вверх до степени двойки. */
+    public HashedTimingWheel(long tickNanos, int wheelSize, long startNanos) {
+        if (tickNanos <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Тик и размер колеса должны быть больше 0");
+        }
+        int buckets = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+        this.mask = buckets - 1;
+        this.buckets = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            this.buckets.add(new ArrayDeque<>());
+        }
+    }
+
+    public void schedule(T item, long deadlineNanos) {
+        long tick = Math.max(0, Math.floorDiv(deadlineNanos - startNanos + tickNanos - 1, tickNanos));
+        added.add(new Entry<>(item, tick));
+        size.incrementAndGet();
+    }
+
+    /** Задачи со сроком не позже nowNanos. Вызывается только потоком-тикером. */
+    public List<T> advance(long nowNanos) {
+        long targetTick = Math.floorDiv(nowNanos - startNanos, tickNanos);
+        List<T> expired = new ArrayList<>();
+
+        Entry<T> entry;
+        while ((entry = added.poll()) != null) {
+            if (entry.tick() <= Math.max(processedTick, targetTick)) {
+                expired.add(entry.item());
+            } else {
+                buckets.get((int) (entry.tick() & mask)).add(entry);
+            }
+        }
+
+        if (targetTick > processedTick) {
+            // за один вызов больше оборота колеса смотреть незачем - каждая ячейка уже пройдена
+            long from = Math.max(processedTick + 1, targetTick - mask);
+            for (long tick = from; tick <= targetTick; tick++) {
+                Iterator<Entry<T>> iterator = buckets.get((int) (tick & mask)).iterator();
+                while (iterator.hasNext()) {
+                    Entry<T> candidate = iterator.next();
+                    if (candidate.tick() <= targetTick) {
+                        expired.add(candidate.item());
+                        iterator.remove();
+                    }
+                }
+            }
+            processedTick = targetTick;
+        }
+
+        size.addAndGet(-expired.size());
+        return expired;
+    }
+
+    /** Число задач в колесе, включая еще не разложенные по ячейкам. */
+    public int size() {
+        return size.get();
+    }
+
+    private record Entry<T>(T item, long tick) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.bankcards.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор keyset-пагинации истории: позиция (createdAt, id) последней выданной строки.
+ */
+public class HistoryCursorUtil {
+
+    public record Position(Instant createdAt, long id) {
+    }
+
+    public static String encode(Instant createdAt, long id) {
+        String raw = createdAt.getEpochSecond() + "." + createdAt.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Position decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int colon = raw.indexOf(':');
+            int dot = raw.indexOf('.');
+            Instant createdAt = Instant.ofEpochSecond(Long.parseLong(raw.substring(0, dot)),
+                    Long.parseLong(raw.substring(dot + 1, colon)));
+            return new Position(createdAt, Long.parseLong(raw.substring(colon + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор истории");
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.repository.projection.ListingVersionView;
+
+public class ListingETagUtil {
+
+    public static String toETag(ListingVersionView version, int page, int size) {
+        long lastUpdated = version.getLastUpdated() != null ? version.getLastUpdated().toEpochMilli() : 0;
+        return "\"" + Long.toHexString(version.getRowCount())
+                + "-" + Long.toHexString(version.getMaxId())
+                + "-" + Long.toHexString(version.getVersionSum())
+                + "-" + Long.toHexString(lastUpdated)
+                + "-" + page + "-" + size + "\"";
+    }
+
+    /** ETag по счетчикам listing_versions (см. ListingVersionService). */
+    public static String toETag(int page, int size, long... versions) {
+        StringBuilder etag = new StringBuilder("\"v");
+        for (long version : versions) {
+            etag.append(Long.toHexString(version)).append('-');
+        }
+        return etag.append(page).append('-').append(size).append('"').toString();
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.config.RateLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты запросов пользователя по корзине токенов (bank.rate-limit.endpoints).
+ * Корзина хранит одно число - момент, когда она снова станет полной (виртуальное время GCRA),
+ * и обновляется через CAS без блокировок. Корзины лежат в ConcurrentHashMap по паре
+ * пользователь/эндпоинт; неиспользуемые удаляются по расписанию.
+ */
+@Component
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimiter {
+
+    private final boolean enabled;
+
+    private final List<Budget> budgets = new ArrayList<>();
+
+    private final long idleTimeoutNanos;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public RateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+        properties.getEndpoints().forEach((name, endpoint) -> {
+            if (endpoint.getCapacity() <= 0 || endpoint.getRefillPerSecond() <= 0) {
+                throw new IllegalStateException("Некорректный бюджет bank.rate-limit.endpoints." + name);
+            }
+            Counter throttled = Counter.builder("bank.ratelimit.throttled")
+                    .description("Запросы, отклоненные ограничением частоты")
+                    .tag("endpoint", name)
+                    .register(meterRegistry);
+            budgets.add(new Budget(name, endpoint, throttled));
+        });
+        meterRegistry.gaugeMapSize("bank.ratelimit.buckets", List.of(), buckets);
+    }
+
+    /**
+     * Списывает токен с корзины пользователя. Возвращает 0, если запрос разрешен,
+     * иначе - сколько наносекунд ждать до появления токена.
+     */
+    public long tryAcquire(String username, String method, String path) {
+        return tryAcquire(username, method, path, System.nanoTime());
+    }
+
+    long tryAcquire(String username, String method, String path, long now) {
+        if (!enabled || username == null) {
+            return 0;
+        }
+        Budget budget = findBudget(method, path);
+        if (budget == null) {
+            return 0;
+        }
+        Bucket bucket = buckets.computeIfAbsent(username + '|' + budget.name, key -> new Bucket(now));
+        long wait = bucket.tryAcquire(now, budget.intervalNanos, budget.burstNanos);
+        if (wait > 0) {
+            budget.throttled.increment();
+        }
+        return wait;
+    }
+
+    @Scheduled(fixedDelayString = "${bank.rate-limit.idle-timeout:PT10M}")
+    public void evictIdle() {
+        evictIdle(System.nanoTime());
+    }
+
+    void evictIdle(long now) {
+        buckets.values().removeIf(bucket -> now - bucket.fullAt.get() > idleTimeoutNanos);
+    }
+
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    private Budget findBudget(String method, String path) {
+        for (Budget budget : budgets) {
+            String expectedMethod = budget.endpoint.getMethod();
+            if ((expectedMethod == null || expectedMethod.equalsIgnoreCase(method))
+                    && pathMatcher.match(budget.endpoint.getPattern(), path)) {
+                return budget;
+            }
+        }
+        return null;
+    }
+
+    private static final class Budget {
+
+        private final String name;
+
+        private final RateLimitProperties.Endpoint endpoint;
+
+        private final Counter throttled;
+
+        /** Время пополнения одного токена. */
+        private final long intervalNanos;
+
+        /** Насколько момент заполнения может опережать текущее время: емкость корзины во времени. */
+        private final long burstNanos;
+
+        private Budget(String name, RateLimitProperties.Endpoint endpoint, Counter throttled) {
+            this.name = name;
+            this.endpoint = endpoint;
+            this.throttled = throttled;
+            this.intervalNanos = (long) (1_000_000_000L / endpoint.getRefillPerSecond());
+            this.burstNanos = intervalNanos * endpoint.getCapacity();
+        }
+    }
+
+    private static final class Bucket {
+
+        /** Момент, когда корзина снова будет полной; в прошлом - корзина полна. */
+        private final AtomicLong fullAt;
+
+        private Bucket(long now) {
+            this.fullAt = new AtomicLong(now);
+        }
+
+        private long tryAcquire(long now, long intervalNanos, long burstNanos) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long ahead = next - now;
+                if (ahead > burstNanos) {
+                    return ahead - burstNanos;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
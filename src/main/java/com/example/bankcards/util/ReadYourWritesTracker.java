@@ -0,0 +1,52 @@
+package com.example.bankcards.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Запоминает пользователей, которые только что изменили свои данные, чтобы их чтения
+ * в течение короткого окна шли на основную БД, а не на отстающую реплику.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    private final long windowNanos;
+
+    public ReadYourWritesTracker(@Value("${bank.datasource.replicas.read-your-writes-window:5s}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void recordWrite(String username) {
+        if (username != null) {
+            pinnedUntil.put(username, System.nanoTime() + windowNanos);
+        }
+    }
+
+    public boolean isPinnedToPrimary(String username) {
+        if (username == null) {
+            return false;
+        }
+        Long deadline = pinnedUntil.get(username);
+        if (deadline == null) {
+            return false;
+        }
+        if (deadline - System.nanoTime() > 0) {
+            return true;
+        }
+        pinnedUntil.remove(username, deadline);
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${bank.datasource.replicas.read-your-writes-window:PT5S}")
+    public void evictExpired() {
+        long now = System.nanoTime();
+        pinnedUntil.entrySet().removeIf(entry -> entry.getValue() - now <= 0);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.bankcards.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных чтений: первый вызов с ключом выполняет загрузку,
+ * остальные ждут и получают тот же результат или то же исключение. Готовый результат еще
+ * window-наносекунд отдается новым вызовам, поэтому «залп» запросов, пришедших чуть позже первого,
+ * тоже не идет в БД. Ошибки не запоминаются: после неудачи следующий вызов загружает заново.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    private final long windowNanos;
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder shared = new LongAdder();
+
+    public SingleFlight(long windowNanos) {
+        this.windowNanos = Math.max(0, windowNanos);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        while (true) {
+            Flight<V> flight = flights.get(key);
+            if (flight != null) {
+                if (!flight.isDone() || flight.isFresh(System.nanoTime(), windowNanos)) {
+                    shared.increment();
+                    return join(flight);
+                }
+                flights.remove(key, flight);
+                continue;
+            }
+
+            Flight<V> mine = new Flight<>();
+            if (flights.putIfAbsent(key, mine) != null) {
+                continue;
+            }
+            loads.increment();
+            try {
+                V value = loader.get();
+                mine.finish(value, System.nanoTime());
+                if (windowNanos == 0) {
+                    flights.remove(key, mine);
+                }
+                return value;
+            } catch (RuntimeException | Error e) {
+                flights.remove(key, mine);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /** Убирает результаты, у которых вышло окно. */
+    public void evictExpired() {
+        long now = System.nanoTime();
+        flights.values().removeIf(flight -> flight.isDone() && !flight.isFresh(now, windowNanos));
+    }
+
+    /** Сколько раз загрузка действительно выполнялась. */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /** Сколько вызовов получили чужой результат без загрузки. */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    public int size() {
+        return flights.size();
+    }
+
+    private V join(Flight<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Flight<V> extends CompletableFuture<V> {
+
+        private volatile long completedAtNanos;
+
+        void finish(V value, long nowNanos) {
+            completedAtNanos = nowNanos;
+            complete(value);
+        }
+
+        boolean isFresh(long nowNanos, long windowNanos) {
+            return !isCompletedExceptionally() && nowNanos - completedAtNanos < windowNanos;
+        }
+    }
+}
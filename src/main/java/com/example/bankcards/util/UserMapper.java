@@ -2,9 +2,11 @@ package com.example.bankcards.util;
 
 import com.example.bankcards.dto.AuthDTO;
 import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserSummaryDTO;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.repository.RolesRepository;
+import com.example.bankcards.repository.projection.UserSummaryView;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
@@ -28,6 +30,10 @@ public class UserMapper {
         );
     }
 
+    public UserSummaryDTO toDTO(UserSummaryView view) {
+        return new UserSummaryDTO(view.getUsername(), view.getRole(), view.getCardCount());
+    }
+
     public User fromDTO(AuthDTO dto) {
         User user = new User();
         user.setUsername(dto.getUsername());
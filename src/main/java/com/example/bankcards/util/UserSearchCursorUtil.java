@@ -0,0 +1,73 @@
+package com.example.bankcards.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор поиска пользователей: ключ сортировки (tier, длина имени, имя) последней
+ * выданной строки и сколько строк уже выдано (для общего лимита результатов).
+ * Курсор подписан HMAC вместе со строкой поиска: клиент не может уменьшить served, чтобы обойти
+ * лимит, или подставить курсор от другого запроса.
+ */
+@Component
+public class UserSearchCursorUtil {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final char SIGNATURE_SEPARATOR = '.';
+
+    public record Position(int tier, int length, String username, int served) {
+    }
+
+    public static final Position START = new Position(-1, 0, "", 0);
+
+    private final SecretKeySpec key;
+
+    @Autowired
+    public UserSearchCursorUtil(@Value("${bank.users.search.cursor-secret:${jwt_secret}}") String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+    }
+
+    public String encode(String query, int tier, String username, int served) {
+        String raw = tier + ":" + username.length() + ":" + served + ":" + username;
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(raw.getBytes(StandardCharsets.UTF_8))
+                + SIGNATURE_SEPARATOR + encoder.encodeToString(sign(query, raw));
+    }
+
+    public Position decode(String query, String cursor) {
+        try {
+            int separator = cursor.indexOf(SIGNATURE_SEPARATOR);
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.substring(0, separator)), StandardCharsets.UTF_8);
+            byte[] signature = Base64.getUrlDecoder().decode(cursor.substring(separator + 1));
+            if (!MessageDigest.isEqual(signature, sign(query, raw))) {
+                throw new IllegalArgumentException("Подпись курсора не совпадает");
+            }
+            String[] parts = raw.split(":", 4);
+            return new Position(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[3],
+                    Integer.parseInt(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор поиска");
+        }
+    }
+
+    private byte[] sign(String query, String raw) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            mac.update(query.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(raw.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Ошибка подписи курсора поиска", e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.service.PendingTransferProcessor;
+import com.example.bankcards.service.UserDeletionService;
+import com.example.bankcards.util.ReadYourWritesTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.PropertyPlaceholderHelper;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * fixedDelayString разбирается Spring только как ISO-8601 (PT5S) или число миллисекунд;
+ * значение вида "5s" роняет старт контекста. Проверяем и application.yml, и значения по умолчанию.
+ */
+class ScheduledIntervalsTest {
+
+    private static final PropertyPlaceholderHelper PLACEHOLDERS = new PropertyPlaceholderHelper("${", "}", ":", true);
+
+    @Test
+    void replicaIntervals_AreParseable() {
+        assertIntervalsParse(ReplicaLagMonitor.class);
+        assertIntervalsParse(ReadYourWritesTracker.class);
+    }
+
+    @Test
+    void asyncTransferPurgeInterval_IsParseable() {
+        assertIntervalsParse(PendingTransferProcessor.class);
+    }
+
+    @Test
+    void userDeletionResumeInterval_IsParseable() {
+        assertIntervalsParse(UserDeletionService.class);
+    }
+
+    static void assertIntervalsParse(Class<?> type) {
+        Properties configured = applicationProperties();
+        int checked = 0;
+        for (Method method : type.getDeclaredMethods()) {
+            Scheduled scheduled = method.getAnnotation(Scheduled.class);
+            if (scheduled == null || scheduled.fixedDelayString().isEmpty()) {
+                continue;
+            }
+            String expression = scheduled.fixedDelayString();
+            String where = type.getSimpleName() + "." + method.getName();
+            assertParses(where + " (application.yml)", PLACEHOLDERS.replacePlaceholders(expression, configured));
+            assertParses(where + " (по умолчанию)", PLACEHOLDERS.replacePlaceholders(expression, new Properties()));
+            checked++;
+        }
+        assertTrue(checked > 0, "в " + type.getSimpleName() + " нет @Scheduled(fixedDelayString)");
+    }
+
+    private static void assertParses(String where, String value) {
+        assertDoesNotThrow(() -> toDuration(value), where + ": «" + value + "» не разбирается как интервал");
+    }
+
+    /** Тот же разбор, что в ScheduledAnnotationBeanPostProcessor. */
+    private static Duration toDuration(String value) {
+        if (value.startsWith("P") || value.startsWith("-P")) {
+            return Duration.parse(value);
+        }
+        return Duration.ofMillis(Long.parseLong(value));
+    }
+
+    private static Properties applicationProperties() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"));
+        return yaml.getObject();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.bankcards.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.PropertyPlaceholderHelper;
+
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Блокировка входа по IP считает адрес из X-Forwarded-For, поэтому заголовку можно верить только
+ * от доверенных прокси: внешний адрес не должен попадать в internal-proxies по умолчанию.
+ */
+class TrustedProxiesTest {
+
+    @Test
+    void forwardedHeaders_TrustOnlyLocalAndPrivateProxiesByDefault() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"));
+        Properties properties = yaml.getObject();
+        assertNotNull(properties);
+
+        assertEquals("native", properties.getProperty("server.forward-headers-strategy"));
+        String internalProxies = new PropertyPlaceholderHelper("${", "}", ":", true)
+                .replacePlaceholders(properties.getProperty("server.tomcat.remoteip.internal-proxies"), new Properties());
+        Pattern trusted = Pattern.compile(internalProxies);
+
+        for (String proxy : new String[]{"10.0.0.7", "192.168.1.20", "172.16.0.3", "172.31.255.1", "127.0.0.1", "::1"}) {
+            assertTrue(trusted.matcher(proxy).matches(), proxy);
+        }
+        for (String client : new String[]{"8.8.8.8", "172.32.0.1", "11.0.0.1", "100.64.0.1"}) {
+            assertFalse(trusted.matcher(client).matches(), client);
+        }
+    }
+}
@@ -5,7 +5,10 @@ import com.example.bankcards.exception.GlobalExceptionHandler;
 import com.example.bankcards.security.JWTFilter;
 import com.example.bankcards.security.JWTUtil;
 
+import com.example.bankcards.service.ShardRouter;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.util.AdaptiveConcurrencyLimiter;
+import com.example.bankcards.util.RateLimiter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.junit.jupiter.api.Test;
@@ -21,6 +24,7 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -36,6 +40,15 @@ class AuthControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private ShardRouter shardRouter;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @MockBean
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
     @MockBean
     private JWTFilter jwtFilter;
 
@@ -63,7 +76,7 @@ class AuthControllerTest {
     void login_success() throws Exception {
         AuthDTO dto = new AuthDTO("admin", "admin");
 
-        when(userService.login(dto)).thenReturn("fake-jwt-token");
+        when(userService.login(eq(dto), any())).thenReturn("fake-jwt-token");
 
         mockMvc.perform(post("/bank/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -73,4 +86,13 @@ class AuthControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void logout_success() throws Exception {
+        mockMvc.perform(post("/bank/auth/logout")
+                        .header("Authorization", "Bearer fake-jwt-token")
+                        .with(csrf())
+                )
+                .andExpect(status().isOk());
+    }
 }
@@ -2,11 +2,30 @@ package com.example.bankcards.controller;
 
 
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardStatsDTO;
+import com.example.bankcards.dto.PortfolioDTO;
+import com.example.bankcards.dto.ScheduledTransferDTO;
 import com.example.bankcards.exception.GlobalExceptionHandler;
+import com.example.bankcards.dto.TransferHistoryDTO;
+import com.example.bankcards.dto.TransferStatusDTO;
+import com.example.bankcards.entity.enums.ScheduleFrequency;
+import com.example.bankcards.entity.enums.ScheduledTransferStatus;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.service.TransferDispatcher;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.ScheduledTransferService;
+import com.example.bankcards.service.ShardRouter;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.CardReadCoalescer;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.CardStatsService;
 import com.example.bankcards.security.JWTFilter;
 import com.example.bankcards.security.JWTUtil;
+import com.example.bankcards.util.AdaptiveConcurrencyLimiter;
+import com.example.bankcards.util.RateLimiter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +43,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.math.BigDecimal;
 
 import java.util.List;
+import java.util.Map;
 
 
 
@@ -44,6 +64,33 @@ public class CardsControllerTest {
     @MockBean
     private CardService cardService;
 
+    @MockBean
+    private CardReadCoalescer cardReadCoalescer;
+
+    @MockBean
+    private AsyncTransferService asyncTransferService;
+
+    @MockBean
+    private CardStatsService cardStatsService;
+
+    @MockBean
+    private TransferDispatcher transferDispatcher;
+
+    @MockBean
+    private ScheduledTransferService scheduledTransferService;
+
+    @MockBean
+    private IdempotencyService idempotencyService;
+
+    @MockBean
+    private ShardRouter shardRouter;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @MockBean
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
     @MockBean
     private JWTFilter jwtFilter;
 
@@ -53,6 +100,15 @@ public class CardsControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    /** Мок фильтра по умолчанию обрывает цепочку, и запрос не доходит до контроллера. */
+    @BeforeEach
+    void passJwtFilterThrough() throws Exception {
+        doAnswer(invocation -> {
+            invocation.<FilterChain>getArgument(2).doFilter(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(jwtFilter).doFilter(any(), any(), any());
+    }
+
 
     // ADMIN
 
@@ -82,7 +138,7 @@ public class CardsControllerTest {
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(dto))
                         .with(csrf()))
-                .andExpect(status().isOk());
+                .andExpect(status().isCreated());
     }
 
     @Test
@@ -104,7 +160,7 @@ public class CardsControllerTest {
 
         mockMvc.perform(delete("/bank/cards/1111222233334444")
                         .with(csrf()))
-                .andExpect(status().isOk());
+                .andExpect(status().isNoContent());
     }
 
     @Test
@@ -120,6 +176,26 @@ public class CardsControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void searchCards_success() throws Exception {
+        when(cardService.searchCards("4444", "user", null)).thenReturn(List.of(new CardDTO()));
+
+        mockMvc.perform(get("/bank/cards/search")
+                        .param("last4", "4444")
+                        .param("owner", "user"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getStats_success() throws Exception {
+        when(cardStatsService.getStats()).thenReturn(new CardStatsDTO(0, BigDecimal.ZERO, Map.of()));
+
+        mockMvc.perform(get("/bank/cards/stats"))
+                .andExpect(status().isOk());
+    }
+
     // USER
 
     @Test
@@ -127,15 +203,38 @@ public class CardsControllerTest {
     void getUserCards_success() throws Exception {
         CardDTO card = new CardDTO();
         Page<CardDTO> page = new PageImpl<>(List.of(card));
-        when(cardService.getUserCards(eq("user"), anyInt(), anyInt())).thenReturn(page);
+        when(cardReadCoalescer.getUserCards(eq("user"), anyInt(), anyInt()))
+                .thenReturn(new CardReadCoalescer.UserCards("\"v2\"", page));
 
         mockMvc.perform(get("/bank/cards")
                         .param("page", "0")
                         .param("size", "6"))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"v2\""));
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getUserCards_notModifiedByETagOfTheSharedRead() throws Exception {
+        when(cardReadCoalescer.getUserCards(eq("user"), anyInt(), anyInt()))
+                .thenReturn(new CardReadCoalescer.UserCards("\"v2\"", new PageImpl<>(List.of())));
+
+        mockMvc.perform(get("/bank/cards")
+                        .header("If-None-Match", "\"v2\""))
+                .andExpect(status().isNotModified());
     }
 
 
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getPortfolio_success() throws Exception {
+        PortfolioDTO portfolio = new PortfolioDTO("user", List.of(new CardDTO()), 1, 1, BigDecimal.TEN, BigDecimal.TEN);
+        when(cardService.getPortfolio("user")).thenReturn(portfolio);
+
+        mockMvc.perform(get("/bank/cards/portfolio"))
+                .andExpect(status().isOk());
+    }
+
     @Test
     @WithMockUser(username = "user", roles = {"USER"})
     void requestBlockCard_success() throws Exception {
@@ -150,7 +249,7 @@ public class CardsControllerTest {
     @Test
     @WithMockUser(username = "user", roles = {"USER"})
     void transferBetweenCards_success() throws Exception {
-        doNothing().when(cardService)
+        doNothing().when(transferDispatcher)
                 .transfer(eq("user"), anyString(), anyString(), any(BigDecimal.class));
 
         mockMvc.perform(post("/bank/cards/transfer")
@@ -160,4 +259,78 @@ public class CardsControllerTest {
                         .with(csrf()))
                 .andExpect(status().isOk());
     }
-}
\ No newline at end of file
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void submitTransfer_success() throws Exception {
+        when(asyncTransferService.submit(eq("user"), anyString(), anyString(), any(BigDecimal.class)))
+                .thenReturn(new TransferStatusDTO(1L, BigDecimal.TEN, TransferStatus.PENDING, null, null, null));
+
+        mockMvc.perform(post("/bank/cards/transfer/async")
+                        .param("fromCard", "1111222233334444")
+                        .param("toCard", "5555666677778888")
+                        .param("amount", "10")
+                        .with(csrf()))
+                .andExpect(status().isAccepted());
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void transfer_withIdempotencyKey() throws Exception {
+        when(idempotencyService.isEnabled()).thenReturn(true);
+        when(idempotencyService.execute(eq("user"), eq("key-1"), anyString(), anyString(), any()))
+                .thenReturn(new IdempotencyService.Result("Перевод выполнен успешно", true));
+
+        mockMvc.perform(post("/bank/cards/transfer")
+                        .param("fromCard", "1111222233334444")
+                        .param("toCard", "5555666677778888")
+                        .param("amount", "10")
+                        .header("Idempotency-Key", "key-1")
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.message").value("Перевод выполнен успешно"));
+
+        verify(idempotencyService).execute(eq("user"), eq("key-1"), eq("1111222233334444|5555666677778888|10"),
+                anyString(), any());
+        verify(transferDispatcher, never()).transfer(any(), any(), any(), any());
+        verify(transferDispatcher, never()).transfer(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void createScheduledTransfer_success() throws Exception {
+        when(scheduledTransferService.create(eq("user"), anyString(), anyString(), any(BigDecimal.class),
+                eq("MONTHLY"), any(), any()))
+                .thenReturn(new ScheduledTransferDTO(1L, "**** **** **** 4444", "**** **** **** 8888",
+                        BigDecimal.TEN, ScheduleFrequency.MONTHLY, ScheduledTransferStatus.ACTIVE,
+                        null, null, null, null));
+
+        mockMvc.perform(post("/bank/cards/transfer/scheduled")
+                        .param("fromCard", "1111222233334444")
+                        .param("toCard", "5555666677778888")
+                        .param("amount", "10")
+                        .param("frequency", "MONTHLY")
+                        .param("startAt", "2026-11-01T09:00:00Z")
+                        .with(csrf()))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void cancelScheduledTransfer_success() throws Exception {
+        mockMvc.perform(delete("/bank/cards/transfer/scheduled/1")
+                        .with(csrf()))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getTransferHistory_success() throws Exception {
+        when(cardService.getTransferHistory(eq("user"), eq("1111222233334444"), any(), eq(20)))
+                .thenReturn(new TransferHistoryDTO(List.of(), null));
+
+        mockMvc.perform(get("/bank/cards/1111222233334444/history"))
+                .andExpect(status().isOk());
+    }
+}
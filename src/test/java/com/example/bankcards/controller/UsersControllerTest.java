@@ -2,11 +2,16 @@ package com.example.bankcards.controller;
 
 
 import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserSearchDTO;
+import com.example.bankcards.dto.UserSummaryDTO;
 import com.example.bankcards.exception.GlobalExceptionHandler;
 import com.example.bankcards.security.JWTFilter;
 import com.example.bankcards.security.JWTUtil;
 
+import com.example.bankcards.service.ShardRouter;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.util.AdaptiveConcurrencyLimiter;
+import com.example.bankcards.util.RateLimiter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.junit.jupiter.api.Test;
@@ -41,6 +46,15 @@ public class UsersControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private ShardRouter shardRouter;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @MockBean
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
     @MockBean
     private JWTFilter jwtFilter;
 
@@ -54,14 +68,23 @@ public class UsersControllerTest {
     @Test
     @WithMockUser(username = "admin", roles = {"ADMIN"})
     void getAllUsers_success() throws Exception {
-        UserDTO user = new UserDTO();
-        Page<UserDTO> page = new PageImpl<>(List.of(user));
+        UserSummaryDTO user = new UserSummaryDTO();
+        Page<UserSummaryDTO> page = new PageImpl<>(List.of(user));
         when(userService.getAllUsers(0, 6)).thenReturn(page);
 
         mockMvc.perform(get("/bank/users"))
                 .andExpect(status().isOk());
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void searchUsers_success() throws Exception {
+        when(userService.searchUsers("ali", null, 20)).thenReturn(new UserSearchDTO(List.of(), null));
+
+        mockMvc.perform(get("/bank/users/search").param("query", "ali"))
+                .andExpect(status().isOk());
+    }
+
     @Test
     @WithMockUser(username = "admin", roles = {"ADMIN"})
     void getUser_success() throws Exception {
@@ -0,0 +1,52 @@
+package com.example.bankcards.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Размер и время сериализации страницы /bank/cards/all и /bank/users: PageImpl стандартным
+ * ObjectMapper против PageDTO с настройками приложения. Не входит в обычную сборку,
+ * запуск: mvn test -Pperf -Dtest=PageSerializationBenchmark
+ */
+@Tag("perf")
+class PageSerializationBenchmark {
+
+    private static final int WARMUP = 5_000;
+
+    private static final int ITERATIONS = 20_000;
+
+    private final ObjectMapper defaultMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final ObjectMapper tunedMapper = PageSerializationTest.tunedMapper();
+
+    @Test
+    void allCardsPage() throws Exception {
+        report("/bank/cards/all", PageSerializationTest.cardsPage(20));
+    }
+
+    @Test
+    void usersPage() throws Exception {
+        report("/bank/users", PageSerializationTest.usersPage(20));
+    }
+
+    private <T> void report(String endpoint, Page<T> page) throws Exception {
+        PageDTO<T> envelope = PageDTO.of(page);
+        System.out.printf("%s: PageImpl %d bytes, %d ns/page; PageDTO %d bytes, %d ns/page%n", endpoint,
+                defaultMapper.writeValueAsBytes(page).length, nanosPerPage(defaultMapper, page),
+                tunedMapper.writeValueAsBytes(envelope).length, nanosPerPage(tunedMapper, envelope));
+    }
+
+    private long nanosPerPage(ObjectMapper mapper, Object value) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.config.JacksonConfig;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageSerializationTest {
+
+    private ObjectMapper defaultMapper;
+
+    private ObjectMapper tunedMapper;
+
+    @BeforeEach
+    void setUp() {
+        defaultMapper = Jackson2ObjectMapperBuilder.json().build();
+        tunedMapper = tunedMapper();
+    }
+
+    @Test
+    void pageDTO_writesCompactEnvelopeWithPlainStringBalances() throws Exception {
+        JsonNode json = tunedMapper.readTree(tunedMapper.writeValueAsString(PageDTO.of(cardsPage(1))));
+
+        assertFalse(json.has("pageable"));
+        assertFalse(json.has("sort"));
+        assertEquals(100, json.get("totalElements").asLong());
+        assertEquals("1000000.50", json.get("content").get(0).get("balance").textValue());
+    }
+
+    @Test
+    void allCardsPage_envelopeHasOnlyPagingFieldsAndIsSmaller() throws Exception {
+        assertCompactEnvelope(cardsPage(20));
+    }
+
+    @Test
+    void usersPage_envelopeHasOnlyPagingFieldsAndIsSmaller() throws Exception {
+        assertCompactEnvelope(usersPage(20));
+    }
+
+    private <T> void assertCompactEnvelope(Page<T> page) throws Exception {
+        byte[] pageBytes = defaultMapper.writeValueAsBytes(page);
+        byte[] envelopeBytes = tunedMapper.writeValueAsBytes(PageDTO.of(page));
+
+        JsonNode json = tunedMapper.readTree(envelopeBytes);
+        List<String> fields = new ArrayList<>();
+        json.fieldNames().forEachRemaining(fields::add);
+        assertEquals(List.of("content", "page", "size", "totalElements", "totalPages"), fields);
+        assertEquals(page.getContent().size(), json.get("content").size());
+        assertEquals(5, json.get("totalPages").asInt());
+
+        assertTrue(defaultMapper.readTree(pageBytes).has("pageable"));
+        assertTrue(envelopeBytes.length < pageBytes.length);
+    }
+
+    /** ObjectMapper с настройками приложения (JacksonConfig). */
+    static ObjectMapper tunedMapper() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        JacksonConfig.bankJsonCustomizer().customize(builder);
+        return builder.build();
+    }
+
+    static Page<UserDTO> usersPage(int size) {
+        List<UserDTO> users = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            users.add(new UserDTO("user" + i, "{bcrypt}$2a$10$Ta0t5d7Q.1crlzn7z8DQ..t200pKffD8nPkg9erwUGILKcmnQEUwO", "ROLE_USER"));
+        }
+        return new PageImpl<>(users, PageRequest.of(0, size, Sort.by("id").descending()), 100);
+    }
+
+    static Page<CardDTO> cardsPage(int size) {
+        List<CardDTO> cards = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            cards.add(new CardDTO("111122223333" + String.format("%04d", i), "user" + i, 12, 2030,
+                    CardStatus.ACTIVE, new BigDecimal("1000000.50")));
+        }
+        return new PageImpl<>(cards, PageRequest.of(0, size, Sort.by("id").descending()), 100);
+    }
+}
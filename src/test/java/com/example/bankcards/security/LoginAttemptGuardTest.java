@@ -0,0 +1,104 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.LoginLockedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginAttemptGuardTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /** nanoTime может быть отрицательным - проверяем, что отсчет от него не ломается. */
+    private static final long START = -1_000 * SECOND;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private LoginAttemptGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new LoginAttemptGuard(true, 3, 10, Duration.ofSeconds(30), Duration.ofMinutes(15),
+                Duration.ofMinutes(15), 100, meterRegistry);
+    }
+
+    @Test
+    void checkAllowed_LocksUserAfterThresholdAndDoublesLockout() {
+        for (int i = 0; i < 2; i++) {
+            guard.onFailure("alice", "10.0.0.1", START);
+        }
+        assertDoesNotThrow(() -> guard.checkAllowed("alice", "10.0.0.1", START));
+
+        guard.onFailure("alice", "10.0.0.1", START);
+        LoginLockedException first = assertThrows(LoginLockedException.class,
+                () -> guard.checkAllowed("alice", "10.0.0.2", START));
+        assertEquals(30, first.getRetryAfterSeconds());
+
+        guard.onFailure("alice", "10.0.0.1", START + 31 * SECOND);
+        LoginLockedException second = assertThrows(LoginLockedException.class,
+                () -> guard.checkAllowed("ALICE", "10.0.0.3", START + 31 * SECOND));
+        assertEquals(60, second.getRetryAfterSeconds());
+
+        assertEquals(2, meterRegistry.counter("bank.auth.login.lockouts").count());
+        assertEquals(2, meterRegistry.counter("bank.auth.login.blocked").count());
+    }
+
+    @Test
+    void checkAllowed_LocksIpAcrossUsernames() {
+        for (int i = 0; i < 10; i++) {
+            guard.onFailure("user" + i, "10.0.0.9", START);
+        }
+
+        assertThrows(LoginLockedException.class, () -> guard.checkAllowed("fresh", "10.0.0.9", START));
+        assertDoesNotThrow(() -> guard.checkAllowed("fresh", "10.0.0.8", START));
+    }
+
+    @Test
+    void onSuccess_ResetsUserCounter() {
+        guard.onFailure("bob", "10.0.0.1", START);
+        guard.onFailure("bob", "10.0.0.1", START);
+        guard.onSuccess("bob");
+        guard.onFailure("bob", "10.0.0.1", START);
+
+        assertDoesNotThrow(() -> guard.checkAllowed("bob", "10.0.0.1", START));
+    }
+
+    @Test
+    void evictExpired_DropsOldUnlockedEntries() {
+        guard.onFailure("carol", "10.0.0.1", START);
+
+        guard.evictExpired(START + TimeUnit.MINUTES.toNanos(16));
+
+        assertEquals(0, guard.trackedCount());
+    }
+
+    @Test
+    void onFailure_KeepsTrackedEntriesBounded() {
+        for (int i = 0; i < 500; i++) {
+            guard.onFailure("user" + i, null, START);
+        }
+
+        assertTrue(guard.trackedCount() <= 100);
+    }
+
+    @Test
+    void onFailure_EvictsLeastRecentlySeenKeyWhenFull() {
+        for (int i = 0; i < 3; i++) {
+            guard.onFailure("alice", null, START);
+        }
+        for (int i = 0; i < 150; i++) {
+            guard.onFailure("user" + i, null, START);
+            // заблокированный ключ проверяется при каждой попытке входа и остается свежим
+            assertThrows(LoginLockedException.class, () -> guard.checkAllowed("alice", null, START));
+        }
+
+        assertEquals(100, guard.trackedCount());
+        assertEquals(51, meterRegistry.counter("bank.auth.login.evicted").count());
+    }
+}
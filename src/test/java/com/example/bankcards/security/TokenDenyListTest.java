@@ -0,0 +1,111 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokensRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenDenyListTest {
+
+    @Mock
+    private RevokedTokensRepository revokedTokensRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TokenDenyList denyList;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        denyList = new TokenDenyList(revokedTokensRepository, transactionManager, new SimpleMeterRegistry(), 1000, 0.01,
+                Duration.ofMinutes(1));
+    }
+
+    @Test
+    void revoke_PersistsAndRejectsTokenImmediately() {
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(1));
+
+        denyList.revoke("jti-1", expiresAt);
+
+        verify(revokedTokensRepository).insertIfAbsent("jti-1", expiresAt);
+        assertTrue(denyList.isRevoked("jti-1"));
+        assertFalse(denyList.isRevoked("jti-2"));
+        assertFalse(denyList.isRevoked(null));
+    }
+
+    @Test
+    void refresh_LoadsRevocationsFromOtherNodes() {
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(1));
+        when(revokedTokensRepository.findActiveRevokedAfter(any(), eq(0L), any(), any()))
+                .thenReturn(List.of(new RevokedToken(5L, "remote", expiresAt, Instant.now())));
+
+        denyList.refresh();
+
+        assertTrue(denyList.isRevoked("remote"));
+    }
+
+    @Test
+    void refresh_RereadsOverlapWindowBeforeLastSeen() {
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(1));
+        Instant revokedAt = Instant.parse("2026-01-01T10:00:00Z");
+        when(revokedTokensRepository.findActiveRevokedAfter(any(), anyLong(), any(), any()))
+                .thenReturn(List.of(new RevokedToken(500L, "a", expiresAt, revokedAt)));
+        denyList.refresh();
+
+        denyList.refresh();
+
+        // строка с меньшим id, закоммиченная позже, все еще попадает в окно
+        verify(revokedTokensRepository).findActiveRevokedAfter(eq(revokedAt.minus(Duration.ofMinutes(1))), eq(0L),
+                any(), any());
+    }
+
+    @Test
+    void refresh_DoesNotBlockRevokeWhileQuerying() throws Exception {
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(1));
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(revokedTokensRepository.findActiveRevokedAfter(any(), anyLong(), any(), any())).thenAnswer(invocation -> {
+            querying.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+        Thread poller = new Thread(denyList::refresh);
+        poller.start();
+        assertTrue(querying.await(5, TimeUnit.SECONDS));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> denyList.revoke("local", expiresAt));
+
+        release.countDown();
+        poller.join();
+        assertTrue(denyList.isRevoked("local"));
+    }
+
+    @Test
+    void prune_ForgetsExpiredTokens() {
+        denyList.revoke("expired", Instant.now().minusSeconds(1));
+        denyList.revoke("active", Instant.now().plus(Duration.ofHours(1)));
+
+        denyList.prune();
+
+        assertFalse(denyList.isRevoked("expired"));
+        assertTrue(denyList.isRevoked("active"));
+        verify(revokedTokensRepository).deleteExpired(any());
+    }
+}
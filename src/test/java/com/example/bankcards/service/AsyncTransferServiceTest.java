@@ -0,0 +1,120 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferStatusDTO;
+import com.example.bankcards.entity.PendingTransfer;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.exception.TransferNotFoundException;
+import com.example.bankcards.repository.PendingTransfersRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AsyncTransferServiceTest {
+
+    @InjectMocks
+    private AsyncTransferService asyncTransferService;
+
+    @Mock
+    private PendingTransfersRepository pendingTransfersRepository;
+
+    @Mock
+    private PendingTransferProcessor pendingTransferProcessor;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void submit_StoresPendingTransferAndWakesProcessor() {
+        when(pendingTransferProcessor.isEnabled()).thenReturn(true);
+        when(encryptionUtil.encrypt("from")).thenReturn("encryptedFrom");
+        when(encryptionUtil.encrypt("to")).thenReturn("encryptedTo");
+        when(pendingTransfersRepository.save(any(PendingTransfer.class))).thenAnswer(invocation -> {
+            PendingTransfer transfer = invocation.getArgument(0);
+            transfer.setId(7L);
+            return transfer;
+        });
+
+        TransferStatusDTO result = asyncTransferService.submit("user1", "from", "to", BigDecimal.TEN);
+
+        ArgumentCaptor<PendingTransfer> saved = ArgumentCaptor.forClass(PendingTransfer.class);
+        verify(pendingTransfersRepository).save(saved.capture());
+        assertEquals("encryptedFrom", saved.getValue().getFromCardEncrypted());
+        assertEquals(7L, result.getId());
+        assertEquals(TransferStatus.PENDING, result.getStatus());
+        verify(pendingTransferProcessor).wakeUp();
+        verifyNoInteractions(cardService);
+    }
+
+    @Test
+    void submit_ThrowsOnNonPositiveAmount() {
+        when(pendingTransferProcessor.isEnabled()).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> asyncTransferService.submit("user1", "from", "to", BigDecimal.ZERO));
+        verify(pendingTransfersRepository, never()).save(any());
+    }
+
+    @Test
+    void getStatus_ThrowsForForeignTransfer() {
+        when(pendingTransfersRepository.findByIdAndUsername(7L, "user2")).thenReturn(Optional.empty());
+
+        assertThrows(TransferNotFoundException.class, () -> asyncTransferService.getStatus("user2", 7L));
+    }
+
+    @Test
+    void processBatch_CommitsBatchOnceAndIsolatesFailures() {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        PendingTransferProcessor processor = new PendingTransferProcessor(pendingTransfersRepository, cardService,
+                new TransactionTemplate(transactionManager), true, 1, 10,
+                Duration.ZERO, Duration.ofMillis(100), Duration.ofDays(7));
+
+        PendingTransfer ok = pending(1L, BigDecimal.ONE);
+        PendingTransfer tooLarge = pending(2L, BigDecimal.valueOf(1000));
+        when(pendingTransfersRepository.claimPending(10)).thenReturn(List.of(ok, tooLarge));
+        doThrow(new RuntimeException("Недостаточно средств на карте"))
+                .when(cardService).applyEncryptedTransfer("user1", "a", "b", BigDecimal.valueOf(1000));
+
+        assertEquals(2, processor.processBatch());
+
+        assertEquals(TransferStatus.COMPLETED, ok.getStatus());
+        assertEquals(TransferStatus.FAILED, tooLarge.getStatus());
+        assertEquals("Недостаточно средств на карте", tooLarge.getError());
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    private PendingTransfer pending(Long id, BigDecimal amount) {
+        PendingTransfer transfer = new PendingTransfer();
+        transfer.setId(id);
+        transfer.setUsername("user1");
+        transfer.setFromCardEncrypted("a");
+        transfer.setToCardEncrypted("b");
+        transfer.setAmount(amount);
+        return transfer;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.CardsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CardExpirySweeperTest {
+
+    @Mock
+    private CardsRepository cardsRepository;
+
+    @Mock
+    private CardStatsService cardStatsService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CardExpirySweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        meterRegistry = new SimpleMeterRegistry();
+        sweeper = new CardExpirySweeper(cardsRepository, new TransactionTemplate(transactionManager),
+                cardStatsService, mock(ShardRouter.class), meterRegistry, 2, 10, Duration.ZERO);
+    }
+
+    @Test
+    void sweep_ExpiresInChunksUntilNothingDue() {
+        when(cardsRepository.lockDueForExpiry(anyInt(), anyInt(), eq(2)))
+                .thenReturn(List.of(1L, 2L), List.of(3L, 4L), List.of(5L));
+        when(cardsRepository.markExpired(anyList())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+
+        assertEquals(5, sweeper.sweep());
+
+        verify(cardsRepository, times(3)).markExpired(anyList());
+        verify(transactionManager, times(3)).commit(any());
+        verify(cardStatsService, times(3)).onExpired(anyList());
+        assertEquals(5, meterRegistry.counter("bank.cards.expiry.expired").count());
+        assertEquals(3, meterRegistry.counter("bank.cards.expiry.chunks").count());
+    }
+
+    @Test
+    void sweep_StopsAfterMaxChunksPerRun() {
+        sweeper = new CardExpirySweeper(cardsRepository, new TransactionTemplate(transactionManager),
+                cardStatsService, mock(ShardRouter.class), meterRegistry, 2, 2, Duration.ZERO);
+        when(cardsRepository.lockDueForExpiry(anyInt(), anyInt(), eq(2))).thenReturn(List.of(1L, 2L));
+        when(cardsRepository.markExpired(anyList())).thenReturn(2);
+
+        assertEquals(4, sweeper.sweep());
+
+        verify(cardsRepository, times(2)).lockDueForExpiry(anyInt(), anyInt(), eq(2));
+    }
+
+    @Test
+    void sweep_DoesNothingWhenNoCardsDue() {
+        when(cardsRepository.lockDueForExpiry(anyInt(), anyInt(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, sweeper.sweep());
+
+        verify(cardsRepository, never()).markExpired(anyList());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.EncryptionProperties;
+import com.example.bankcards.entity.KeyRotationProgress;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.KeyRotationProgressRepository;
+import com.example.bankcards.repository.projection.EncryptedNumberView;
+import com.example.bankcards.util.EncryptionUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CardKeyRotationTest {
+
+    @Mock
+    private CardsRepository cardsRepository;
+
+    @Mock
+    private KeyRotationProgressRepository progressRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EncryptionUtil legacyEncryption;
+
+    private EncryptionUtil encryptionUtil;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CardKeyRotation rotation;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        legacyEncryption = encryptionUtil(0);
+        encryptionUtil = encryptionUtil(1);
+        meterRegistry = new SimpleMeterRegistry();
+
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.getRotation().setChunkSize(2);
+        properties.getRotation().setRowsPerSecond(0);
+        rotation = new CardKeyRotation(cardsRepository, progressRepository, encryptionUtil,
+                new TransactionTemplate(transactionManager), mock(ShardRouter.class), properties, meterRegistry);
+    }
+
+    private EncryptionUtil encryptionUtil(int currentVersion) {
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.setAesKey("MySuperSecretKey12345678");
+        properties.setKeys(Map.of(1, "AnotherSecretKey87654321"));
+        properties.setCurrentVersion(currentVersion);
+        return new EncryptionUtil(properties);
+    }
+
+    private EncryptedNumberView view(long id, String number) {
+        EncryptedNumberView view = mock(EncryptedNumberView.class);
+        when(view.getId()).thenReturn(id);
+        when(view.getEncryptedNumber()).thenReturn(legacyEncryption.encrypt(number));
+        return view;
+    }
+
+    @Test
+    void rotate_ReencryptsInChunksAndResumesFromCheckpoint() {
+        KeyRotationProgress progress = new KeyRotationProgress(1, 10L, 5L, null, Instant.now());
+        when(progressRepository.findById(1)).thenReturn(Optional.of(progress));
+        EncryptedNumberView first = view(11, "1111222233334444");
+        EncryptedNumberView second = view(12, "5555666677778888");
+        EncryptedNumberView third = view(15, "9999000011112222");
+        when(cardsRepository.findEncryptedWithOtherKeys(eq(10L), eq("v1:%"), any(Pageable.class))).thenReturn(List.of(first, second));
+        when(cardsRepository.findEncryptedWithOtherKeys(eq(12L), eq("v1:%"), any(Pageable.class))).thenReturn(List.of(third));
+        when(cardsRepository.findEncryptedWithOtherKeys(eq(15L), eq("v1:%"), any(Pageable.class))).thenReturn(List.of());
+        when(cardsRepository.replaceEncryptedNumber(anyLong(), anyString(), anyString())).thenReturn(1);
+
+        assertEquals(3, rotation.rotate());
+
+        verify(cardsRepository).replaceEncryptedNumber(11L, first.getEncryptedNumber(),
+                encryptionUtil.encrypt("1111222233334444"));
+        verify(progressRepository).saveCheckpoint(1, 12L, 2);
+        verify(progressRepository).saveCheckpoint(1, 15L, 1);
+        verify(progressRepository).markCompleted(1);
+        assertEquals(3, meterRegistry.counter("bank.encryption.rotation.rotated").count());
+    }
+
+    @Test
+    void rotate_SkipsCompletedRotation() {
+        KeyRotationProgress progress = new KeyRotationProgress(1, 100L, 100L, Instant.now(), Instant.now());
+        when(progressRepository.findById(1)).thenReturn(Optional.of(progress));
+
+        assertEquals(0, rotation.rotate());
+
+        verify(cardsRepository, never()).findEncryptedWithOtherKeys(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void rotate_DoesNothingWithoutRotationKey() {
+        EncryptionProperties properties = new EncryptionProperties();
+        rotation = new CardKeyRotation(cardsRepository, progressRepository, legacyEncryption,
+                new TransactionTemplate(transactionManager), mock(ShardRouter.class), properties, meterRegistry);
+
+        assertEquals(0, rotation.rotate());
+
+        verifyNoInteractions(progressRepository);
+    }
+}
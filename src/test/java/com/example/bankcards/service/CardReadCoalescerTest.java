@@ -0,0 +1,87 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.util.ReadYourWritesTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CardReadCoalescerTest {
+
+    @Mock
+    private CardService cardService;
+
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CardReadCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        readYourWritesTracker = new ReadYourWritesTracker(Duration.ofMinutes(1));
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new CardReadCoalescer(cardService, readYourWritesTracker, meterRegistry, true, Duration.ofMinutes(1));
+        when(cardService.checkCardBalance("user", "1111222233334444")).thenReturn(BigDecimal.TEN);
+    }
+
+    @Test
+    void checkCardBalance_RepeatedReadWithinWindowSkipsDatabase() {
+        assertEquals(BigDecimal.TEN, coalescer.checkCardBalance("user", "1111222233334444"));
+        assertEquals(BigDecimal.TEN, coalescer.checkCardBalance("user", "1111222233334444"));
+
+        verify(cardService, times(1)).checkCardBalance("user", "1111222233334444");
+        assertEquals(1, meterRegistry.get("bank.cards.coalescing.deduplicated")
+                .tag("operation", "balance").functionCounter().count());
+    }
+
+    @Test
+    void checkCardBalance_UserWithRecentWriteReadsDirectly() {
+        readYourWritesTracker.recordWrite("user");
+
+        coalescer.checkCardBalance("user", "1111222233334444");
+        coalescer.checkCardBalance("user", "1111222233334444");
+
+        verify(cardService, times(2)).checkCardBalance("user", "1111222233334444");
+    }
+
+    @Test
+    void getUserCards_DifferentPagesAreNotShared() {
+        coalescer.getUserCards("user", 0, 6);
+        coalescer.getUserCards("user", 1, 6);
+
+        verify(cardService).getUserCards("user", 0, 6);
+        verify(cardService).getUserCards("user", 1, 6);
+    }
+
+    @Test
+    void getUserCards_ETagIsReadInTheSameFlightAsThePage() {
+        Page<CardDTO> page = new PageImpl<>(List.of(new CardDTO()));
+        when(cardService.getUserCardsETag("user", 0, 6)).thenReturn("\"v1\"", "\"v2\"");
+        when(cardService.getUserCards("user", 0, 6)).thenReturn(page);
+
+        CardReadCoalescer.UserCards first = coalescer.getUserCards("user", 0, 6);
+        CardReadCoalescer.UserCards second = coalescer.getUserCards("user", 0, 6);
+
+        assertEquals("\"v1\"", first.eTag());
+        assertSame(page, first.cards());
+        assertEquals(first, second);
+        InOrder inOrder = inOrder(cardService);
+        inOrder.verify(cardService).getUserCardsETag("user", 0, 6);
+        inOrder.verify(cardService).getUserCards("user", 0, 6);
+        verifyNoMoreInteractions(cardService);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardStatsDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardStats;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.repository.CardStatsRepository;
+import com.example.bankcards.repository.UserCardStatsRepository;
+import com.example.bankcards.repository.UsersRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CardStatsServiceTest {
+
+    @InjectMocks
+    private CardStatsService cardStatsService;
+
+    @Mock
+    private CardStatsRepository cardStatsRepository;
+
+    @Mock
+    private UserCardStatsRepository userCardStatsRepository;
+
+    @Mock
+    private UsersRepository usersRepository;
+
+    @Mock
+    private ListingVersionService listingVersionService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void onChanged_MovesCardBetweenStatusesAndOwners() {
+        Card card = card(CardStatus.BLOCKED, BigDecimal.valueOf(50), 2L);
+
+        cardStatsService.onChanged(CardStatus.ACTIVE, BigDecimal.valueOf(100), 1L, card);
+
+        InOrder inOrder = inOrder(cardStatsRepository);
+        inOrder.verify(cardStatsRepository).addDelta("ACTIVE", -1, BigDecimal.valueOf(-100));
+        inOrder.verify(cardStatsRepository).addDelta("BLOCKED", 1, BigDecimal.valueOf(50));
+        verify(userCardStatsRepository).addDelta(1L, -1);
+        verify(userCardStatsRepository).addDelta(2L, 1);
+        verify(listingVersionService).touch(ListingVersionService.USERS);
+    }
+
+    @Test
+    void onChanged_SkipsWhenNothingChanged() {
+        Card card = card(CardStatus.ACTIVE, BigDecimal.TEN, 1L);
+
+        cardStatsService.onChanged(CardStatus.ACTIVE, BigDecimal.TEN, 1L, card);
+
+        verifyNoInteractions(cardStatsRepository, userCardStatsRepository);
+        verify(listingVersionService, never()).touch(ListingVersionService.USERS);
+    }
+
+    @Test
+    void getStats_SumsRowsAndFillsMissingStatuses() {
+        when(cardStatsRepository.findAll()).thenReturn(List.of(
+                new CardStats(CardStatus.ACTIVE, 3, BigDecimal.valueOf(300)),
+                new CardStats(CardStatus.BLOCKED, 1, BigDecimal.valueOf(20))));
+
+        CardStatsDTO stats = cardStatsService.getStats();
+
+        assertEquals(4, stats.getTotalCards());
+        assertEquals(0, BigDecimal.valueOf(320).compareTo(stats.getTotalBalance()));
+        assertEquals(0, stats.getByStatus().get(CardStatus.EXPIRED).getCardCount());
+        assertEquals(CardStatus.values().length, stats.getByStatus().size());
+    }
+
+    private Card card(CardStatus status, BigDecimal balance, Long ownerId) {
+        User owner = new User();
+        owner.setId(ownerId);
+        Card card = new Card();
+        card.setStatus(status);
+        card.setBalance(balance);
+        card.setOwner(owner);
+        return card;
+    }
+}
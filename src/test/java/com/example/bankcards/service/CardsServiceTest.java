@@ -1,24 +1,41 @@
 package com.example.bankcards.service;
 
-
+import com.example.bankcards.config.ShardContext;
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.PortfolioDTO;
+import com.example.bankcards.dto.TransferHistoryDTO;
 import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CrossShardTransfer;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.TransferRecord;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.CrossShardTransferStatus;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.IncorrectOwnerException;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.exception.WrongCardStatusException;
 import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.CrossShardCreditsRepository;
+import com.example.bankcards.repository.CrossShardTransfersRepository;
+import com.example.bankcards.repository.TransfersRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.CardBalanceView;
+import com.example.bankcards.repository.projection.ListingVersionView;
+import com.example.bankcards.security.UserDetailsImplemented;
 import com.example.bankcards.util.CardMapper;
 import com.example.bankcards.util.EncryptionUtil;
+import com.example.bankcards.util.ReadYourWritesTracker;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 import org.springframework.data.domain.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,11 +58,52 @@ class CardsServiceTest {
     @Mock
     private EncryptionUtil encryptionUtil;
 
+    @Mock
+    private ReadYourWritesTracker readYourWritesTracker;
+
+    @Mock
+    private TransfersRepository transfersRepository;
+
+    @Mock
+    private CardStatsService cardStatsService;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    @Mock
+    private CrossShardTransfersRepository crossShardTransfersRepository;
+
+    @Mock
+    private CrossShardCreditsRepository crossShardCreditsRepository;
+
+    @Mock
+    private TransferLimits transferLimits;
+
+    @Mock
+    private ListingVersionService listingVersionService;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
     }
 
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void authenticate(User user) {
+        Role role = new Role();
+        role.setName("ROLE_USER");
+        user.setRole(role);
+        UserDetailsImplemented principal = new UserDetailsImplemented(user);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
     @Test
     void getAllCards_ReturnsPageOfCardDTOs() {
         Card card = new Card();
@@ -75,6 +133,35 @@ class CardsServiceTest {
         assertEquals(1, result.getContent().size());
     }
 
+    @Test
+    void getUserCardsETag_ChangesWhenAnyCardIsUpdated() {
+        ListingVersionView before = mock(ListingVersionView.class);
+        when(before.getRowCount()).thenReturn(2L);
+        when(before.getMaxId()).thenReturn(7L);
+        when(before.getVersionSum()).thenReturn(3L);
+
+        ListingVersionView after = mock(ListingVersionView.class);
+        when(after.getRowCount()).thenReturn(2L);
+        when(after.getMaxId()).thenReturn(7L);
+        when(after.getVersionSum()).thenReturn(4L);
+
+        when(cardsRepository.findListingVersionByOwnerUsername("user1")).thenReturn(before, after);
+
+        String first = cardService.getUserCardsETag("user1", 0, 6);
+        String second = cardService.getUserCardsETag("user1", 0, 6);
+
+        assertNotEquals(first, second);
+        verify(cardsRepository, never()).findByOwner(any(), any());
+    }
+
+    @Test
+    void getAllCardsETag_ReadsMaintainedVersion() {
+        when(listingVersionService.version(ListingVersionService.CARDS)).thenReturn(41L, 42L);
+
+        assertNotEquals(cardService.getAllCardsETag(0, 6), cardService.getAllCardsETag(0, 6));
+        verify(cardsRepository, never()).findAll(any(Pageable.class));
+    }
+
     @Test
     void getUserCards_ThrowsWhenUserNotFound() {
         when(usersRepository.findByUsername("user1")).thenReturn(Optional.empty());
@@ -99,16 +186,94 @@ class CardsServiceTest {
     @Test
     void checkCardBalance_ReturnsBalance() {
         User owner = new User();
+        owner.setId(1L);
         owner.setUsername("owner1");
         Card card = new Card();
         card.setOwner(owner);
         card.setBalance(BigDecimal.TEN);
+        authenticate(owner);
 
         when(encryptionUtil.encrypt("1234")).thenReturn("encrypted1234");
-        when(cardsRepository.findByEncryptedNumber("encrypted1234")).thenReturn(Optional.of(card));
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encrypted1234", 1L)).thenReturn(Optional.of(card));
 
         BigDecimal balance = cardService.checkCardBalance("owner1", "1234");
         assertEquals(BigDecimal.TEN, balance);
+        // id владельца взят из аутентифицированного пользователя, карта найдена одним запросом
+        verify(usersRepository, never()).findIdByUsername(any());
+        verify(cardsRepository, never()).findByEncryptedNumber(any());
+    }
+
+    @Test
+    void checkCardBalance_CollidingIdOnOtherShardIsNotOwner() {
+        User alice = new User();
+        alice.setId(5L);
+        alice.setUsername("alice");
+        authenticate(alice);
+        User bob = new User();
+        bob.setId(5L);
+        bob.setUsername("bob");
+        Card bobCard = new Card();
+        bobCard.setOwner(bob);
+        bobCard.setBalance(BigDecimal.TEN);
+
+        // alice живет на шарде 0, карта bob - на шарде 1, и у обоих id 5
+        when(shardRouter.shardOfUser("alice")).thenReturn(0);
+        when(encryptionUtil.encrypt("1234")).thenReturn("encrypted1234");
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encrypted1234", 5L)).thenReturn(Optional.of(bobCard));
+        when(cardsRepository.findByEncryptedNumber("encrypted1234")).thenReturn(Optional.of(bobCard));
+        when(usersRepository.findIdByUsername("alice")).thenReturn(Optional.empty());
+
+        assertThrows(IncorrectOwnerException.class,
+                () -> ShardContext.runOn(1, () -> cardService.checkCardBalance("alice", "1234")));
+        verify(cardsRepository, never()).findByEncryptedNumberAndOwnerId(any(), any());
+    }
+
+    @Test
+    void checkCardBalance_ThrowsIfCardMissing() {
+        when(encryptionUtil.encrypt("1234")).thenReturn("encrypted1234");
+        when(usersRepository.findIdByUsername("owner1")).thenReturn(Optional.of(1L));
+
+        assertThrows(CardNotFoundException.class, () -> cardService.checkCardBalance("owner1", "1234"));
+    }
+
+    @Test
+    void checkCardBalance_FindsCardEncryptedWithPreviousKey() {
+        User owner = new User();
+        owner.setUsername("owner1");
+        Card card = new Card();
+        card.setOwner(owner);
+        card.setBalance(BigDecimal.TEN);
+
+        when(encryptionUtil.encrypt("1234")).thenReturn("v2:encrypted1234");
+        when(encryptionUtil.encryptWithOtherKeys("v2:encrypted1234")).thenReturn(List.of("encrypted1234"));
+        when(usersRepository.findIdByUsername("owner1")).thenReturn(Optional.of(1L));
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("v2:encrypted1234", 1L)).thenReturn(Optional.empty());
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encrypted1234", 1L)).thenReturn(Optional.of(card));
+
+        assertEquals(BigDecimal.TEN, cardService.checkCardBalance("owner1", "1234"));
+    }
+
+    @Test
+    void getPortfolio_ReturnsCardsAndTotals() {
+        CardBalanceView active = mock(CardBalanceView.class);
+        when(active.getStatus()).thenReturn(CardStatus.ACTIVE);
+        when(active.getBalance()).thenReturn(BigDecimal.valueOf(100));
+
+        CardBalanceView blocked = mock(CardBalanceView.class);
+        when(blocked.getStatus()).thenReturn(CardStatus.BLOCKED);
+        when(blocked.getBalance()).thenReturn(BigDecimal.valueOf(50));
+
+        when(cardsRepository.findBalancesByOwnerUsername("user1")).thenReturn(List.of(active, blocked));
+        when(cardMapper.toDTO(any(CardBalanceView.class), eq("user1"))).thenReturn(new CardDTO());
+
+        PortfolioDTO result = cardService.getPortfolio("user1");
+
+        assertEquals(2, result.getCardCount());
+        assertEquals(1, result.getActiveCardCount());
+        assertEquals(BigDecimal.valueOf(150), result.getTotalBalance());
+        assertEquals(BigDecimal.valueOf(100), result.getAvailableBalance());
+        verify(cardsRepository).findBalancesByOwnerUsername("user1");
+        verifyNoInteractions(usersRepository);
     }
 
     @Test
@@ -120,7 +285,8 @@ class CardsServiceTest {
         card.setStatus(CardStatus.ACTIVE);
 
         when(encryptionUtil.encrypt("1111")).thenReturn("encrypted1111");
-        when(cardsRepository.findByEncryptedNumber("encrypted1111")).thenReturn(Optional.of(card));
+        when(usersRepository.findIdByUsername("user1")).thenReturn(Optional.of(1L));
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encrypted1111", 1L)).thenReturn(Optional.of(card));
 
         cardService.requestBlockCard("user1", "1111");
 
@@ -201,14 +367,18 @@ class CardsServiceTest {
         from.setStatus(CardStatus.ACTIVE);
         from.setBalance(BigDecimal.valueOf(100));
 
+        User recipient = new User();
+        recipient.setUsername("user2");
+
         Card to = new Card();
-        to.setOwner(user);
+        to.setOwner(recipient);
         to.setStatus(CardStatus.ACTIVE);
         to.setBalance(BigDecimal.valueOf(50));
 
         when(encryptionUtil.encrypt("from")).thenReturn("encryptedFrom");
         when(encryptionUtil.encrypt("to")).thenReturn("encryptedTo");
-        when(cardsRepository.findByEncryptedNumber("encryptedFrom")).thenReturn(Optional.of(from));
+        when(usersRepository.findIdByUsername("user1")).thenReturn(Optional.of(1L));
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encryptedFrom", 1L)).thenReturn(Optional.of(from));
         when(cardsRepository.findByEncryptedNumber("encryptedTo")).thenReturn(Optional.of(to));
 
         cardService.transfer("user1", "from", "to", BigDecimal.valueOf(40));
@@ -216,9 +386,94 @@ class CardsServiceTest {
         assertEquals(BigDecimal.valueOf(60), from.getBalance());
         assertEquals(BigDecimal.valueOf(90), to.getBalance());
         verify(cardsRepository, times(2)).save(any());
+        verify(transfersRepository).save(any(TransferRecord.class));
+        verify(readYourWritesTracker).recordWrite("user1");
+        verify(readYourWritesTracker).recordWrite("user2");
     }
 
+    @Test
+    void transfer_ChangesCardsListingVersion() {
+        User user = new User();
+        user.setUsername("user1");
+
+        Card from = new Card();
+        from.setOwner(user);
+        from.setStatus(CardStatus.ACTIVE);
+        from.setBalance(BigDecimal.valueOf(100));
+
+        Card to = new Card();
+        to.setOwner(user);
+        to.setStatus(CardStatus.ACTIVE);
+        to.setBalance(BigDecimal.valueOf(50));
+
+        when(encryptionUtil.encrypt("from")).thenReturn("encryptedFrom");
+        when(encryptionUtil.encrypt("to")).thenReturn("encryptedTo");
+        when(usersRepository.findIdByUsername("user1")).thenReturn(Optional.of(1L));
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encryptedFrom", 1L)).thenReturn(Optional.of(from));
+        when(cardsRepository.findByEncryptedNumber("encryptedTo")).thenReturn(Optional.of(to));
 
+        cardService.transfer("user1", "from", "to", BigDecimal.valueOf(40));
+
+        verify(listingVersionService).touch(ListingVersionService.CARDS);
+    }
+
+    @Test
+    void creditCrossShard_PinsRecipientToFreshReads() {
+        User recipient = new User();
+        recipient.setUsername("user2");
+
+        Card to = new Card();
+        to.setId(2L);
+        to.setOwner(recipient);
+        to.setStatus(CardStatus.ACTIVE);
+        to.setBalance(BigDecimal.valueOf(50));
+
+        when(cardsRepository.findByEncryptedNumber("encryptedTo")).thenReturn(Optional.of(to));
+        when(crossShardCreditsRepository.insertIfAbsent("t1", 2L, BigDecimal.TEN)).thenReturn(1);
+
+        cardService.creditCrossShard("t1", "encryptedTo", BigDecimal.TEN);
+
+        assertEquals(BigDecimal.valueOf(60), to.getBalance());
+        verify(readYourWritesTracker).recordWrite("user2");
+    }
+
+    @Test
+    void compensateCrossShard_ReleasesReservedLimit() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("user1");
+
+        Card from = new Card();
+        from.setId(1L);
+        from.setOwner(user);
+        from.setStatus(CardStatus.ACTIVE);
+        from.setBalance(BigDecimal.valueOf(60));
+
+        Instant debitedAt = Instant.parse("2026-10-19T12:30:00Z");
+        CrossShardTransfer transfer = new CrossShardTransfer("t1", "user1", 1L, "encryptedTo", 1, BigDecimal.valueOf(40),
+                CrossShardTransferStatus.DEBITED, null, debitedAt, debitedAt);
+        when(crossShardTransfersRepository.lockById("t1")).thenReturn(Optional.of(transfer));
+        when(cardsRepository.findById(1L)).thenReturn(Optional.of(from));
+
+        cardService.compensateCrossShard("t1", "Целевая карта не найдена", null);
+
+        assertEquals(BigDecimal.valueOf(100), from.getBalance());
+        assertEquals(CrossShardTransferStatus.COMPENSATED, transfer.getStatus());
+        verify(transferLimits).release(1L, BigDecimal.valueOf(40), debitedAt);
+    }
+
+
+
+    @Test
+    void transfer_ReplayedIdempotencyKeyDoesNotMoveMoney() {
+        IdempotencyService.Claim claim = new IdempotencyService.Claim("user1", "key-1", "hash", "ok");
+        when(idempotencyService.acquire(claim)).thenReturn(false);
+
+        cardService.transfer("user1", "from", "to", BigDecimal.valueOf(40), claim);
+
+        verify(idempotencyService).acquire(claim);
+        verifyNoInteractions(cardsRepository, transfersRepository, transferLimits);
+    }
 
     @Test
     void transfer_ThrowsIfInsufficientBalance() {
@@ -244,6 +499,54 @@ class CardsServiceTest {
     }
 
 
+    @Test
+    void getTransferHistory_ReturnsPageWithCursor() {
+        User user = new User();
+        user.setUsername("user1");
+        Card card = new Card();
+        card.setId(1L);
+        card.setOwner(user);
+        Card other = new Card();
+        other.setId(2L);
+        other.setEncryptedNumber("encrypted5555");
+
+        Instant now = Instant.parse("2026-10-01T10:15:30.123456Z");
+        TransferRecord out = new TransferRecord(11L, 1L, 2L, BigDecimal.TEN, now);
+        TransferRecord in = new TransferRecord(10L, 2L, 1L, BigDecimal.ONE, now.minusSeconds(60));
+
+        when(encryptionUtil.encrypt("1111")).thenReturn("encrypted1111");
+        when(encryptionUtil.decrypt("encrypted5555")).thenReturn("5555666677778888");
+        when(usersRepository.findIdByUsername("user1")).thenReturn(Optional.of(1L));
+        when(cardsRepository.findByEncryptedNumberAndOwnerId("encrypted1111", 1L)).thenReturn(Optional.of(card));
+        when(transfersRepository.findHistoryPage(eq(1L), any(), any(), anyLong(), eq(2))).thenReturn(List.of(out, in));
+        when(cardsRepository.findAllById(Set.of(2L))).thenReturn(List.of(other));
+
+        TransferHistoryDTO first = cardService.getTransferHistory("user1", "1111", null, 2);
+
+        assertEquals(2, first.getItems().size());
+        assertEquals("OUT", first.getItems().get(0).getDirection());
+        assertEquals("IN", first.getItems().get(1).getDirection());
+        assertEquals("**** **** **** 8888", first.getItems().get(0).getCounterpartMaskedNumber());
+        assertNotNull(first.getNextCursor());
+
+        cardService.getTransferHistory("user1", "1111", first.getNextCursor(), 2);
+        verify(transfersRepository).findHistoryPage(eq(1L), any(), eq(in.getCreatedAt()), eq(10L), eq(2));
+    }
+
+    @Test
+    void getTransferHistory_ThrowsIfWrongOwner() {
+        User owner = new User();
+        owner.setUsername("owner1");
+        Card card = new Card();
+        card.setOwner(owner);
+
+        when(encryptionUtil.encrypt("1111")).thenReturn("encrypted1111");
+        when(cardsRepository.findByEncryptedNumber("encrypted1111")).thenReturn(Optional.of(card));
+
+        assertThrows(IncorrectOwnerException.class, () -> cardService.getTransferHistory("user1", "1111", null, 20));
+        verifyNoInteractions(transfersRepository);
+    }
+
     @Test
     void createCard_Success() {
         User owner = new User();
@@ -258,7 +561,42 @@ class CardsServiceTest {
         CardDTO result = cardService.createCard(new CardDTO("1111", "user1", 12, 2025, CardStatus.ACTIVE, BigDecimal.ZERO));
 
         assertNotNull(result);
-        verify(cardsRepository).save(any(Card.class));
+        verify(cardsRepository).save(argThat(saved -> "1111".equals(saved.getLastFour())));
+    }
+
+    @Test
+    void createCard_RejectsZeroExpiration() {
+        User owner = new User();
+        owner.setUsername("user1");
+        when(usersRepository.findByUsername("user1")).thenReturn(Optional.of(owner));
+
+        assertThrows(IllegalArgumentException.class, () ->
+                cardService.createCard(new CardDTO("1111", "user1", 0, 2025, CardStatus.ACTIVE, BigDecimal.ZERO)));
+        assertThrows(IllegalArgumentException.class, () ->
+                cardService.createCard(new CardDTO("1111", "user1", 12, 0, CardStatus.ACTIVE, BigDecimal.ZERO)));
+        verify(cardsRepository, never()).save(any());
+    }
+
+    @Test
+    void searchCards_ResolvesOwnerAndStatus() {
+        User owner = new User();
+        owner.setId(5L);
+        owner.setUsername("user1");
+        Card card = new Card();
+        when(usersRepository.findByUsername("user1")).thenReturn(Optional.of(owner));
+        when(cardsRepository.searchByLastFour(eq("4444"), eq(5L), eq(CardStatus.BLOCKED), any(Pageable.class)))
+                .thenReturn(List.of(card));
+        when(cardMapper.toDTO(card, true)).thenReturn(new CardDTO());
+
+        List<CardDTO> result = cardService.searchCards("4444", "user1", "blocked");
+
+        assertEquals(1, result.size());
+    }
+
+    @Test
+    void searchCards_ThrowsOnInvalidLastFour() {
+        assertThrows(IllegalArgumentException.class, () -> cardService.searchCards("44a4", null, null));
+        verifyNoInteractions(cardsRepository);
     }
 
     @Test
@@ -289,6 +627,23 @@ class CardsServiceTest {
         verify(cardsRepository).save(card);
     }
 
+    @Test
+    void updateCard_SameNumberKeepsDirectoryEntry() {
+        User user = new User();
+        user.setUsername("user1");
+        Card card = new Card();
+        card.setOwner(user);
+        when(encryptionUtil.encrypt("1111")).thenReturn("encrypted1111");
+        when(cardsRepository.findByEncryptedNumber("encrypted1111")).thenReturn(Optional.of(card));
+        when(usersRepository.findByUsername("user1")).thenReturn(Optional.of(user));
+        when(cardsRepository.save(any(Card.class))).thenReturn(card);
+
+        cardService.updateCard("1111", new CardDTO("1111", "user1", 12, 2025, CardStatus.ACTIVE, BigDecimal.ZERO));
+
+        verify(shardRouter, never()).registerCard(any(), anyInt());
+        verify(shardRouter, never()).unregisterCard(any());
+    }
+
 
     @Test
     void deleteCard_Success() {
@@ -0,0 +1,192 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.config.ShardProperties;
+import com.example.bankcards.entity.CrossShardTransfer;
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.WrongCardStatusException;
+import com.example.bankcards.repository.CrossShardTransfersRepository;
+import com.example.bankcards.repository.IdempotencyKeysRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CrossShardTransferServiceTest {
+
+    private static final String FROM = "1111222233334444";
+
+    private static final String TO = "5555666677778888";
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    @Mock
+    private CrossShardTransfersRepository crossShardTransfersRepository;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CrossShardTransferService service;
+
+    private final List<String> calls = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new CrossShardTransferService(cardService, shardRouter, crossShardTransfersRepository,
+                encryptionUtil, new ShardProperties(), meterRegistry);
+
+        when(shardRouter.shardOfUser("user")).thenReturn(0);
+        when(encryptionUtil.encrypt(TO)).thenReturn("enc-to");
+        // каждый вызов CardService запоминается вместе с шардом, на котором он выполнялся
+        doAnswer(invocation -> record("transfer")).when(cardService).transfer(any(), any(), any(), any(), any());
+        doAnswer(invocation -> record("debit")).when(cardService)
+                .debitCrossShard(any(), any(), any(), any(), anyInt(), any(), any());
+        doAnswer(invocation -> record("credit")).when(cardService).creditCrossShard(any(), any(), any());
+        doAnswer(invocation -> record("complete")).when(cardService).completeCrossShard(any());
+        doAnswer(invocation -> record("compensate")).when(cardService).compensateCrossShard(any(), any(), any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ShardContext.clear();
+    }
+
+    @Test
+    void transfer_SameShardUsesLocalTransfer() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.of(0));
+
+        service.transfer("user", FROM, TO, new BigDecimal("10"));
+
+        assertEquals(List.of("transfer@0"), calls);
+    }
+
+    @Test
+    void transfer_OtherShardDebitsCreditsAndCompletes() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.of(1));
+
+        service.transfer("user", FROM, TO, new BigDecimal("10"));
+
+        assertEquals(List.of("debit@0", "credit@1", "complete@0"), calls);
+        verify(cardService).debitCrossShard(anyString(), eq("user"), eq(FROM), eq("enc-to"), eq(1), eq(new BigDecimal("10")), isNull());
+    }
+
+    @Test
+    void transfer_CompensatesWhenCreditRejected() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.of(1));
+        doAnswer(invocation -> {
+            record("credit");
+            throw new WrongCardStatusException("Целевая карта заблокирована");
+        }).when(cardService).creditCrossShard(any(), any(), any());
+
+        assertThrows(WrongCardStatusException.class, () -> service.transfer("user", FROM, TO, new BigDecimal("10")));
+
+        assertEquals(List.of("debit@0", "credit@1", "compensate@0"), calls);
+        assertEquals(1, meterRegistry.counter("bank.shards.transfers.compensated").count());
+    }
+
+    @Test
+    void transfer_CompensationReleasesIdempotencyKey() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.of(1));
+        doThrow(new WrongCardStatusException("Целевая карта заблокирована"))
+                .when(cardService).creditCrossShard(any(), any(), any());
+        IdempotencyService.Claim claim = new IdempotencyService.Claim("user", "key-1", "hash", "ok");
+
+        assertThrows(WrongCardStatusException.class,
+                () -> service.transfer("user", FROM, TO, new BigDecimal("10"), claim));
+
+        verify(cardService).debitCrossShard(anyString(), eq("user"), eq(FROM), eq("enc-to"), eq(1),
+                eq(new BigDecimal("10")), same(claim));
+        verify(cardService).compensateCrossShard(anyString(), anyString(), same(claim));
+    }
+
+    @Test
+    void transfer_ReplayedKeySkipsCredit() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.of(1));
+        IdempotencyKeysRepository keys = mock(IdempotencyKeysRepository.class);
+        when(keys.findByUsernameAndKey("user", "key-1")).thenReturn(Optional.of(
+                new IdempotencyKey(1L, "user", "key-1", IdempotencyService.hash("request"), "ok", Instant.now(),
+                        Instant.now())));
+        IdempotencyService idempotencyService = new IdempotencyService(keys, mock(TransactionTemplate.class),
+                shardRouter, meterRegistry, true, Duration.ofHours(24), Duration.ofMinutes(10), 1000,
+                Duration.ofSeconds(5));
+        // ключ уже зафиксирован первым запросом: списание его не берет и ничего не меняет
+        doAnswer(invocation -> idempotencyService.acquire(invocation.getArgument(6)))
+                .when(cardService).debitCrossShard(any(), any(), any(), any(), anyInt(), any(), any());
+
+        IdempotencyService.Result result = idempotencyService.execute("user", "key-1", "request", "ok", claim ->
+                service.transfer("user", FROM, TO, new BigDecimal("10"), claim));
+
+        assertTrue(result.replayed());
+        verify(cardService, never()).creditCrossShard(any(), any(), any());
+        verify(cardService, never()).completeCrossShard(any());
+    }
+
+    @Test
+    void transfer_LeavesDebitedWhenCreditOutcomeUnknown() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.of(1));
+        doThrow(new DataAccessResourceFailureException("connection reset"))
+                .when(cardService).creditCrossShard(any(), any(), any());
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> service.transfer("user", FROM, TO, new BigDecimal("10")));
+
+        assertEquals(List.of("debit@0"), calls);
+        verify(cardService, never()).compensateCrossShard(any(), any(), any());
+        verify(cardService, never()).completeCrossShard(any());
+    }
+
+    @Test
+    void transfer_UnknownTargetCardRejectedBeforeDebit() {
+        when(shardRouter.shardOfCard(TO)).thenReturn(Optional.empty());
+
+        assertThrows(CardNotFoundException.class, () -> service.transfer("user", FROM, TO, new BigDecimal("10")));
+
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    void recoverCurrentShard_SettlesDebitedTransfers() {
+        CrossShardTransfer transfer = new CrossShardTransfer();
+        transfer.setId("t-1");
+        transfer.setToShard(1);
+        transfer.setToCardEncrypted("enc-to");
+        transfer.setAmount(new BigDecimal("10"));
+        when(crossShardTransfersRepository.findDebitedBefore(any(), any())).thenReturn(List.of("t-1"));
+        when(crossShardTransfersRepository.findById("t-1")).thenReturn(Optional.of(transfer));
+
+        ShardContext.runOn(2, service::recoverCurrentShard);
+
+        assertEquals(List.of("credit@1", "complete@2"), calls);
+        assertEquals(1, meterRegistry.counter("bank.shards.transfers.recovered").count());
+    }
+
+    private Object record(String call) {
+        calls.add(call + "@" + ShardContext.current());
+        return null;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.IdempotencyKeyMismatchException;
+import com.example.bankcards.repository.IdempotencyKeysRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyKeysRepository idempotencyKeysRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(idempotencyKeysRepository.insertIfAbsent(any(), any(), any(), any(), any(), any())).thenReturn(1);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new IdempotencyService(idempotencyKeysRepository, new TransactionTemplate(transactionManager),
+                mock(ShardRouter.class), meterRegistry, true, Duration.ofHours(24), Duration.ofMinutes(10),
+                1000, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void execute_RunsOnceAndReplaysFromCache() {
+        AtomicInteger runs = new AtomicInteger();
+
+        IdempotencyService.Result first = service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, runs));
+        IdempotencyService.Result second = service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, runs));
+
+        assertFalse(first.replayed());
+        assertTrue(second.replayed());
+        assertEquals("done", second.response());
+        assertEquals(1, runs.get());
+        verify(idempotencyKeysRepository, times(1))
+                .insertIfAbsent(eq("user"), eq("key-1"), any(), eq("done"), any(), any());
+        assertEquals(1, meterRegistry.counter("bank.transfer.idempotency.replayed", "source", "cache").count());
+    }
+
+    @Test
+    void execute_KeyIsWrittenInTransferTransactionOnly() {
+        service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, new AtomicInteger()));
+
+        // своей транзакции и второго соединения под ключ нет
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void execute_RejectsSameKeyWithOtherRequest() {
+        service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, new AtomicInteger()));
+
+        assertThrows(IdempotencyKeyMismatchException.class, () -> service.execute("user", "key-1", "a|b|20", "done",
+                claim -> transfer(claim, new AtomicInteger())));
+    }
+
+    @Test
+    void execute_ReplaysResponseStoredByAnotherNode() {
+        when(idempotencyKeysRepository.insertIfAbsent(any(), any(), any(), any(), any(), any())).thenReturn(0);
+        when(idempotencyKeysRepository.findByUsernameAndKey("user", "key-1")).thenReturn(Optional.of(
+                new IdempotencyKey(1L, "user", "key-1", IdempotencyService.hash("a|b|10"), "done",
+                        Instant.now(), Instant.now().plusSeconds(60))));
+        AtomicInteger runs = new AtomicInteger();
+
+        IdempotencyService.Result result = service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, runs));
+
+        assertTrue(result.replayed());
+        assertEquals("done", result.response());
+        assertEquals(0, runs.get());
+        assertEquals(1, meterRegistry.counter("bank.transfer.idempotency.replayed", "source", "db").count());
+        assertThrows(IdempotencyKeyMismatchException.class, () -> service.execute("user", "key-1", "a|b|20", "done",
+                claim -> transfer(claim, runs)));
+    }
+
+    @Test
+    void execute_FailedTransferIsNotCached() {
+        assertThrows(RuntimeException.class, () -> service.execute("user", "key-1", "a|b|10", "done", claim -> {
+            service.acquire(claim);
+            throw new RuntimeException("Недостаточно средств на карте");
+        }));
+
+        // откат транзакции перевода снял ключ, повтор проводит перевод заново
+        AtomicInteger runs = new AtomicInteger();
+        IdempotencyService.Result retry = service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, runs));
+
+        assertFalse(retry.replayed());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_FailsWhenTransferDidNotAcquireKey() {
+        assertThrows(IllegalStateException.class, () -> service.execute("user", "key-1", "a|b|10", "done", claim -> {
+        }));
+    }
+
+    @Test
+    void release_DropsOnlyKeyAcquiredByThisClaim() {
+        service.execute("user", "key-1", "a|b|10", "done", claim -> {
+            transfer(claim, new AtomicInteger());
+            service.release(claim);
+            service.acquire(claim);
+        });
+        when(idempotencyKeysRepository.insertIfAbsent(any(), any(), any(), any(), any(), any())).thenReturn(0);
+        when(idempotencyKeysRepository.findByUsernameAndKey("user", "key-2")).thenReturn(Optional.of(
+                new IdempotencyKey(1L, "user", "key-2", IdempotencyService.hash("a|b|10"), "done",
+                        Instant.now(), Instant.now().plusSeconds(60))));
+        service.execute("user", "key-2", "a|b|10", "done", claim -> {
+            service.acquire(claim);
+            service.release(claim);
+        });
+
+        verify(idempotencyKeysRepository).deleteByUsernameAndKey("user", "key-1");
+        verify(idempotencyKeysRepository, never()).deleteByUsernameAndKey("user", "key-2");
+    }
+
+    @Test
+    void execute_ConcurrentDuplicateWaitsForFirst() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<IdempotencyService.Result> first = CompletableFuture.supplyAsync(() ->
+                service.execute("user", "key-1", "a|b|10", "done", claim -> {
+                    transfer(claim, runs);
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<IdempotencyService.Result> duplicate = CompletableFuture.supplyAsync(() ->
+                service.execute("user", "key-1", "a|b|10", "done", claim -> transfer(claim, runs)));
+
+        release.countDown();
+
+        assertFalse(first.get(5, TimeUnit.SECONDS).replayed());
+        IdempotencyService.Result replayed = duplicate.get(5, TimeUnit.SECONDS);
+        assertTrue(replayed.replayed());
+        assertEquals("done", replayed.response());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_RejectsTooLongKey() {
+        assertThrows(IllegalArgumentException.class, () -> service.execute("user", "k".repeat(101), "a|b|10", "done",
+                claim -> transfer(claim, new AtomicInteger())));
+        assertThrows(IllegalArgumentException.class, () -> service.execute("user", " ", "a|b|10", "done",
+                claim -> transfer(claim, new AtomicInteger())));
+    }
+
+    /** Как CardService.transfer: ключ берется в транзакции перевода, перевод - только если ключ новый. */
+    private void transfer(IdempotencyService.Claim claim, AtomicInteger runs) {
+        if (service.acquire(claim)) {
+            runs.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.ListingVersionsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ListingVersionServiceTest {
+
+    @Mock
+    private ListingVersionsRepository listingVersionsRepository;
+
+    private ListingVersionService listingVersionService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        listingVersionService = new ListingVersionService(listingVersionsRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void touch_InTransactionIncrementsOnceBeforeCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        listingVersionService.touch(ListingVersionService.CARDS);
+        listingVersionService.touch(ListingVersionService.CARDS);
+        listingVersionService.touch(ListingVersionService.USERS);
+        verify(listingVersionsRepository, never()).increment(any());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.beforeCommit(false);
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        verify(listingVersionsRepository, times(1)).increment(ListingVersionService.CARDS);
+        verify(listingVersionsRepository, times(1)).increment(ListingVersionService.USERS);
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    void touch_RolledBackTransactionKeepsVersion() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        listingVersionService.touch(ListingVersionService.CARDS);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        verify(listingVersionsRepository, never()).increment(any());
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    void touch_WithoutTransactionIncrementsImmediately() {
+        listingVersionService.touch(ListingVersionService.USERS);
+
+        verify(listingVersionsRepository).increment(ListingVersionService.USERS);
+    }
+
+    @Test
+    void version_MissingRowIsZero() {
+        when(listingVersionsRepository.findVersion(ListingVersionService.CARDS)).thenReturn(Optional.empty());
+
+        assertEquals(0L, listingVersionService.version(ListingVersionService.CARDS));
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.ScheduledTransfer;
+import com.example.bankcards.entity.enums.ScheduleFrequency;
+import com.example.bankcards.entity.enums.ScheduledTransferStatus;
+import com.example.bankcards.repository.ScheduledTransfersRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ScheduledTransferEngineTest {
+
+    private static final Instant NOW = Instant.parse("2026-11-01T09:00:00Z");
+
+    @Mock
+    private ScheduledTransfersRepository scheduledTransfersRepository;
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private TransferDispatcher transferDispatcher;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ScheduledTransferEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        when(encryptionUtil.isCurrent(anyString())).thenReturn(true);
+        meterRegistry = new SimpleMeterRegistry();
+        engine = new ScheduledTransferEngine(scheduledTransfersRepository, cardService, transferDispatcher,
+                idempotencyService, encryptionUtil,
+                new TransactionTemplate(transactionManager), mock(ShardRouter.class), meterRegistry,
+                true, 2, 3, 1, Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMillis(100), 64);
+    }
+
+    @Test
+    void claimDue_LeasesBatchesUpToMaxPending() {
+        ScheduledTransfer first = transfer(1L, ScheduleFrequency.MONTHLY, NOW);
+        ScheduledTransfer second = transfer(2L, ScheduleFrequency.MONTHLY, NOW.plusSeconds(30));
+        ScheduledTransfer third = transfer(3L, ScheduleFrequency.DAILY, NOW.plusSeconds(40));
+        when(scheduledTransfersRepository.claimDue(eq(NOW.plusSeconds(60)), eq(NOW), eq(2)))
+                .thenReturn(List.of(first, second));
+        when(scheduledTransfersRepository.claimDue(eq(NOW.plusSeconds(60)), eq(NOW), eq(1)))
+                .thenReturn(List.of(third));
+
+        assertEquals(3, engine.claimDue(NOW));
+
+        assertEquals(3, engine.getPending());
+        assertEquals(NOW.plus(Duration.ofMinutes(5)), first.getClaimedUntil());
+        assertEquals(NOW.plusSeconds(30).plus(Duration.ofMinutes(5)), second.getClaimedUntil());
+        assertEquals(3, meterRegistry.counter("bank.transfer.scheduled.claimed").count());
+        assertEquals(0, engine.claimDue(NOW));
+    }
+
+    @Test
+    void execute_TransfersAndMovesToNextPeriod() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.MONTHLY, NOW);
+        when(scheduledTransfersRepository.claimForRun(1L, NOW)).thenReturn(Optional.of(transfer));
+
+        assertTrue(engine.execute(new ScheduledTransferEngine.DueTransfer(0, 1L, NOW), NOW));
+
+        verify(cardService).applyEncryptedTransfer("user", "enc-from", "enc-to", BigDecimal.TEN);
+        assertEquals(Instant.parse("2026-12-01T09:00:00Z"), transfer.getNextRunAt());
+        assertEquals(1, transfer.getOccurrence());
+        assertEquals(ScheduledTransferStatus.ACTIVE, transfer.getStatus());
+        assertNull(transfer.getClaimedUntil());
+        assertNull(transfer.getLastError());
+        assertEquals(1, meterRegistry.counter("bank.transfer.scheduled.runs", "result", "completed").count());
+    }
+
+    @Test
+    void execute_RecordsFailureAndStillMovesToNextPeriod() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.WEEKLY, NOW);
+        when(scheduledTransfersRepository.claimForRun(1L, NOW)).thenReturn(Optional.of(transfer));
+        doThrow(new RuntimeException("Недостаточно средств на карте"))
+                .when(cardService).applyEncryptedTransfer(any(), any(), any(), any());
+
+        assertTrue(engine.execute(new ScheduledTransferEngine.DueTransfer(0, 1L, NOW), NOW));
+
+        assertEquals("Недостаточно средств на карте", transfer.getLastError());
+        assertEquals(NOW.plus(Duration.ofDays(7)), transfer.getNextRunAt());
+        assertEquals(1, meterRegistry.counter("bank.transfer.scheduled.runs", "result", "failed").count());
+    }
+
+    @Test
+    void execute_CountsFailureOnceWhenCommitFails() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.WEEKLY, NOW);
+        when(scheduledTransfersRepository.claimForRun(1L, NOW)).thenReturn(Optional.of(transfer));
+        doThrow(new IllegalStateException("commit failed")).doNothing().when(transactionManager).commit(any());
+
+        assertTrue(engine.execute(new ScheduledTransferEngine.DueTransfer(0, 1L, NOW), NOW));
+
+        assertEquals("commit failed", transfer.getLastError());
+        assertEquals(0, meterRegistry.counter("bank.transfer.scheduled.runs", "result", "completed").count());
+        assertEquals(1, meterRegistry.counter("bank.transfer.scheduled.runs", "result", "failed").count());
+    }
+
+    @Test
+    void execute_ShardedModeDispatchesLikeControllerUnderOccurrenceKey() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.MONTHLY, NOW);
+        transfer.setOccurrence(2);
+        when(scheduledTransfersRepository.claimForRun(1L, NOW)).thenReturn(Optional.of(transfer));
+        when(transferDispatcher.commitsItself()).thenReturn(true);
+        when(idempotencyService.isEnabled()).thenReturn(true);
+        when(encryptionUtil.decrypt("enc-from")).thenReturn("1111222233334444");
+        when(encryptionUtil.decrypt("enc-to")).thenReturn("5555666677778888");
+        when(idempotencyService.execute(eq("user"), eq("scheduled:1:2"), eq("1111222233334444|5555666677778888|10"),
+                anyString(), any())).thenAnswer(invocation -> {
+                    invocation.<Consumer<IdempotencyService.Claim>>getArgument(4).accept(null);
+                    return new IdempotencyService.Result("ok", false);
+                });
+
+        assertTrue(engine.execute(new ScheduledTransferEngine.DueTransfer(0, 1L, NOW), NOW));
+
+        verify(transferDispatcher).transfer("user", "1111222233334444", "5555666677778888", BigDecimal.TEN, null);
+        verify(cardService, never()).applyEncryptedTransfer(any(), any(), any(), any());
+        verify(transactionManager, times(2)).commit(any());
+        assertEquals(3, transfer.getOccurrence());
+        assertNull(transfer.getClaimedUntil());
+        assertEquals(1, meterRegistry.counter("bank.transfer.scheduled.runs", "result", "completed").count());
+    }
+
+    @Test
+    void execute_SkipsCancelledOrAlreadyExecuted() {
+        when(scheduledTransfersRepository.claimForRun(1L, NOW)).thenReturn(Optional.empty());
+
+        assertFalse(engine.execute(new ScheduledTransferEngine.DueTransfer(0, 1L, NOW), NOW));
+
+        verifyNoInteractions(cardService);
+        verify(transferDispatcher, never()).transfer(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void execute_CompletesOneTimeTransfer() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.ONCE, NOW);
+        when(scheduledTransfersRepository.claimForRun(1L, NOW)).thenReturn(Optional.of(transfer));
+
+        engine.execute(new ScheduledTransferEngine.DueTransfer(0, 1L, NOW), NOW);
+
+        assertEquals(ScheduledTransferStatus.COMPLETED, transfer.getStatus());
+    }
+
+    @Test
+    void advance_KeepsMonthEndAnchorAndSkipsMissedPeriods() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.MONTHLY, Instant.parse("2026-01-31T09:00:00Z"));
+
+        ScheduledTransferEngine.advance(transfer, Instant.parse("2026-01-31T09:00:00Z"));
+        assertEquals(Instant.parse("2026-02-28T09:00:00Z"), transfer.getNextRunAt());
+
+        ScheduledTransferEngine.advance(transfer, Instant.parse("2026-05-10T00:00:00Z"));
+        assertEquals(Instant.parse("2026-05-31T09:00:00Z"), transfer.getNextRunAt());
+        assertEquals(4, transfer.getOccurrence());
+    }
+
+    @Test
+    void advance_CompletesAfterEndDate() {
+        ScheduledTransfer transfer = transfer(1L, ScheduleFrequency.DAILY, NOW);
+        transfer.setEndAt(NOW.plusSeconds(3600));
+
+        ScheduledTransferEngine.advance(transfer, NOW);
+
+        assertEquals(ScheduledTransferStatus.COMPLETED, transfer.getStatus());
+    }
+
+    private ScheduledTransfer transfer(Long id, ScheduleFrequency frequency, Instant startAt) {
+        ScheduledTransfer transfer = new ScheduledTransfer();
+        transfer.setId(id);
+        transfer.setUsername("user");
+        transfer.setFromCardEncrypted("enc-from");
+        transfer.setToCardEncrypted("enc-to");
+        transfer.setAmount(BigDecimal.TEN);
+        transfer.setFrequency(frequency);
+        transfer.setStartAt(startAt);
+        transfer.setNextRunAt(startAt);
+        transfer.setStatus(ScheduledTransferStatus.ACTIVE);
+        transfer.setCreatedAt(startAt);
+        return transfer;
+    }
+}
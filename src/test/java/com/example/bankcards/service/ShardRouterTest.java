@@ -0,0 +1,88 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardProperties;
+import com.example.bankcards.repository.CardDirectoryRepository;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ShardRouterTest {
+
+    @Mock
+    private CardDirectoryRepository cardDirectoryRepository;
+
+    @Mock
+    private CardsRepository cardsRepository;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        ShardProperties properties = new ShardProperties();
+        properties.setEnabled(true);
+        properties.setNodes(List.of(new ShardProperties.Node()));
+        properties.setDirectorySecret("secret");
+        shardRouter = new ShardRouter(properties, cardDirectoryRepository, cardsRepository, encryptionUtil,
+                transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void registerCard_InTransactionWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        shardRouter.registerCard("1111222233334444", 1);
+        shardRouter.unregisterCard("5555666677778888");
+        verifyNoInteractions(cardDirectoryRepository);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        verify(cardDirectoryRepository).upsert(anyString(), eq(1));
+        verify(cardDirectoryRepository).deleteById(anyString());
+    }
+
+    @Test
+    void registerCard_RolledBackTransactionLeavesDirectory() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        shardRouter.registerCard("1111222233334444", 1);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verifyNoInteractions(cardDirectoryRepository);
+    }
+
+    @Test
+    void registerCard_WithoutTransactionWritesImmediately() {
+        shardRouter.registerCard("1111222233334444", 1);
+
+        verify(cardDirectoryRepository).upsert(anyString(), eq(1));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.util.EncryptionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ShardedTransferExecutorTest {
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private CardsRepository cardsRepository;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    private ShardedTransferExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        when(encryptionUtil.encrypt(anyString())).thenAnswer(invocation -> "enc" + invocation.getArgument(0));
+        when(cardsRepository.findIdByEncryptedNumber("enc1")).thenReturn(Optional.of(1L));
+        when(cardsRepository.findIdByEncryptedNumber("enc2")).thenReturn(Optional.of(2L));
+        when(cardsRepository.findIdByEncryptedNumber("enc5")).thenReturn(Optional.of(5L));
+
+        executor = new ShardedTransferExecutor(cardService, cardsRepository, encryptionUtil,
+                new TransactionTemplate(transactionManager), idempotencyService, true, 4, 16, 1000, Duration.ofSeconds(5));
+        executor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    void transfer_SameShardBurstRunsSeriallyInFewerTransactions() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            inFlight.decrementAndGet();
+            return null;
+        }).when(cardService).applyTransfer(eq("user1"), eq("1"), eq("5"), any(), any());
+
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            calls.add(CompletableFuture.runAsync(() -> executor.transfer("user1", "1", "5", BigDecimal.ONE), clients));
+        }
+        calls.forEach(CompletableFuture::join);
+        clients.shutdown();
+
+        verify(cardService, times(50)).applyTransfer(eq("user1"), eq("1"), eq("5"), any(), any());
+        assertEquals(1, maxInFlight.get());
+        verify(transactionManager, atMost(49)).commit(any());
+    }
+
+    @Test
+    void transfer_CrossShardCompletes() {
+        executor.transfer("user1", "1", "2", BigDecimal.ONE);
+
+        verify(cardService).applyTransfer("user1", "1", "2", BigDecimal.ONE, null);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void transfer_FailedTransferDoesNotAffectBatch() {
+        doThrow(new RuntimeException("Недостаточно средств на карте"))
+                .when(cardService).applyTransfer(eq("user1"), eq("1"), eq("5"), eq(BigDecimal.TEN), any());
+
+        assertThrows(RuntimeException.class, () -> executor.transfer("user1", "1", "5", BigDecimal.TEN));
+        executor.transfer("user1", "1", "5", BigDecimal.ONE);
+
+        verify(cardService).applyTransfer("user1", "1", "5", BigDecimal.ONE, null);
+    }
+
+    @Test
+    void transfer_RejectedTransferReleasesItsKeyInBatch() {
+        IdempotencyService.Claim claim = new IdempotencyService.Claim("user1", "key-1", "hash", "ok");
+        doThrow(new RuntimeException("Недостаточно средств на карте"))
+                .when(cardService).applyTransfer(eq("user1"), eq("1"), eq("5"), eq(BigDecimal.TEN), same(claim));
+
+        assertThrows(RuntimeException.class, () -> executor.transfer("user1", "1", "5", BigDecimal.TEN, claim));
+
+        verify(idempotencyService).release(claim);
+        // вызывающий получает ошибку до коммита пакета
+        verify(transactionManager, timeout(1000)).commit(any());
+    }
+
+    @Test
+    void transfer_ThrowsWhenCardNotFound() {
+        when(cardsRepository.findIdByEncryptedNumber("enc9")).thenReturn(Optional.empty());
+
+        assertThrows(CardNotFoundException.class, () -> executor.transfer("user1", "9", "5", BigDecimal.ONE));
+        verifyNoInteractions(cardService);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.ShardContext;
+import com.example.bankcards.exception.TransferLimitExceededException;
+import com.example.bankcards.repository.TransfersRepository;
+import com.example.bankcards.repository.projection.OutgoingTotalsView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TransferLimitsTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long NOW = Instant.parse("2026-10-19T12:30:00Z").toEpochMilli();
+
+    @Mock
+    private TransfersRepository transfersRepository;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TransferLimits limits;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        limits = new TransferLimits(transfersRepository, shardRouter, meterRegistry, true, new BigDecimal("1000"), 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void reserve_RejectsAboveDailyAmount() {
+        limits.reserve(1L, new BigDecimal("600"), NOW);
+        limits.reserve(1L, new BigDecimal("400"), NOW + 1000 * 60);
+
+        assertThrows(TransferLimitExceededException.class, () -> limits.reserve(1L, new BigDecimal("0.01"), NOW + 2000 * 60));
+        assertEquals(1, meterRegistry.counter("bank.transfer.limits.rejected", "rule", "daily").count());
+    }
+
+    @Test
+    void reserve_DailyWindowSlidesByHour() {
+        limits.reserve(1L, new BigDecimal("1000"), NOW - 23 * HOUR);
+
+        assertThrows(TransferLimitExceededException.class, () -> limits.reserve(1L, BigDecimal.ONE, NOW));
+        assertDoesNotThrow(() -> limits.reserve(1L, BigDecimal.ONE, NOW + HOUR));
+    }
+
+    @Test
+    void reserve_RejectsTooManyTransfersPerMinute() {
+        for (int i = 0; i < 3; i++) {
+            limits.reserve(1L, BigDecimal.ONE, NOW + i * 1000);
+        }
+
+        assertThrows(TransferLimitExceededException.class, () -> limits.reserve(1L, BigDecimal.ONE, NOW + 5000));
+        assertDoesNotThrow(() -> limits.reserve(2L, BigDecimal.ONE, NOW + 5000));
+        assertDoesNotThrow(() -> limits.reserve(1L, BigDecimal.ONE, NOW + 61_000));
+        assertEquals(1, meterRegistry.counter("bank.transfer.limits.rejected", "rule", "velocity").count());
+    }
+
+    @Test
+    void reserve_ReleasesAmountWhenTransactionRollsBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        limits.reserve(1L, new BigDecimal("700"), NOW);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(limits.usedToday(1L, NOW)));
+    }
+
+    @Test
+    void release_ReturnsCompensatedAmountAfterCommit() {
+        limits.reserve(1L, new BigDecimal("700"), NOW);
+        TransactionSynchronizationManager.initSynchronization();
+
+        limits.release(1L, new BigDecimal("700"), Instant.ofEpochMilli(NOW));
+        assertEquals(0, new BigDecimal("700").compareTo(limits.usedToday(1L, NOW)));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(limits.usedToday(1L, NOW)));
+    }
+
+    @Test
+    void reconcile_RestoresUsageFromLedger() {
+        long currentHour = Math.floorDiv(NOW, HOUR);
+        OutgoingTotalsView earlier = totals(1L, currentHour - 3, "900");
+        OutgoingTotalsView current = totals(1L, currentHour, "50");
+        when(transfersRepository.sumOutgoingByHour(any())).thenReturn(List.of(earlier, current));
+
+        limits.reconcile(NOW);
+
+        assertEquals(0, new BigDecimal("950").compareTo(limits.usedToday(1L, NOW)));
+        assertThrows(TransferLimitExceededException.class, () -> limits.reserve(1L, new BigDecimal("51"), NOW));
+        verify(transfersRepository).sumOutgoingByHour(Instant.ofEpochMilli((currentHour - 23) * HOUR));
+    }
+
+    @Test
+    void reconcile_KeepsLocalReservationsOfCurrentHour() {
+        limits.reserve(1L, new BigDecimal("300"), NOW);
+        OutgoingTotalsView current = totals(1L, Math.floorDiv(NOW, HOUR), "100");
+        when(transfersRepository.sumOutgoingByHour(any())).thenReturn(List.of(current));
+
+        limits.reconcile(NOW);
+
+        assertEquals(0, new BigDecimal("300").compareTo(limits.usedToday(1L, NOW)));
+    }
+
+    @Test
+    void reconcile_KeepsSameCardIdOnOtherShardSeparate() {
+        long currentHour = Math.floorDiv(NOW, HOUR);
+        OutgoingTotalsView shardOne = totals(1L, currentHour - 1, "900");
+        when(transfersRepository.sumOutgoingByHour(any())).thenReturn(List.of(shardOne));
+        limits.reserve(1L, new BigDecimal("200"), NOW);
+
+        ShardContext.runOn(1, () -> limits.reconcile(NOW));
+
+        assertEquals(0, new BigDecimal("200").compareTo(limits.usedToday(1L, NOW)));
+        assertEquals(0, new BigDecimal("900").compareTo(ShardContext.callOn(1, () -> limits.usedToday(1L, NOW))));
+        assertThrows(TransferLimitExceededException.class,
+                () -> ShardContext.runOn(1, () -> limits.reserve(1L, new BigDecimal("101"), NOW)));
+        assertDoesNotThrow(() -> limits.reserve(1L, new BigDecimal("800"), NOW));
+    }
+
+    private OutgoingTotalsView totals(long cardId, long hour, String amount) {
+        OutgoingTotalsView view = mock(OutgoingTotalsView.class);
+        when(view.getCardId()).thenReturn(cardId);
+        when(view.getHour()).thenReturn(hour);
+        when(view.getAmount()).thenReturn(new BigDecimal(amount));
+        return view;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.UserDeletionDTO;
+import com.example.bankcards.entity.enums.DeletionStatus;
+import com.example.bankcards.repository.CardsRepository;
+import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.UserIdView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UserDeletionServiceTest {
+
+    @Mock
+    private UsersRepository usersRepository;
+
+    @Mock
+    private CardsRepository cardsRepository;
+
+    @Mock
+    private CardStatsService cardStatsService;
+
+    @Mock
+    private ListingVersionService listingVersionService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    private UserDeletionService userDeletionService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        userDeletionService = new UserDeletionService(usersRepository, cardsRepository, cardStatsService, listingVersionService,
+                new TransactionTemplate(transactionManager), shardRouter, 2, false);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(shardRouter).forEachShard(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        userDeletionService.stop();
+    }
+
+    @Test
+    void delete_MarksUserThenDeletesCardsInChunks() {
+        when(cardsRepository.lockIdsByOwnerId(7L, 2)).thenReturn(List.of(1L, 2L), List.of(3L), List.of());
+        when(cardsRepository.deleteByIds(anyList())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+        when(usersRepository.purgeDeleted(7L)).thenReturn(1);
+
+        UserDeletionDTO result = userDeletionService.delete(7L, "corporate");
+
+        assertEquals(DeletionStatus.COMPLETED, result.getStatus());
+        assertEquals(3, result.getDeletedCards());
+        verify(usersRepository).markDeleted(7L);
+        verify(cardsRepository, times(2)).deleteByIds(anyList());
+        verify(cardStatsService, times(2)).onOwnerDeleted(anyList());
+        verify(transactionManager, times(5)).commit(any());
+        assertSame(result, userDeletionService.getStatus("corporate"));
+    }
+
+    @Test
+    void delete_ReportsFailure() {
+        when(cardsRepository.lockIdsByOwnerId(7L, 2)).thenThrow(new RuntimeException("timeout"));
+
+        UserDeletionDTO result = userDeletionService.delete(7L, "corporate");
+
+        assertEquals(DeletionStatus.FAILED, result.getStatus());
+        assertEquals("timeout", result.getError());
+        verify(usersRepository, never()).purgeDeleted(any());
+    }
+
+    @Test
+    void resumePending_RetriesFailedDeletion() {
+        when(cardsRepository.lockIdsByOwnerId(7L, 2)).thenThrow(new RuntimeException("timeout")).thenReturn(List.of());
+        when(usersRepository.purgeDeleted(7L)).thenReturn(1);
+        UserIdView user = marked(7L, "corporate");
+        when(usersRepository.findMarkedDeleted()).thenReturn(List.of(user), List.of());
+        UserDeletionDTO failed = userDeletionService.delete(7L, "corporate");
+
+        userDeletionService.resumePending();
+
+        assertEquals(DeletionStatus.FAILED, failed.getStatus());
+        assertEquals(DeletionStatus.COMPLETED, userDeletionService.getStatus("corporate").getStatus());
+
+        userDeletionService.resumePending();
+        verify(usersRepository, times(1)).purgeDeleted(7L);
+        assertNull(userDeletionService.getStatus("corporate"));
+    }
+
+    @Test
+    void resumePending_SkipsUserAlreadyQueued() throws Exception {
+        userDeletionService.stop();
+        userDeletionService = new UserDeletionService(usersRepository, cardsRepository, cardStatsService,
+                listingVersionService, new TransactionTemplate(transactionManager), shardRouter, 2, true);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cardsRepository.lockIdsByOwnerId(7L, 2)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+        when(usersRepository.purgeDeleted(7L)).thenReturn(1);
+        UserIdView user = marked(7L, "corporate");
+        when(usersRepository.findMarkedDeleted()).thenReturn(List.of(user));
+
+        userDeletionService.delete(7L, "corporate");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        userDeletionService.resumePending();
+        release.countDown();
+
+        verify(usersRepository, timeout(5000)).purgeDeleted(7L);
+        verify(cardsRepository, times(1)).lockIdsByOwnerId(7L, 2);
+    }
+
+    private static UserIdView marked(Long id, String username) {
+        UserIdView view = mock(UserIdView.class);
+        when(view.getId()).thenReturn(id);
+        when(view.getUsername()).thenReturn(username);
+        return view;
+    }
+}
@@ -1,27 +1,42 @@
 package com.example.bankcards.service;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.example.bankcards.dto.AuthDTO;
 import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserSearchDTO;
+import com.example.bankcards.dto.UserSummaryDTO;
 import com.example.bankcards.entity.Role;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.exception.LoginLockedException;
 import com.example.bankcards.exception.UserNotFoundException;
+import com.example.bankcards.repository.CardsRepository;
 import com.example.bankcards.repository.RolesRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.repository.projection.UserSearchView;
+import com.example.bankcards.repository.projection.UserSummaryView;
 import com.example.bankcards.security.JWTUtil;
+import com.example.bankcards.security.LoginAttemptGuard;
+import com.example.bankcards.security.TokenDenyList;
 import com.example.bankcards.util.UserMapper;
+import com.example.bankcards.util.UserSearchCursorUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,6 +64,27 @@ class UserServiceTest {
     @Mock
     private JWTUtil jwtUtil;
 
+    @Mock
+    private CardsRepository cardsRepository;
+
+    @Mock
+    private UserDeletionService userDeletionService;
+
+    @Mock
+    private ShardRouter shardRouter;
+
+    @Mock
+    private TokenDenyList tokenDenyList;
+
+    @Mock
+    private LoginAttemptGuard loginAttemptGuard;
+
+    @Mock
+    private ListingVersionService listingVersionService;
+
+    @Spy
+    private UserSearchCursorUtil userSearchCursorUtil = new UserSearchCursorUtil("test-cursor-secret");
+
     @InjectMocks
     private UserService userService;
 
@@ -83,22 +119,32 @@ class UserServiceTest {
     }
 
     @Test
-    void getAllUsers_returnsPageOfUserDTOs() {
-        User user = new User();
-        Page<User> page = new PageImpl<>(List.of(user));
-        when(usersRepository.findAll(any(Pageable.class))).thenReturn(page);
+    void getAllUsers_returnsPageOfUserSummaries() {
+        UserSummaryView view = mock(UserSummaryView.class);
+        Page<UserSummaryView> page = new PageImpl<>(List.of(view));
+        when(usersRepository.findSummaries(any(Pageable.class))).thenReturn(page);
 
-        UserDTO userDTO = new UserDTO();
-        when(userMapper.toDTO(user)).thenReturn(userDTO);
+        UserSummaryDTO userDTO = new UserSummaryDTO("admin", "ROLE_ADMIN", 2);
+        when(userMapper.toDTO(view)).thenReturn(userDTO);
 
-        Page<UserDTO> result = userService.getAllUsers(0, 6);
+        Page<UserSummaryDTO> result = userService.getAllUsers(0, 6);
 
         assertEquals(1, result.getContent().size());
         assertSame(userDTO, result.getContent().get(0));
-        verify(usersRepository).findAll(any(Pageable.class));
+        verify(usersRepository, never()).findAll(any(Pageable.class));
     }
 
 
+    @Test
+    void getAllUsersETag_stableWhileUsersUnchanged() {
+        when(listingVersionService.version(ListingVersionService.USERS)).thenReturn(5L);
+
+        assertEquals(userService.getAllUsersETag(0, 6), userService.getAllUsersETag(0, 6));
+        assertNotEquals(userService.getAllUsersETag(0, 6), userService.getAllUsersETag(1, 6));
+        verify(usersRepository, never()).findAll(any(Pageable.class));
+        verify(listingVersionService, never()).version(ListingVersionService.CARDS);
+        verifyNoInteractions(cardsRepository);
+    }
 
     @Test
     void updateUser_validData_updatesUser() {
@@ -146,7 +192,8 @@ class UserServiceTest {
 
         userService.deleteUser("admin");
 
-        verify(usersRepository).deleteByUsername("admin");
+        verify(userDeletionService).delete(user.getId(), "admin");
+        verify(usersRepository, never()).delete(any());
     }
 
     @Test
@@ -197,8 +244,106 @@ class UserServiceTest {
                 .thenReturn(mock(org.springframework.security.core.Authentication.class));
         when(jwtUtil.generateToken("admin")).thenReturn("token123");
 
-        String token = userService.login(authDTO);
+        String token = userService.login(authDTO, "10.0.0.1");
 
         assertEquals("token123", token);
+        verify(loginAttemptGuard).onSuccess("admin");
+    }
+
+    @Test
+    void login_LockedSkipsPasswordCheck() {
+        AuthDTO authDTO = new AuthDTO("admin", "guess");
+        doThrow(new LoginLockedException(30)).when(loginAttemptGuard).checkAllowed("admin", "10.0.0.1");
+
+        assertThrows(LoginLockedException.class, () -> userService.login(authDTO, "10.0.0.1"));
+
+        verifyNoInteractions(authenticationManager);
+    }
+
+    @Test
+    void login_BadCredentialsRecordsFailure() {
+        AuthDTO authDTO = new AuthDTO("admin", "guess");
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new BadCredentialsException("bad"));
+
+        assertThrows(BadCredentialsException.class, () -> userService.login(authDTO, "10.0.0.1"));
+
+        verify(loginAttemptGuard).onFailure("admin", "10.0.0.1");
+        verify(loginAttemptGuard, never()).onSuccess(any());
+    }
+
+    @Test
+    void logout_RevokesTokenUntilItExpires() {
+        DecodedJWT jwt = mock(DecodedJWT.class);
+        Instant expiresAt = Instant.parse("2026-10-19T12:00:00Z");
+        when(jwt.getId()).thenReturn("jti-1");
+        when(jwt.getExpiresAtAsInstant()).thenReturn(expiresAt);
+        when(jwtUtil.verifyToken("token123")).thenReturn(jwt);
+
+        userService.logout("token123");
+
+        verify(tokenDenyList).revoke("jti-1", expiresAt);
+    }
+
+    @Test
+    void logout_RejectsTokenWithoutId() {
+        DecodedJWT jwt = mock(DecodedJWT.class);
+        when(jwtUtil.verifyToken("legacy")).thenReturn(jwt);
+
+        assertThrows(IllegalArgumentException.class, () -> userService.logout("legacy"));
+        verifyNoInteractions(tokenDenyList);
+    }
+
+    @Test
+    void searchUsers_EscapesWildcardsAndReturnsCursor() {
+        ReflectionTestUtils.setField(userService, "maxSearchResults", 200);
+        UserSearchView row = mock(UserSearchView.class);
+        when(row.getUsername()).thenReturn("al_ex");
+        when(row.getRole()).thenReturn("ROLE_USER");
+        when(row.getTier()).thenReturn(1);
+        when(usersRepository.searchByUsername(eq("al_"), eq("al!_%"), eq("%al!_%"), eq(-1), eq(0), eq(""), any(Pageable.class)))
+                .thenReturn(List.of(row));
+
+        UserSearchDTO result = userService.searchUsers(" AL_ ", null, 1);
+
+        assertEquals("PREFIX", result.getItems().get(0).getMatch());
+        UserSearchCursorUtil.Position next = userSearchCursorUtil.decode("al_", result.getNextCursor());
+        assertEquals(1, next.tier());
+        assertEquals("al_ex", next.username());
+        assertEquals(1, next.served());
+    }
+
+    @Test
+    void searchUsers_ShortQueryUsesPrefixOnly() {
+        ReflectionTestUtils.setField(userService, "maxSearchResults", 200);
+        when(usersRepository.searchByUsername(eq("al"), eq("al%"), eq("al%"), anyInt(), anyInt(), anyString(), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        UserSearchDTO result = userService.searchUsers("al", null, 10);
+
+        assertTrue(result.getItems().isEmpty());
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    void searchUsers_StopsAtResultCap() {
+        ReflectionTestUtils.setField(userService, "maxSearchResults", 20);
+
+        UserSearchDTO result = userService.searchUsers("alice", userSearchCursorUtil.encode("alice", 2, "malice", 20), 10);
+
+        assertTrue(result.getItems().isEmpty());
+        assertNull(result.getNextCursor());
+        verify(usersRepository, never()).searchByUsername(any(), any(), any(), anyInt(), anyInt(), any(), any());
+    }
+
+    @Test
+    void searchUsers_RejectsForgedCursor() {
+        String cursor = userSearchCursorUtil.encode("alice", 2, "malice", 20);
+        String forged = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("2:6:0:malice".getBytes()) + cursor.substring(cursor.indexOf('.'));
+
+        assertThrows(IllegalArgumentException.class, () -> userService.searchUsers("alice", forged, 10));
+        assertThrows(IllegalArgumentException.class, () -> userService.searchUsers("bob", cursor, 10));
+        verify(usersRepository, never()).searchByUsername(any(), any(), any(), anyInt(), anyInt(), any(), any());
     }
 }
@@ -0,0 +1,96 @@
+package com.example.bankcards.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new AdaptiveConcurrencyLimiter(true, 4, 2, 10, Duration.ofMillis(500), 0.5,
+                Duration.ofSeconds(1), meterRegistry);
+    }
+
+    @Test
+    void tryAcquire_RejectsAboveLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, meterRegistry.counter("bank.concurrency.rejected").count());
+
+        limiter.release(FAST);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void release_SlowRequestsShrinkLimitDownToMinimum() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire();
+            limiter.release(SLOW, TimeUnit.SECONDS.toNanos(i * 2L));
+        }
+
+        assertEquals(2, limiter.getLimit());
+        assertEquals(3, meterRegistry.counter("bank.concurrency.slow").count());
+    }
+
+    @Test
+    void release_SlowBurstShrinksLimitOncePerWindow() {
+        limiter = new AdaptiveConcurrencyLimiter(true, 8, 1, 10, Duration.ofMillis(500), 0.5,
+                Duration.ofSeconds(1), meterRegistry);
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+        }
+        long now = TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 4; i++) {
+            limiter.release(SLOW, now + TimeUnit.MILLISECONDS.toNanos(i * 100L));
+        }
+
+        assertEquals(4, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(SLOW, now + TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void release_FastRequestsUnderLoadGrowLimitUpToMaximum() {
+        for (int i = 0; i < 20; i++) {
+            while (limiter.tryAcquire()) {
+                // занимаем весь предел, чтобы он считался использованным
+            }
+            for (int j = limiter.getInflight(); j > 0; j--) {
+                limiter.release(FAST);
+            }
+        }
+
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void release_FastRequestsWithoutLoadKeepLimit() {
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire();
+            limiter.release(FAST);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.config.EncryptionProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptionUtilTest {
+
+    private static final String LEGACY_KEY = "MySuperSecretKey12345678";
+
+    private static final String NEW_KEY = "AnotherSecretKey87654321";
+
+    private EncryptionUtil encryptionUtil(int currentVersion, Map<Integer, String> keys) {
+        EncryptionProperties properties = new EncryptionProperties();
+        properties.setAesKey(LEGACY_KEY);
+        properties.setKeys(keys);
+        properties.setCurrentVersion(currentVersion);
+        return new EncryptionUtil(properties);
+    }
+
+    @Test
+    void encrypt_WithoutRotationKeepsLegacyFormat() {
+        EncryptionUtil util = encryptionUtil(0, Map.of());
+
+        String encrypted = util.encrypt("1111222233334444");
+
+        assertFalse(encrypted.contains(":"));
+        assertEquals("1111222233334444", util.decrypt(encrypted));
+        assertTrue(util.encryptWithOtherKeys(encrypted).isEmpty());
+    }
+
+    @Test
+    void encrypt_UsesCurrentVersionAndDecryptsOldValues() {
+        String legacy = encryptionUtil(0, Map.of()).encrypt("1111222233334444");
+        EncryptionUtil util = encryptionUtil(1, Map.of(1, NEW_KEY));
+
+        String encrypted = util.encrypt("1111222233334444");
+
+        assertTrue(encrypted.startsWith("v1:"));
+        assertTrue(util.isCurrent(encrypted));
+        assertFalse(util.isCurrent(legacy));
+        assertEquals("1111222233334444", util.decrypt(encrypted));
+        assertEquals("1111222233334444", util.decrypt(legacy));
+        assertEquals(List.of(legacy), util.encryptWithOtherKeys(encrypted));
+    }
+
+    @Test
+    void decrypt_ThrowsForUnknownKeyVersion() {
+        String encrypted = encryptionUtil(2, Map.of(2, NEW_KEY)).encrypt("1111222233334444");
+        EncryptionUtil util = encryptionUtil(1, Map.of(1, NEW_KEY));
+
+        assertThrows(RuntimeException.class, () -> util.decrypt(encrypted));
+    }
+
+    @Test
+    void constructor_ThrowsWhenCurrentKeyMissing() {
+        assertThrows(IllegalStateException.class, () -> encryptionUtil(3, Map.of(1, NEW_KEY)));
+    }
+}
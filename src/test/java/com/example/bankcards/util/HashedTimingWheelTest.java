@@ -0,0 +1,58 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimingWheelTest {
+
+    private static final long TICK = 100;
+
+    @Test
+    void advance_ReturnsItemsOnlyAfterDeadline() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(TICK, 8, 0);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 500);
+
+        assertEquals(List.of(), wheel.advance(200));
+        assertEquals(List.of("a"), wheel.advance(300));
+        assertEquals(List.of(), wheel.advance(450));
+        assertEquals(List.of("b"), wheel.advance(500));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_KeepsItemsScheduledBeyondOneRotation() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(TICK, 4, 0);
+        wheel.schedule("near", 100);
+        wheel.schedule("far", 500);
+
+        assertEquals(List.of("near"), wheel.advance(100));
+        assertEquals(List.of(), wheel.advance(400));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("far"), wheel.advance(500));
+    }
+
+    @Test
+    void advance_ExpiresEverythingDueAfterLongPause() {
+        HashedTimingWheel<Integer> wheel = new HashedTimingWheel<>(TICK, 4, 0);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(i, i * TICK);
+        }
+
+        assertEquals(20, wheel.advance(10_000).size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void schedule_PastDeadlineExpiresOnNextAdvance() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(TICK, 8, 0);
+        wheel.advance(1_000);
+        wheel.schedule("late", 200);
+
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("late"), wheel.advance(1_000));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setIdleTimeout(Duration.ofMinutes(1));
+        RateLimitProperties.Endpoint transfer = new RateLimitProperties.Endpoint();
+        transfer.setPattern("/bank/cards/transfer/**");
+        transfer.setMethod("POST");
+        transfer.setCapacity(3);
+        transfer.setRefillPerSecond(1);
+        properties.getEndpoints().put("transfer", transfer);
+        meterRegistry = new SimpleMeterRegistry();
+        rateLimiter = new RateLimiter(properties, meterRegistry);
+    }
+
+    @Test
+    void tryAcquire_AllowsBurstThenThrottles() {
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("user", "POST", "/bank/cards/transfer", now));
+        }
+
+        long wait = rateLimiter.tryAcquire("user", "POST", "/bank/cards/transfer", now);
+
+        assertEquals(SECOND, wait);
+        assertEquals(1, meterRegistry.counter("bank.ratelimit.throttled", "endpoint", "transfer").count());
+    }
+
+    @Test
+    void tryAcquire_RefillsOverTime() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.tryAcquire("user", "POST", "/bank/cards/transfer", 0);
+        }
+
+        assertTrue(rateLimiter.tryAcquire("user", "POST", "/bank/cards/transfer", SECOND / 2) > 0);
+        assertEquals(0, rateLimiter.tryAcquire("user", "POST", "/bank/cards/transfer", SECOND));
+    }
+
+    @Test
+    void tryAcquire_BucketsArePerUser() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.tryAcquire("user", "POST", "/bank/cards/transfer", 0);
+        }
+
+        assertEquals(0, rateLimiter.tryAcquire("other", "POST", "/bank/cards/transfer", 0));
+    }
+
+    @Test
+    void tryAcquire_IgnoresUnlimitedEndpoints() {
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("user", "GET", "/bank/cards/transfer/42", 0));
+            assertEquals(0, rateLimiter.tryAcquire("user", "GET", "/bank/cards", 0));
+        }
+        assertEquals(0, rateLimiter.bucketCount());
+    }
+
+    @Test
+    void evictIdle_RemovesOnlyBucketsIdleLongerThanTimeout() {
+        rateLimiter.tryAcquire("idle", "POST", "/bank/cards/transfer", 0);
+        rateLimiter.tryAcquire("active", "POST", "/bank/cards/transfer", TimeUnit.SECONDS.toNanos(60));
+
+        rateLimiter.evictIdle(TimeUnit.SECONDS.toNanos(90));
+
+        assertEquals(1, rateLimiter.bucketCount());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void execute_ConcurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(pool.submit(() -> flight.execute("balance", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return 42;
+                })));
+            }
+            while (flight.getShared() < 3) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<Integer> result : results) {
+                assertEquals(42, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, flight.getLoads());
+        assertEquals(3, flight.getShared());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    void execute_ReusesResultWithinWindow() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(TimeUnit.MINUTES.toNanos(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        flight.execute("balance", loads::incrementAndGet);
+        flight.execute("balance", loads::incrementAndGet);
+        flight.execute("other", loads::incrementAndGet);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, flight.getShared());
+    }
+
+    @Test
+    void execute_LoadsAgainWithoutWindow() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+
+        flight.execute("balance", loads::incrementAndGet);
+        flight.execute("balance", loads::incrementAndGet);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, flight.getShared());
+    }
+
+    @Test
+    void execute_DoesNotRememberFailures() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(TimeUnit.MINUTES.toNanos(1));
+
+        assertThrows(IllegalStateException.class, () -> flight.execute("balance", () -> {
+            throw new IllegalStateException("нет соединения");
+        }));
+
+        assertEquals(7, flight.execute("balance", () -> 7));
+    }
+
+    @Test
+    void execute_WaitingCallsGetLeaderException() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(0);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> leader = pool.submit(() -> flight.execute("balance", () -> {
+                await(release);
+                throw new IllegalArgumentException("Карта не найдена");
+            }));
+            while (flight.size() == 0) {
+                Thread.sleep(5);
+            }
+            Future<Integer> follower = pool.submit(() -> flight.execute("balance", () -> 1));
+            while (flight.getShared() == 0) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, leaderError.getCause());
+            assertInstanceOf(IllegalArgumentException.class, followerError.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictExpired_RemovesResultsPastWindow() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(TimeUnit.MILLISECONDS.toNanos(1));
+        flight.execute("balance", () -> 1);
+
+        Thread.sleep(5);
+        flight.evictExpired();
+
+        assertEquals(0, flight.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}